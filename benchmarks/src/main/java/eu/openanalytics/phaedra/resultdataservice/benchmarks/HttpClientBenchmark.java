@@ -0,0 +1,131 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import eu.openanalytics.phaedra.resultdataservice.client.exception.ResultDataUnresolvableException;
+import eu.openanalytics.phaedra.resultdataservice.client.exception.ResultSetUnresolvableException;
+import eu.openanalytics.phaedra.resultdataservice.client.impl.HttpResultDataServiceClient;
+import eu.openanalytics.phaedra.resultdataservice.client.impl.UrlFactory;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.util.PhaedraRestTemplate;
+import eu.openanalytics.phaedra.util.auth.IAuthorizationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the client side of a request: building the URL and headers, serializing the request body and parsing
+ * the response. The HTTP layer is replaced by canned responses, so no network traffic is involved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpClientBenchmark {
+
+    private static final int WELLS = 1536;
+
+    private HttpResultDataServiceClient client;
+    private float[] values;
+
+    @Setup
+    public void setup() throws IOException {
+        var objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        values = new float[WELLS];
+        for (int i = 0; i < WELLS; i++) values[i] = i * 0.1f;
+
+        var resultSet = objectMapper.writeValueAsBytes(ResultSetDTO.builder()
+            .id(1L)
+            .protocolId(2L)
+            .plateId(3L)
+            .measId(4L)
+            .executionStartTimeStamp(LocalDateTime.now())
+            .outcome(StatusCode.SCHEDULED)
+            .build());
+        var resultData = objectMapper.writeValueAsBytes(ResultDataDTO.builder()
+            .id(1L)
+            .resultSetId(1L)
+            .featureId(5L)
+            .values(values)
+            .statusCode(StatusCode.SUCCESS)
+            .statusMessage("Ok")
+            .exitCode(0)
+            .createdTimestamp(LocalDateTime.now())
+            .build());
+
+        var restTemplate = new PhaedraRestTemplate();
+        restTemplate.setRequestFactory((uri, method) -> {
+            var request = new MockClientHttpRequest(method, uri);
+            var response = new MockClientHttpResponse(method == HttpMethod.GET ? resultSet : resultData, HttpStatus.OK);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            request.setResponse(response);
+            return request;
+        });
+
+        var authService = (IAuthorizationService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{IAuthorizationService.class},
+            (proxy, method, args) -> method.getName().equals("getCurrentBearerToken") ? "benchmark-token" : null);
+
+        client = new HttpResultDataServiceClient(restTemplate, authService);
+    }
+
+    @Benchmark
+    public String urlFactory() {
+        return UrlFactory.resultDataByFeatureId(42L, 7L);
+    }
+
+    @Benchmark
+    public ResultSetDTO getResultSet() throws ResultSetUnresolvableException {
+        return client.getResultSet(1L);
+    }
+
+    @Benchmark
+    public ResultDataDTO addResultData() throws ResultDataUnresolvableException {
+        return client.addResultData(1L, 5L, values, StatusCode.SUCCESS, "Ok", 0);
+    }
+
+}
@@ -0,0 +1,215 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.benchmarks;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultFeatureStat;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultSet;
+import eu.openanalytics.phaedra.resultdataservice.service.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the handwritten {@link ModelMapper} with the org.modelmapper based {@link LegacyModelMapper}, mapping
+ * lists of 10k entities to DTOs as done by the read paths of the services, and 10k DTOs to entities as done by the
+ * write paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelMapperBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    private final ModelMapper modelMapper = new ModelMapper();
+    private final LegacyModelMapper legacyModelMapper = new LegacyModelMapper();
+
+    private List<ResultData> resultData;
+    private List<ResultFeatureStat> resultFeatureStats;
+    private List<ResultSet> resultSets;
+
+    private List<ResultDataDTO> resultDataDTOs;
+    private List<ResultFeatureStatDTO> resultFeatureStatDTOs;
+    private List<ResultSetDTO> resultSetDTOs;
+
+    @Setup
+    public void setup() {
+        var now = LocalDateTime.now();
+        resultData = IntStream.range(0, ROWS).mapToObj(i -> ResultData.builder()
+            .id((long) i)
+            .resultSetId(1L)
+            .featureId((long) i)
+            .values(new float[]{1.0f, 2.0f, 3.0f})
+            .statusCode(StatusCode.SUCCESS)
+            .statusMessage("Ok")
+            .exitCode(0)
+            .createdTimestamp(now)
+            .build()).toList();
+        resultFeatureStats = IntStream.range(0, ROWS).mapToObj(i -> ResultFeatureStat.builder()
+            .id((long) i)
+            .resultSetId(1L)
+            .featureId((long) i / 10)
+            .featureStatId((long) i % 10)
+            .value(0.5f)
+            .statisticName("zprime")
+            .welltype("LC")
+            .statusCode(StatusCode.SUCCESS)
+            .statusMessage("Ok")
+            .exitCode(0)
+            .createdTimestamp(now)
+            .build()).toList();
+        resultSets = IntStream.range(0, ROWS).mapToObj(i -> ResultSet.builder()
+            .id((long) i)
+            .protocolId(1L)
+            .plateId((long) i)
+            .measId((long) i)
+            .executionStartTimeStamp(now)
+            .executionEndTimeStamp(now)
+            .outcome(StatusCode.SUCCESS)
+            .errors(new ResultSet.ErrorHolder(List.of()))
+            .errorsText("")
+            .build()).toList();
+
+        resultDataDTOs = resultData.stream().map(rd -> modelMapper.map(rd).build()).toList();
+        resultFeatureStatDTOs = resultFeatureStats.stream().map(rfs -> modelMapper.map(rfs).build()).toList();
+        resultSetDTOs = resultSets.stream().map(rs -> modelMapper.map(rs).build()).toList();
+    }
+
+    @Benchmark
+    public List<ResultDataDTO> resultData() {
+        var res = new ArrayList<ResultDataDTO>(ROWS);
+        for (var rd : resultData) res.add(modelMapper.map(rd).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultDataDTO> resultDataLegacy() {
+        var res = new ArrayList<ResultDataDTO>(ROWS);
+        for (var rd : resultData) res.add(legacyModelMapper.map(rd).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultFeatureStatDTO> resultFeatureStat() {
+        var res = new ArrayList<ResultFeatureStatDTO>(ROWS);
+        for (var rfs : resultFeatureStats) res.add(modelMapper.map(rfs).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultFeatureStatDTO> resultFeatureStatLegacy() {
+        var res = new ArrayList<ResultFeatureStatDTO>(ROWS);
+        for (var rfs : resultFeatureStats) res.add(legacyModelMapper.map(rfs).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultSetDTO> resultSet() {
+        var res = new ArrayList<ResultSetDTO>(ROWS);
+        for (var rs : resultSets) res.add(modelMapper.map(rs).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultSetDTO> resultSetLegacy() {
+        var res = new ArrayList<ResultSetDTO>(ROWS);
+        for (var rs : resultSets) res.add(legacyModelMapper.map(rs).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultData> resultDataDTO() {
+        var res = new ArrayList<ResultData>(ROWS);
+        for (var rd : resultDataDTOs) res.add(modelMapper.map(rd).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultData> resultDataDTOLegacy() {
+        var res = new ArrayList<ResultData>(ROWS);
+        for (var rd : resultDataDTOs) res.add(legacyModelMapper.map(rd).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultFeatureStat> resultFeatureStatDTO() {
+        var res = new ArrayList<ResultFeatureStat>(ROWS);
+        for (var rfs : resultFeatureStatDTOs) res.add(modelMapper.map(rfs).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultFeatureStat> resultFeatureStatDTOLegacy() {
+        var res = new ArrayList<ResultFeatureStat>(ROWS);
+        for (var rfs : resultFeatureStatDTOs) res.add(legacyModelMapper.map(rfs).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultSet> resultSetDTO() {
+        var res = new ArrayList<ResultSet>(ROWS);
+        for (var rs : resultSetDTOs) res.add(modelMapper.map(rs).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultSet> resultSetDTOLegacy() {
+        var res = new ArrayList<ResultSet>(ROWS);
+        for (var rs : resultSetDTOs) res.add(legacyModelMapper.map(rs).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultSet> resultSetUpdate() {
+        var res = new ArrayList<ResultSet>(ROWS);
+        for (int i = 0; i < ROWS; i++) res.add(modelMapper.map(resultSetDTOs.get(i), resultSets.get(i)).build());
+        return res;
+    }
+
+    @Benchmark
+    public List<ResultSet> resultSetUpdateLegacy() {
+        var res = new ArrayList<ResultSet>(ROWS);
+        for (int i = 0; i < ROWS; i++) res.add(legacyModelMapper.map(resultSetDTOs.get(i), resultSets.get(i)).build());
+        return res;
+    }
+
+}
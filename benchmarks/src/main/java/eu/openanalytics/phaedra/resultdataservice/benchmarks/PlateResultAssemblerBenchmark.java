@@ -0,0 +1,123 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.benchmarks;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.PlateResultDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import eu.openanalytics.phaedra.resultdataservice.service.ModelMapper;
+import eu.openanalytics.phaedra.resultdataservice.service.PlateResultAssembler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the grouping done by the plate-results endpoints ({@link PlateResultAssembler}), for a plate with
+ * {@code resultSets} ResultSets (spread over two protocols) of {@code features} features each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlateResultAssemblerBenchmark {
+
+    private static final int WELLS = 1536;
+    private static final int STATS_PER_FEATURE = 10;
+
+    @Param({"4", "100"})
+    private int resultSets;
+
+    @Param({"500"})
+    private int features;
+
+    private final ModelMapper modelMapper = new ModelMapper();
+
+    private List<ResultSetDTO> resultSetDTOs;
+    private List<ResultData> resultData;
+    private List<ResultFeatureStatDTO> resultFeatureStats;
+
+    @Setup
+    public void setup() {
+        var now = LocalDateTime.now();
+        var values = new float[WELLS];
+        for (int i = 0; i < WELLS; i++) values[i] = i * 0.1f;
+
+        resultSetDTOs = new ArrayList<>();
+        resultData = new ArrayList<>();
+        resultFeatureStats = new ArrayList<>();
+        long id = 0;
+        for (long rs = 0; rs < resultSets; rs++) {
+            resultSetDTOs.add(ResultSetDTO.builder()
+                .id(rs)
+                .protocolId(rs % 2)
+                .plateId(1L)
+                .measId(rs / 2)
+                .outcome(StatusCode.SUCCESS)
+                .build());
+            for (long f = 0; f < features; f++) {
+                resultData.add(ResultData.builder()
+                    .id(id++)
+                    .resultSetId(rs)
+                    .featureId(f)
+                    .values(values)
+                    .statusCode(StatusCode.SUCCESS)
+                    .statusMessage("Ok")
+                    .createdTimestamp(now)
+                    .build());
+                for (long s = 0; s < STATS_PER_FEATURE; s++) {
+                    resultFeatureStats.add(ResultFeatureStatDTO.builder()
+                        .id(id++)
+                        .resultSetId(rs)
+                        .featureId(f)
+                        .featureStatId(s)
+                        .value(0.5f)
+                        .statisticName("stat" + s)
+                        .statusCode(StatusCode.SUCCESS)
+                        .createdTimestamp(now)
+                        .build());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public PlateResultDTO assemble() {
+        return PlateResultAssembler.assemble(resultSetDTOs, resultData, resultFeatureStats, modelMapper);
+    }
+
+}
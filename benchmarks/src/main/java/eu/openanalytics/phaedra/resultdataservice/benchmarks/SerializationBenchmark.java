@@ -0,0 +1,134 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the (de)serialization of a list of {@link ResultDataDTO}s with large float arrays, as returned for a
+ * plate with {@code features} features of {@code wells} wells each.
+ * The indented JSON corresponds to the configuration in application.yaml (indent_output: true).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"1536"})
+    private int wells;
+
+    @Param({"500"})
+    private int features;
+
+    private ObjectMapper indentedJsonMapper;
+    private ObjectMapper jsonMapper;
+    private ObjectMapper cborMapper;
+
+    private List<ResultDataDTO> resultData;
+    private byte[] json;
+    private byte[] cbor;
+
+    @Setup
+    public void setup() throws IOException {
+        jsonMapper = configure(new ObjectMapper());
+        indentedJsonMapper = configure(new ObjectMapper()).enable(SerializationFeature.INDENT_OUTPUT);
+        cborMapper = configure(new ObjectMapper(new CBORFactory()));
+
+        var random = new Random(42);
+        var now = LocalDateTime.now();
+        resultData = new ArrayList<>(features);
+        for (long f = 0; f < features; f++) {
+            var values = new float[wells];
+            for (int i = 0; i < wells; i++) values[i] = random.nextFloat() * 1000;
+            resultData.add(ResultDataDTO.builder()
+                .id(f)
+                .resultSetId(1L)
+                .featureId(f)
+                .values(values)
+                .statusCode(StatusCode.SUCCESS)
+                .statusMessage("Ok")
+                .exitCode(0)
+                .createdTimestamp(now)
+                .build());
+        }
+
+        json = jsonMapper.writeValueAsBytes(resultData);
+        cbor = cborMapper.writeValueAsBytes(resultData);
+    }
+
+    private static ObjectMapper configure(ObjectMapper objectMapper) {
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        return objectMapper;
+    }
+
+    @Benchmark
+    public byte[] serializeIndentedJson() throws IOException {
+        return indentedJsonMapper.writeValueAsBytes(resultData);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() throws IOException {
+        return jsonMapper.writeValueAsBytes(resultData);
+    }
+
+    @Benchmark
+    public byte[] serializeCbor() throws IOException {
+        return cborMapper.writeValueAsBytes(resultData);
+    }
+
+    @Benchmark
+    public ResultDataDTO[] deserializeJson() throws IOException {
+        return jsonMapper.readValue(json, ResultDataDTO[].class);
+    }
+
+    @Benchmark
+    public ResultDataDTO[] deserializeCbor() throws IOException {
+        return cborMapper.readValue(cbor, ResultDataDTO[].class);
+    }
+
+}
@@ -41,6 +41,8 @@ public interface ResultDataServiceClient {
 
     ResultDataDTO addResultData(long resultSetId, long featureId, float[] values, StatusCode statusCode, String statusMessage, Integer exitCode) throws ResultDataUnresolvableException;
 
+    List<ResultDataDTO> addResultDataBatch(long resultSetId, List<ResultDataDTO> resultData) throws ResultDataUnresolvableException;
+
     ResultDataDTO getResultData(long resultSetId, long featureId) throws ResultDataUnresolvableException;
 
     ResultFeatureStatDTO createResultFeatureStat(long resultSetId, long featureId, long featureStatId, Optional<Float> value, String statisticName, String welltype,
@@ -58,6 +60,10 @@ public interface ResultDataServiceClient {
 
     ResultSetDTO getLatestResultSetByPlateIdAndProtocolId(long plateId, long protocolId) throws ResultSetUnresolvableException;
 
+    List<ResultSetDTO> getLatestResultSetsByPlateIds(List<Long> plateIds) throws ResultSetUnresolvableException;
+
+    List<ResultSetDTO> getLatestResultSetsByPlateIds(List<Long> plateIds, Optional<Long> measId, Optional<Long> protocolId) throws ResultSetUnresolvableException;
+
     List<ResultSetDTO> getResultSet(StatusCode outcome) throws ResultSetUnresolvableException;
 
     List<ResultDataDTO> getResultData(long resultSetId) throws ResultDataUnresolvableException;
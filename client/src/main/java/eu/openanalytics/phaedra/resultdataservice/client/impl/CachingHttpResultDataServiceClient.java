@@ -23,6 +23,8 @@ package eu.openanalytics.phaedra.resultdataservice.client.impl;
 import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -85,6 +87,14 @@ public class CachingHttpResultDataServiceClient implements ResultDataServiceClie
         return resultData;
     }
 
+    @Override
+    public List<ResultDataDTO> addResultDataBatch(long resultSetId, List<ResultDataDTO> resultData) throws ResultDataUnresolvableException {
+        // ResultData is immutable -> cache it (note that it can be deleted)
+        var createdResultData = httpResultDataServiceClient.addResultDataBatch(resultSetId, resultData);
+        createdResultData.forEach(rd -> resultDataCache.put(new ResultDataKey(resultSetId, rd.getFeatureId()), rd));
+        return createdResultData;
+    }
+
     @Override
     public ResultDataDTO getResultData(long resultSetId, long featureId) throws ResultDataUnresolvableException {
         var key = new ResultDataKey(resultSetId, featureId);
@@ -130,6 +140,21 @@ public class CachingHttpResultDataServiceClient implements ResultDataServiceClie
         return httpResultDataServiceClient.getLatestResultSetByPlateIdAndProtocolId(plateId, protocolId);
     }
 
+    @Override
+    public List<ResultSetDTO> getLatestResultSetsByPlateIds(List<Long> plateIds) throws ResultSetUnresolvableException {
+        return getLatestResultSetsByPlateIds(plateIds, Optional.empty(), Optional.empty());
+    }
+
+    @Override
+    public List<ResultSetDTO> getLatestResultSetsByPlateIds(List<Long> plateIds, Optional<Long> measId, Optional<Long> protocolId) throws ResultSetUnresolvableException {
+        var resultSets = httpResultDataServiceClient.getLatestResultSetsByPlateIds(plateIds, measId, protocolId);
+        // The latest ResultSet of a plate can change, but the completed ResultSets themselves are immutable
+        resultSetCache.putAll(resultSets.stream()
+            .filter(rs -> rs.getOutcome() != StatusCode.SCHEDULED)
+            .collect(Collectors.toMap(ResultSetDTO::getId, Function.identity())));
+        return resultSets;
+    }
+
     @Override
     public List<ResultSetDTO> getResultSet(StatusCode outcome) throws ResultSetUnresolvableException {
         return httpResultDataServiceClient.getResultSet(outcome);
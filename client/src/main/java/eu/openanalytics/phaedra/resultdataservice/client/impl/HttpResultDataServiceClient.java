@@ -20,25 +20,36 @@
  */
 package eu.openanalytics.phaedra.resultdataservice.client.impl;
 
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpMessageConverterExtractor;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.RestClientException;
 
 import eu.openanalytics.phaedra.resultdataservice.client.ResultDataServiceClient;
 import eu.openanalytics.phaedra.resultdataservice.client.exception.ResultDataUnresolvableException;
 import eu.openanalytics.phaedra.resultdataservice.client.exception.ResultFeatureStatUnresolvableException;
 import eu.openanalytics.phaedra.resultdataservice.client.exception.ResultSetUnresolvableException;
 import eu.openanalytics.phaedra.resultdataservice.dto.ErrorDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.LatestResultSetsQueryDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.PageDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
@@ -52,6 +63,12 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
     private final PhaedraRestTemplate restTemplate;
     private final IAuthorizationService authService;
 
+    // The converters of the shared restTemplate plus CBOR, without modifying the restTemplate itself
+    private final List<HttpMessageConverter<?>> messageConverters;
+
+    // Cleared when the server rejects a CBOR request body, i.e. when it predates CBOR support
+    private volatile boolean cborRequestBodies = true;
+
     private final static ParameterizedTypeReference<PageDTO<ResultSetDTO>> PAGED_RESULTSET_TYPE = new ParameterizedTypeReference<>() {
     };
 
@@ -64,6 +81,11 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
     public HttpResultDataServiceClient(PhaedraRestTemplate restTemplate, IAuthorizationService authService) {
         this.restTemplate = restTemplate;
         this.authService = authService;
+        var converters = new ArrayList<HttpMessageConverter<?>>(restTemplate.getMessageConverters());
+        if (converters.stream().noneMatch(MappingJackson2CborHttpMessageConverter.class::isInstance)) {
+            converters.add(new MappingJackson2CborHttpMessageConverter());
+        }
+        this.messageConverters = List.copyOf(converters);
     }
 
     @Override
@@ -74,9 +96,8 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
             .measId(measId)
             .build();
 
-        HttpEntity<?> httpEntity = new HttpEntity<>(resultSet, makeHttpHeaders());
         try {
-            var res = restTemplate.postForObject(UrlFactory.resultSet(), httpEntity, ResultSetDTO.class);
+            var res = exchange(UrlFactory.resultSet(), HttpMethod.POST, resultSet, ResultSetDTO.class).getBody();
             if (res == null) {
                 throw new ResultSetUnresolvableException("ResultSet could not be converted");
             }
@@ -97,9 +118,8 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
             .errorsText(errorsText)
             .build();
 
-        HttpEntity<?> httpEntity = new HttpEntity<>(resultSet, makeHttpHeaders());
         try {
-            var res = restTemplate.putForObject(UrlFactory.resultSet(resultSetId), httpEntity, ResultSetDTO.class);
+            var res = exchange(UrlFactory.resultSet(resultSetId), HttpMethod.PUT, resultSet, ResultSetDTO.class).getBody();
             if (res == null) {
                 throw new ResultSetUnresolvableException("ResultSet could not be converted");
             }
@@ -124,9 +144,8 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
             .exitCode(exitCode)
             .build();
 
-        HttpEntity<?> httpEntity = new HttpEntity<>(resultData, makeHttpHeaders());
         try {
-            var res = restTemplate.postForObject(UrlFactory.resultData(resultSetId), httpEntity, ResultDataDTO.class);
+            var res = exchange(UrlFactory.resultData(resultSetId), HttpMethod.POST, resultData, ResultDataDTO.class).getBody();
             if (res == null) {
                 throw new ResultDataUnresolvableException("ResultData could not be converted");
             }
@@ -136,11 +155,27 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
         }
     }
 
+    @Override
+    public List<ResultDataDTO> addResultDataBatch(long resultSetId, List<ResultDataDTO> resultData) throws ResultDataUnresolvableException {
+        Objects.requireNonNull(resultData, "ResultData may not be null");
+
+        try {
+            var res = exchange(UrlFactory.resultDataBatch(resultSetId), HttpMethod.POST, resultData, ResultDataDTO[].class).getBody();
+            if (res == null) {
+                throw new ResultDataUnresolvableException("ResultData could not be converted");
+            }
+            return Arrays.asList(res);
+        } catch (HttpClientErrorException ex) {
+            throw new ResultDataUnresolvableException("Error while creating ResultData", ex);
+        } catch (HttpServerErrorException ex) {
+            throw new ResultDataUnresolvableException("Server Error while creating ResultData", ex);
+        }
+    }
+
     @Override
     public ResultDataDTO getResultData(long resultSetId, long featureId) throws ResultDataUnresolvableException {
         try {
-            HttpEntity<?> httpEntity = new HttpEntity<>(makeHttpHeaders());
-            var resultData = restTemplate.exchange(UrlFactory.resultDataByFeatureId(resultSetId, featureId), HttpMethod.GET, httpEntity, PAGED_RESULTDATA_TYPE);
+            var resultData = exchange(UrlFactory.resultDataByFeatureId(resultSetId, featureId), HttpMethod.GET, null, PAGED_RESULTDATA_TYPE);
 
             if (resultData.getStatusCode().isError()) {
                 throw new ResultDataUnresolvableException("ResultData could not be converted");
@@ -181,8 +216,7 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
     @Override
     public List<ResultFeatureStatDTO> createResultFeatureStats(long resultSetId, List<ResultFeatureStatDTO> resultFeatureStats) throws ResultFeatureStatUnresolvableException {
         try {
-            HttpEntity<?> httpEntity = new HttpEntity<>(resultFeatureStats, makeHttpHeaders());
-            var res = restTemplate.postForObject(UrlFactory.resultFeatureStat(resultSetId), httpEntity, ResultFeatureStatDTO[].class);
+            var res = exchange(UrlFactory.resultFeatureStat(resultSetId), HttpMethod.POST, resultFeatureStats, ResultFeatureStatDTO[].class).getBody();
             if (res == null) {
                 throw new ResultFeatureStatUnresolvableException("ResultFeatureStat could not be converted");
             }
@@ -197,8 +231,7 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
     @Override
     public ResultFeatureStatDTO getResultFeatureStat(long resultSetId, long resultFeatureStatId) throws ResultFeatureStatUnresolvableException {
         try {
-            HttpEntity<?> httpEntity = new HttpEntity<>(makeHttpHeaders());
-            var resultFeatureStat = restTemplate.exchange(UrlFactory.resultFeatureStatByFeatureStatId(resultSetId, resultFeatureStatId), HttpMethod.GET, httpEntity, ResultFeatureStatDTO.class);
+            var resultFeatureStat = exchange(UrlFactory.resultFeatureStatByFeatureStatId(resultSetId, resultFeatureStatId), HttpMethod.GET, null, ResultFeatureStatDTO.class);
             if (resultFeatureStat.getStatusCode().isError()) {
                 throw new ResultFeatureStatUnresolvableException("ResultFeatureStat could not be converted");
             }
@@ -213,8 +246,7 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
     @Override
     public ResultSetDTO getResultSet(long resultSetId) throws ResultSetUnresolvableException {
         try {
-            HttpEntity<?> httpEntity = new HttpEntity<>(makeHttpHeaders());
-            var resultSet = restTemplate.exchange(UrlFactory.resultSet(resultSetId), HttpMethod.GET, httpEntity, ResultSetDTO.class);
+            var resultSet = exchange(UrlFactory.resultSet(resultSetId), HttpMethod.GET, null, ResultSetDTO.class);
             if (resultSet.getStatusCode().isError()) {
                 throw new ResultSetUnresolvableException("Error while fetching ResultSet");
             }
@@ -228,7 +260,7 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
 
     @Override
     public ResultSetDTO getLatestResultSetByPlateId(long plateId) throws ResultSetUnresolvableException {
-        var resultSet = restTemplate.exchange(UrlFactory.latestResultSetByPlateId(plateId), HttpMethod.GET, new HttpEntity<>(makeHttpHeaders()), ResultSetDTO[].class, plateId);
+        var resultSet = exchange(UrlFactory.latestResultSetByPlateId(plateId), HttpMethod.GET, null, ResultSetDTO[].class);
 
         if (resultSet.getStatusCode().isError()) {
             throw new ResultSetUnresolvableException("ResultSet could not be converted");
@@ -239,8 +271,7 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
 
     @Override
     public ResultSetDTO getLatestResultSetByPlateIdAndMeasId(long plateId, long measId) throws ResultSetUnresolvableException {
-        HttpEntity<?> httpEntity = new HttpEntity<>(makeHttpHeaders());
-        var resultSet = restTemplate.exchange(UrlFactory.latestResultSetByPlateIdAndMeasId(plateId, measId), HttpMethod.GET, httpEntity, ResultSetDTO[].class, plateId, measId);
+        var resultSet = exchange(UrlFactory.latestResultSetByPlateIdAndMeasId(plateId, measId), HttpMethod.GET, null, ResultSetDTO[].class);
 
         if (resultSet.getStatusCode().isError()) {
             throw new ResultSetUnresolvableException("ResultSet could not be converted");
@@ -251,8 +282,7 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
 
     @Override
     public ResultSetDTO getLatestResultSetByPlateIdAndProtocolId(long plateId, long protocolId) throws ResultSetUnresolvableException {
-        HttpEntity<?> httpEntity = new HttpEntity<>(makeHttpHeaders());
-        var resultSet = restTemplate.exchange(UrlFactory.latestResultSetByPlateIdAndProtocolId(plateId, protocolId), HttpMethod.GET, httpEntity, ResultSetDTO[].class, plateId, protocolId);
+        var resultSet = exchange(UrlFactory.latestResultSetByPlateIdAndProtocolId(plateId, protocolId), HttpMethod.GET, null, ResultSetDTO[].class);
 
         if (resultSet.getStatusCode().isError()) {
             throw new ResultSetUnresolvableException("ResultSet could not be converted");
@@ -262,26 +292,40 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
     }
 
     @Override
-    public List<ResultSetDTO> getResultSet(StatusCode outcome) throws ResultSetUnresolvableException {
-        try {
-            var currentPage = 0;
-            var hasNextPage = true;
-            var result = new ArrayList<ResultSetDTO>();
+    public List<ResultSetDTO> getLatestResultSetsByPlateIds(List<Long> plateIds) throws ResultSetUnresolvableException {
+        return getLatestResultSetsByPlateIds(plateIds, Optional.empty(), Optional.empty());
+    }
 
-            HttpEntity<?> httpEntity = new HttpEntity<>(makeHttpHeaders());
-            do {
-                var resultSet = restTemplate.exchange(UrlFactory.resultSet(outcome, currentPage), HttpMethod.GET, httpEntity, PAGED_RESULTSET_TYPE);
+    @Override
+    public List<ResultSetDTO> getLatestResultSetsByPlateIds(List<Long> plateIds, Optional<Long> measId, Optional<Long> protocolId) throws ResultSetUnresolvableException {
+        Objects.requireNonNull(plateIds, "PlateIds may not be null");
+        if (plateIds.isEmpty()) {
+            return List.of();
+        }
 
-                if (resultSet.getStatusCode().isError()) {
-                    throw new ResultSetUnresolvableException("ResultSet could not be converted");
-                }
+        var query = LatestResultSetsQueryDTO.builder()
+            .plateIds(plateIds)
+            .measId(measId.orElse(null))
+            .protocolId(protocolId.orElse(null))
+            .build();
 
-                result.addAll(resultSet.getBody().getData());
+        try {
+            var res = exchange(UrlFactory.latestResultSetsBatch(), HttpMethod.POST, query, ResultSetDTO[].class).getBody();
+            if (res == null) {
+                throw new ResultSetUnresolvableException("ResultSet could not be converted");
+            }
+            return Arrays.asList(res);
+        } catch (HttpClientErrorException ex) {
+            throw new ResultSetUnresolvableException("Error while fetching ResultSet", ex);
+        } catch (HttpServerErrorException ex) {
+            throw new ResultSetUnresolvableException("Server Error while fetching ResultSet", ex);
+        }
+    }
 
-                hasNextPage = !resultSet.getBody().getStatus().isLast();
-                currentPage++;
-            } while (hasNextPage);
-            return result;
+    @Override
+    public List<ResultSetDTO> getResultSet(StatusCode outcome) throws ResultSetUnresolvableException {
+        try {
+            return getAllPages(after -> UrlFactory.resultSet(outcome, after), page -> UrlFactory.resultSetPage(outcome, page), PAGED_RESULTSET_TYPE);
         } catch (HttpClientErrorException.NotFound ex) {
             throw new ResultSetUnresolvableException("ResultSet not found");
         } catch (HttpClientErrorException ex) {
@@ -292,24 +336,7 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
     @Override
     public List<ResultDataDTO> getResultData(long resultSetId) throws ResultDataUnresolvableException {
         try {
-            var currentPage = 0;
-            var hasNextPage = true;
-            var result = new ArrayList<ResultDataDTO>();
-
-            HttpEntity<?> httpEntity = new HttpEntity<>(makeHttpHeaders());
-            do {
-                var resultData = restTemplate.exchange(UrlFactory.resultData(resultSetId, currentPage), HttpMethod.GET, httpEntity, PAGED_RESULTDATA_TYPE);
-
-                if (resultData.getStatusCode().isError()) {
-                    throw new ResultDataUnresolvableException("ResultData could not be converted");
-                }
-
-                result.addAll(resultData.getBody().getData());
-
-                hasNextPage = !resultData.getBody().getStatus().isLast();
-                currentPage++;
-            } while (hasNextPage);
-            return result;
+            return getAllPages(after -> UrlFactory.resultData(resultSetId, after), page -> UrlFactory.resultDataPage(resultSetId, page), PAGED_RESULTDATA_TYPE);
         } catch (HttpClientErrorException.NotFound ex) {
             throw new ResultDataUnresolvableException("ResultData not found");
         } catch (HttpClientErrorException ex) {
@@ -320,24 +347,7 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
     @Override
     public List<ResultFeatureStatDTO> getResultFeatureStat(long resultSetId) throws ResultFeatureStatUnresolvableException {
         try {
-            var currentPage = 0;
-            var hasNextPage = true;
-            var result = new ArrayList<ResultFeatureStatDTO>();
-
-            HttpEntity<?> httpEntity = new HttpEntity<>(makeHttpHeaders());
-            do {
-                var resultFeatures = restTemplate.exchange(UrlFactory.resultFeatureStat(resultSetId, currentPage), HttpMethod.GET, httpEntity, PAGED_RESULT_FEATURE_STAT_TYPE);
-
-                if (resultFeatures.getStatusCode().isError()) {
-                    throw new ResultFeatureStatUnresolvableException("ResultFeatureStat could not be converted");
-                }
-
-                result.addAll(resultFeatures.getBody().getData());
-
-                hasNextPage = !resultFeatures.getBody().getStatus().isLast();
-                currentPage++;
-            } while (hasNextPage);
-            return result;
+            return getAllPages(after -> UrlFactory.resultFeatureStat(resultSetId, after), page -> UrlFactory.resultFeatureStatPage(resultSetId, page), PAGED_RESULT_FEATURE_STAT_TYPE);
         } catch (HttpClientErrorException.NotFound ex) {
             throw new ResultFeatureStatUnresolvableException("ResultFeatureStat not found");
         } catch (HttpClientErrorException ex) {
@@ -345,10 +355,89 @@ public class HttpResultDataServiceClient implements ResultDataServiceClient {
         }
     }
 
+    /**
+     * Gets all elements of a list endpoint, walking its pages by nextAfter. A server that predates keyset pagination
+     * ignores after and limit and returns the first page of offset pagination instead, without nextAfter: in that
+     * case the pages are requested by page number.
+     */
+    private <T> List<T> getAllPages(Function<Long, String> keysetUrl, IntFunction<String> pageUrl, ParameterizedTypeReference<PageDTO<T>> pageType) {
+        var result = new ArrayList<T>();
+        Long after = null;
+        do {
+            var page = exchange(keysetUrl.apply(after), HttpMethod.GET, null, pageType).getBody();
+            if (page.getStatus().getNextAfter() == null && !page.getStatus().isLast()) {
+                return getAllPagesByNumber(pageUrl, pageType);
+            }
+            result.addAll(page.getData());
+            after = page.getStatus().getNextAfter();
+        } while (after != null);
+        return result;
+    }
+
+    private <T> List<T> getAllPagesByNumber(IntFunction<String> pageUrl, ParameterizedTypeReference<PageDTO<T>> pageType) {
+        var result = new ArrayList<T>();
+        int pageNr = 0;
+        PageDTO<T> page;
+        do {
+            page = exchange(pageUrl.apply(pageNr++), HttpMethod.GET, null, pageType).getBody();
+            result.addAll(page.getData());
+        } while (!page.getStatus().isLast() && !page.getData().isEmpty());
+        return result;
+    }
+
     private HttpHeaders makeHttpHeaders() {
     	HttpHeaders httpHeaders = new HttpHeaders();
+    	// CBOR transfers the ResultData values as binary floats instead of decimal text
+    	httpHeaders.setAccept(List.of(MediaType.APPLICATION_CBOR, MediaType.APPLICATION_JSON));
         String bearerToken = authService.getCurrentBearerToken();
     	if (bearerToken != null) httpHeaders.set(HttpHeaders.AUTHORIZATION, String.format("Bearer %s", bearerToken));
     	return httpHeaders;
     }
+
+    private <T> ResponseEntity<T> exchange(String url, HttpMethod method, Object body, Class<T> responseType) {
+        return exchange(url, method, body, (Type) responseType);
+    }
+
+    private <T> ResponseEntity<T> exchange(String url, HttpMethod method, Object body, ParameterizedTypeReference<T> responseType) {
+        return exchange(url, method, body, responseType.getType());
+    }
+
+    /**
+     * Sends the body as CBOR, or as JSON once the server has rejected a CBOR body with 415 Unsupported Media Type.
+     */
+    private <T> ResponseEntity<T> exchange(String url, HttpMethod method, Object body, Type responseType) {
+        if (body != null && cborRequestBodies) {
+            try {
+                return doExchange(url, method, body, MediaType.APPLICATION_CBOR, responseType);
+            } catch (HttpClientErrorException ex) {
+                if (ex.getStatusCode() != HttpStatus.UNSUPPORTED_MEDIA_TYPE) {
+                    throw ex;
+                }
+                cborRequestBodies = false;
+            }
+        }
+        return doExchange(url, method, body, MediaType.APPLICATION_JSON, responseType);
+    }
+
+    /**
+     * Performs the request through the shared restTemplate (and thus its interceptors and error handler), but reads
+     * and writes the bodies using the {@link #messageConverters} of this client.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> ResponseEntity<T> doExchange(String url, HttpMethod method, Object body, MediaType contentType, Type responseType) {
+        var httpHeaders = makeHttpHeaders();
+        RequestCallback requestCallback = request -> {
+            request.getHeaders().putAll(httpHeaders);
+            if (body != null) {
+                var converter = messageConverters.stream()
+                    .filter(c -> c.canWrite(body.getClass(), contentType))
+                    .findFirst()
+                    .orElseThrow(() -> new RestClientException(String.format("Cannot write %s as %s", body.getClass().getName(), contentType)));
+                ((HttpMessageConverter<Object>) converter).write(body, contentType, request);
+            }
+        };
+        var bodyExtractor = new HttpMessageConverterExtractor<T>(responseType, messageConverters);
+        return restTemplate.execute(url, method, requestCallback,
+            response -> new ResponseEntity<>(bodyExtractor.extractData(response), response.getHeaders(), response.getStatusCode()));
+    }
 }
@@ -35,7 +35,11 @@ public class UrlFactory {
         return String.format("%s/resultsets/%s", RESULTDATA_SERVICE, resultId);
     }
 
-    public static String resultSet(StatusCode outcome, int page) {
+    public static String resultSet(StatusCode outcome, Long after) {
+        return String.format("%s/resultsets?outcome=%s&limit=%s%s", RESULTDATA_SERVICE, outcome, PAGE_SIZE, after(after));
+    }
+
+    public static String resultSetPage(StatusCode outcome, int page) {
         return String.format("%s/resultsets?outcome=%s&page=%s&pageSize=%s", RESULTDATA_SERVICE, outcome, page, PAGE_SIZE);
     }
 
@@ -51,6 +55,10 @@ public class UrlFactory {
         return String.format("%s/resultsets/latest?plateId=%s&protocolId=%s&n=%s", RESULTDATA_SERVICE, plateId, protocolId, 1);
     }
 
+    public static String latestResultSetsBatch() {
+        return String.format("%s/resultsets/latest/batch", RESULTDATA_SERVICE);
+    }
+
     public static String latestPlateResults(long plateId) {
         return String.format("%s/plate-results/%s/latest", RESULTDATA_SERVICE, plateId);
     }
@@ -67,7 +75,15 @@ public class UrlFactory {
         return String.format("%s/resultsets/%s/resultdata", RESULTDATA_SERVICE, resultSetId);
     }
 
-    public static String resultData(long resultSetId, int page) {
+    public static String resultDataBatch(long resultSetId) {
+        return String.format("%s/resultsets/%s/resultdata/batch", RESULTDATA_SERVICE, resultSetId);
+    }
+
+    public static String resultData(long resultSetId, Long after) {
+        return String.format("%s/resultsets/%s/resultdata?limit=%s%s", RESULTDATA_SERVICE, resultSetId, PAGE_SIZE, after(after));
+    }
+
+    public static String resultDataPage(long resultSetId, int page) {
         return String.format("%s/resultsets/%s/resultdata?page=%s&pageSize=%s", RESULTDATA_SERVICE, resultSetId, page, PAGE_SIZE);
     }
 
@@ -79,14 +95,20 @@ public class UrlFactory {
         return String.format("%s/resultsets/%s/resultfeaturestats", RESULTDATA_SERVICE, resultSetId);
     }
 
-    public static String resultFeatureStat(long resultSetId, int currentPage) {
-        return String.format("%s/resultsets/%s/resultfeaturestats?page=%s&pageSize=%s", RESULTDATA_SERVICE, resultSetId, currentPage, PAGE_SIZE);
+    public static String resultFeatureStat(long resultSetId, Long after) {
+        return String.format("%s/resultsets/%s/resultfeaturestats?limit=%s%s", RESULTDATA_SERVICE, resultSetId, PAGE_SIZE, after(after));
+    }
+
+    public static String resultFeatureStatPage(long resultSetId, int page) {
+        return String.format("%s/resultsets/%s/resultfeaturestats?page=%s&pageSize=%s", RESULTDATA_SERVICE, resultSetId, page, PAGE_SIZE);
     }
 
     public static String resultFeatureStatByFeatureStatId(long resultSetId, long featureStatId) {
         return String.format("%s/resultsets/%s/resultfeaturestats/%s", RESULTDATA_SERVICE, resultSetId, featureStatId);
     }
 
-
+    private static String after(Long after) {
+        return after == null ? "" : "&after=" + after;
+    }
 
 }
@@ -0,0 +1,129 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.client.impl;
+
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.util.PhaedraRestTemplate;
+import eu.openanalytics.phaedra.util.auth.IAuthorizationService;
+
+public class HttpResultDataServiceClientTest {
+
+    private static final String RESULT_SET = "{\"id\":1,\"protocolId\":2,\"plateId\":3,\"measId\":4}";
+
+    private final PhaedraRestTemplate restTemplate = new PhaedraRestTemplate();
+    private final MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+
+    @Test
+    public void sharedRestTemplateIsNotModified() {
+        var converters = List.copyOf(restTemplate.getMessageConverters());
+        new HttpResultDataServiceClient(restTemplate, mock(IAuthorizationService.class));
+        Assertions.assertEquals(converters, restTemplate.getMessageConverters());
+    }
+
+    @Test
+    public void requestBodiesAreSentAsCbor() throws Exception {
+        var client = new HttpResultDataServiceClient(restTemplate, mock(IAuthorizationService.class));
+        server.expect(requestTo(UrlFactory.resultSet()))
+            .andExpect(method(HttpMethod.POST))
+            .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+            .andRespond(withStatus(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON).body(RESULT_SET));
+
+        var resultSet = client.createResultDataSet(2L, 3L, 4L);
+
+        Assertions.assertEquals(1L, resultSet.getId());
+        server.verify();
+    }
+
+    @Test
+    public void fallsBackToJsonWhenTheServerRejectsCbor() throws Exception {
+        var client = new HttpResultDataServiceClient(restTemplate, mock(IAuthorizationService.class));
+        server.expect(requestTo(UrlFactory.resultSet()))
+            .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+            .andRespond(withStatus(HttpStatus.UNSUPPORTED_MEDIA_TYPE));
+        server.expect(requestTo(UrlFactory.resultSet()))
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$.plateId").value(3))
+            .andRespond(withStatus(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON).body(RESULT_SET));
+        // once the server rejected CBOR, JSON is sent right away
+        server.expect(requestTo(UrlFactory.resultSet()))
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andRespond(withStatus(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON).body(RESULT_SET));
+
+        Assertions.assertEquals(1L, client.createResultDataSet(2L, 3L, 4L).getId());
+        Assertions.assertEquals(1L, client.createResultDataSet(2L, 3L, 4L).getId());
+        server.verify();
+    }
+
+    @Test
+    public void pagesAreWalkedByNextAfter() throws Exception {
+        var client = new HttpResultDataServiceClient(restTemplate, mock(IAuthorizationService.class));
+        server.expect(requestTo(UrlFactory.resultData(1L, null)))
+            .andRespond(withSuccess(page("{\"id\":1,\"featureId\":10},{\"id\":2,\"featureId\":11}", false, 2L), MediaType.APPLICATION_JSON));
+        server.expect(requestTo(UrlFactory.resultData(1L, 2L)))
+            .andRespond(withSuccess(page("{\"id\":3,\"featureId\":12}", true, null), MediaType.APPLICATION_JSON));
+
+        var resultData = client.getResultData(1L);
+
+        Assertions.assertEquals(List.of(10L, 11L, 12L), resultData.stream().map(ResultDataDTO::getFeatureId).toList());
+        server.verify();
+    }
+
+    @Test
+    public void serverWithoutKeysetPaginationIsPagedByNumber() throws Exception {
+        var client = new HttpResultDataServiceClient(restTemplate, mock(IAuthorizationService.class));
+        // an old server ignores after and limit, and returns the first offset page without nextAfter
+        server.expect(requestTo(UrlFactory.resultFeatureStat(1L, null)))
+            .andRespond(withSuccess(page("{\"id\":1}", false, null), MediaType.APPLICATION_JSON));
+        server.expect(requestTo(UrlFactory.resultFeatureStatPage(1L, 0)))
+            .andRespond(withSuccess(page("{\"id\":1},{\"id\":2}", false, null), MediaType.APPLICATION_JSON));
+        server.expect(requestTo(UrlFactory.resultFeatureStatPage(1L, 1)))
+            .andRespond(withSuccess(page("{\"id\":3}", true, null), MediaType.APPLICATION_JSON));
+
+        var resultFeatureStats = client.getResultFeatureStat(1L);
+
+        Assertions.assertEquals(List.of(1L, 2L, 3L), resultFeatureStats.stream().map(ResultFeatureStatDTO::getId).toList());
+        server.verify();
+    }
+
+    private static String page(String data, boolean last, Long nextAfter) {
+        return String.format("{\"data\":[%s],\"status\":{\"totalPages\":-1,\"totalElements\":-1,\"first\":false,\"last\":%s,\"nextAfter\":%s}}",
+            data, last, nextAfter);
+    }
+
+}
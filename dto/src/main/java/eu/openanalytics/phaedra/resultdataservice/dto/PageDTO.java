@@ -47,6 +47,15 @@ public class PageDTO<T> {
         long totalElements;
         boolean first;
         boolean last;
+        /**
+         * Only set by keyset pagination ({@code ?after=&limit=}): the value of {@code after} to request the next
+         * page, {@code null} on the last page.
+         */
+        Long nextAfter;
+
+        public StatusDTO(int totalPages, long totalElements, boolean first, boolean last) {
+            this(totalPages, totalElements, first, last, null);
+        }
     }
 
     public static <R> PageDTO<R> map(Page<R> page) {
@@ -63,4 +72,29 @@ public class PageDTO<T> {
 
     }
 
+    /**
+     * Creates a page of keyset pagination, which does not know the total number of elements unless they were
+     * counted separately.
+     *
+     * @param first         whether this is the first page, i.e. no {@code after} was given
+     * @param nextAfter     the value of {@code after} to request the next page, or {@code null} on the last page
+     * @param totalElements the total number of elements, or {@code null} if not counted, in which case totalPages
+     *                      and totalElements are -1
+     * @param limit         the maximum number of elements per page
+     */
+    public static <R> PageDTO<R> keyset(List<R> data, boolean first, Long nextAfter, Long totalElements, int limit) {
+
+        return new PageDTO<>(
+            data,
+            new StatusDTO(
+                totalElements == null ? -1 : (int) Math.ceil((double) totalElements / limit),
+                totalElements == null ? -1 : totalElements,
+                first,
+                nextAfter == null,
+                nextAfter
+            )
+        );
+
+    }
+
 }
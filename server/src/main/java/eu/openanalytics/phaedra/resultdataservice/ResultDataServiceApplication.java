@@ -20,6 +20,9 @@
  */
 package eu.openanalytics.phaedra.resultdataservice;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import eu.openanalytics.phaedra.plateservice.client.config.PlateServiceClientAutoConfiguration;
@@ -39,6 +42,8 @@ import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.env.Environment;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -115,6 +120,19 @@ public class ResultDataServiceApplication {
         return AuthenticationConfigHelper.configure(http);
     }
 
+    /**
+     * Allows clients to exchange data as CBOR (application/cbor) instead of JSON, so that the float arrays of
+     * ResultData are sent as binary floats instead of decimal text.
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        ObjectMapper objectMapper = objectMapperBuilder
+            .factory(new CBORFactory())
+            .featuresToDisable(SerializationFeature.INDENT_OUTPUT)
+            .build();
+        return new MappingJackson2CborHttpMessageConverter(objectMapper);
+    }
+
     @Bean
     public Clock clock() {
         return Clock.systemDefaultZone();
@@ -21,119 +21,177 @@
 package eu.openanalytics.phaedra.resultdataservice.api;
 
 import eu.openanalytics.phaedra.plateservice.client.PlateServiceClient;
-import eu.openanalytics.phaedra.plateservice.client.exception.PlateUnresolvableException;
 import eu.openanalytics.phaedra.plateservice.dto.PlateDTO;
 import eu.openanalytics.phaedra.plateservice.dto.WellDTO;
-import eu.openanalytics.phaedra.protocolservice.client.ProtocolServiceClient;
-import eu.openanalytics.phaedra.protocolservice.client.exception.ProtocolUnresolvableException;
 import eu.openanalytics.phaedra.protocolservice.dto.ProtocolDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultDataNotFoundException;
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetNotFoundException;
 import eu.openanalytics.phaedra.resultdataservice.model.*;
+import eu.openanalytics.phaedra.resultdataservice.service.ReferenceDataCache;
+import eu.openanalytics.phaedra.resultdataservice.service.RemoteLookupExecutor;
 import eu.openanalytics.phaedra.resultdataservice.service.ResultDataService;
 import eu.openanalytics.phaedra.resultdataservice.service.ResultSetService;
+import org.dataloader.DataLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
 import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+/**
+ * Remote calls to the plate and protocol services are started concurrently on the {@link RemoteLookupExecutor}, and
+ * the remaining calls of a query are cancelled as soon as one of them fails. They are only started once the ResultSet
+ * of the query has been found, plates without a ResultSet give an empty result.
+ * Protocols are loaded through a DataLoader, so that every distinct protocol is fetched only once per request, no
+ * matter how many ResultSets or fields refer to it. Wells and protocols are served from the {@link ReferenceDataCache}
+ * when possible.
+ */
 @Controller
 public class PlateResultsGraphQLController {
 
     private final ResultSetService resultSetService;
     private final ResultDataService resultDataService;
-    private final ProtocolServiceClient protocolServiceClient;
     private final PlateServiceClient plateServiceClient;
+    private final RemoteLookupExecutor remoteLookupExecutor;
+    private final ReferenceDataCache referenceDataCache;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    public PlateResultsGraphQLController(ResultSetService resultSetService, ResultDataService resultDataService, ProtocolServiceClient protocolServiceClient, PlateServiceClient plateServiceClient) {
+    public PlateResultsGraphQLController(ResultSetService resultSetService, ResultDataService resultDataService, PlateServiceClient plateServiceClient,
+                                         RemoteLookupExecutor remoteLookupExecutor, ReferenceDataCache referenceDataCache, BatchLoaderRegistry batchLoaderRegistry) {
         this.resultSetService = resultSetService;
         this.resultDataService = resultDataService;
-        this.protocolServiceClient = protocolServiceClient;
         this.plateServiceClient = plateServiceClient;
+        this.remoteLookupExecutor = remoteLookupExecutor;
+        this.referenceDataCache = referenceDataCache;
+
+        batchLoaderRegistry.forTypePair(Long.class, ProtocolData.class)
+            .registerMappedBatchLoader((protocolIds, env) -> Mono.fromFuture(loadProtocols(protocolIds)));
     }
 
     @QueryMapping
-    public PlateResultSetData latestPlateResultByPlateId(@Argument long plateId) throws ResultSetNotFoundException, PlateUnresolvableException, ProtocolUnresolvableException {
+    public CompletableFuture<PlateResultSetData> latestPlateResultByPlateId(@Argument long plateId, DataLoader<Long, ProtocolData> protocolLoader) throws ResultSetNotFoundException {
         ResultSetDTO resultSetDTO = resultSetService.getLatestResultSetByPlateId(plateId, Optional.empty());
+        if (resultSetDTO == null) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-        PlateDTO plateDTO = plateServiceClient.getPlate(plateId);
-        List<WellDTO> wellDTOs = plateServiceClient.getWells(plateId);
-        logger.info(String.format("Number of wells for plate %s found: %s", plateId, wellDTOs.size()));
-        List<WellData> wells = wellDTOs.stream().map(w -> new WellData(w.getId(), w.getWellType(), w.getRow(), w.getColumn())).collect(Collectors.toList());
-        logger.info(String.format("Number of WellDTO objects mapped to WellData records: %s", wells.size()));
-        PlateData plate = new PlateData(plateId, plateDTO.getBarcode(), wells);
+        var plateDTO = remoteLookupExecutor.supplyAsync(() -> plateServiceClient.getPlate(plateId));
+        var wellDTOs = referenceDataCache.getWells(plateId);
+        RemoteLookupExecutor.cancelOnFailure(List.of(plateDTO, wellDTOs));
 
-        ProtocolDTO protocolDTO = protocolServiceClient.getProtocol(resultSetDTO.getProtocolId());
-        List<FeatureData> features = protocolDTO.getFeatures().stream().map(f -> new FeatureData(f.getId(), f.getName())).collect(Collectors.toList());
-        ProtocolData protocol = new ProtocolData(protocolDTO.getId(), protocolDTO.getName(), features);
+        var protocol = protocolLoader.load(resultSetDTO.getProtocolId());
 
-        return new PlateResultSetData(plate, protocol);
+        var plate = plateDTO.thenCombine(wellDTOs, (PlateDTO p, List<WellDTO> w) -> {
+            logger.info(String.format("Number of wells for plate %s found: %s", plateId, w.size()));
+            List<WellData> wells = w.stream().map(wellDTO -> new WellData(wellDTO.getId(), wellDTO.getWellType(), wellDTO.getRow(), wellDTO.getColumn())).collect(Collectors.toList());
+            return new PlateData(plateId, p.getBarcode(), wells);
+        });
+        return plate.thenCombine(protocol, PlateResultSetData::new);
     }
 
     @QueryMapping
-    public List<ProtocolData> protocolsByPlateId(@Argument long plateId) throws ResultSetNotFoundException {
-        List<ProtocolData> result = new ArrayList<>();
-
+    public CompletableFuture<List<ProtocolData>> protocolsByPlateId(@Argument long plateId, DataLoader<Long, ProtocolData> protocolLoader) throws ResultSetNotFoundException {
         List<ResultSetDTO> resultSets = resultSetService.getResultSetsByPlateId(plateId, Optional.empty());
-        if (resultSets.isEmpty()) return result;
-
-        List<Long> protocolIds = resultSets.stream().map(rs -> rs.getProtocolId()).distinct().collect(Collectors.toList());
-        return protocolIds.stream().map(pId -> {
-            try {
-                ProtocolDTO protocolDTO = protocolServiceClient.getProtocol(pId);
-                List<FeatureData> features = protocolDTO.getFeatures().stream().map(f -> new FeatureData(f.getId(), f.getName())).collect(Collectors.toList());
-                return  new ProtocolData(protocolDTO.getId(), protocolDTO.getName(), features);
-            } catch (ProtocolUnresolvableException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList());
+        return loadProtocols(resultSets, protocolLoader);
     }
 
     @QueryMapping
-    public List<ProtocolData> protocolsByExperimentId(@Argument long experimentId) throws ResultSetNotFoundException {
-        List<ProtocolData> result = new ArrayList<>();
-
+    public CompletableFuture<List<ProtocolData>> protocolsByExperimentId(@Argument long experimentId, DataLoader<Long, ProtocolData> protocolLoader) throws ResultSetNotFoundException {
         List<PlateDTO> plates = plateServiceClient.getPlatesByExperiment(experimentId);
 
-        List<ResultSetDTO> resultSets = new ArrayList<>();
-        for (PlateDTO plate: plates) {
-            resultSets.addAll(resultSetService.getResultSetsByPlateId(plate.getId(), Optional.empty()));
-        }
+        List<Long> plateIds = plates.stream().map(PlateDTO::getId).toList();
+        List<ResultSetDTO> resultSets = resultSetService.getResultSetsByPlateIds(plateIds);
+        return loadProtocols(resultSets, protocolLoader);
+    }
 
-        if (resultSets.isEmpty()) return result;
+    @QueryMapping
+    public CompletableFuture<List<FeatureValue>> featureValuesByPlateIdAndFeatureId(@Argument long plateId, @Argument long featureId) throws ResultSetNotFoundException, ResultDataNotFoundException {
+        ResultSetDTO latestResultSet = resultSetService.getLatestResultSetByPlateId(plateId, Optional.empty());
+        if (latestResultSet == null) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        ResultDataDTO resultData = resultDataService.getResultDataByResultSetIdAndFeatureId(latestResultSet.getId(), featureId);
+        var wellDTOs = referenceDataCache.getWells(plateId);
 
-        List<Long> protocolIds = resultSets.stream().map(rs -> rs.getProtocolId()).distinct().collect(Collectors.toList());
-        return protocolIds.stream().map(pId -> {
-            try {
-                ProtocolDTO protocolDTO = protocolServiceClient.getProtocol(pId);
-                List<FeatureData> features = protocolDTO.getFeatures().stream().map(f -> new FeatureData(f.getId(), f.getName())).collect(Collectors.toList());
-                return  new ProtocolData(protocolDTO.getId(), protocolDTO.getName(), features);
-            } catch (ProtocolUnresolvableException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList());
+        return wellDTOs.thenApply(wells -> IntStream.range(0, resultData.getValues().length)
+                .mapToObj(i -> new FeatureValue(plateId, featureId, resultData.getValues()[i], wells.get(i).getId(), wells.get(i).getWellType(), wells.get(i).getRow(), wells.get(i).getColumn()))
+                .collect(Collectors.toList()));
     }
 
+    /**
+     * Columnar alternative to {@link #featureValuesByPlateIdAndFeatureId}: returns the values of several features of
+     * the latest ResultSet of a plate, without repeating the well properties for every value. Features are returned
+     * in the requested order, features without ResultData are omitted.
+     */
     @QueryMapping
-    public List<FeatureValue> featureValuesByPlateIdAndFeatureId(@Argument long plateId, @Argument long featureId) throws ResultSetNotFoundException, ResultDataNotFoundException, PlateUnresolvableException {
+    public CompletableFuture<PlateFeatureColumns> featureColumnsByPlateId(@Argument long plateId, @Argument List<Long> featureIds) throws ResultSetNotFoundException {
         ResultSetDTO latestResultSet = resultSetService.getLatestResultSetByPlateId(plateId, Optional.empty());
+        if (latestResultSet == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Map<Long, ResultData> resultData = resultDataService.getResultDataByResultSetIdAndFeatureIds(latestResultSet.getId(), featureIds)
+            .stream().collect(Collectors.toMap(ResultData::getFeatureId, Function.identity(), (a, b) -> a));
+        List<FeatureColumn> features = featureIds.stream()
+            .distinct()
+            .filter(resultData::containsKey)
+            .map(featureId -> new FeatureColumn(featureId, latestResultSet.getId(), resultData.get(featureId).getValues()))
+            .toList();
+
+        return referenceDataCache.getWells(plateId).thenApply(wells -> {
+            int wellCount = wells.size();
+            var wellIds = new long[wellCount];
+            var wellTypes = new String[wellCount];
+            var rows = new int[wellCount];
+            var columns = new int[wellCount];
+            for (int i = 0; i < wellCount; i++) {
+                var well = wells.get(i);
+                wellIds[i] = well.getId();
+                wellTypes[i] = well.getWellType();
+                rows[i] = well.getRow();
+                columns[i] = well.getColumn();
+            }
+            return new PlateFeatureColumns(plateId, wellIds, wellTypes, rows, columns, features);
+        });
+    }
 
-        ResultDataDTO resultData = resultDataService.getResultDataByResultSetIdAndFeatureId(latestResultSet.getId(), featureId);
-        List<WellDTO> wells = plateServiceClient.getWells(plateId);
+    /**
+     * Loads the distinct protocols of the given ResultSets, in order of first occurrence.
+     */
+    private CompletableFuture<List<ProtocolData>> loadProtocols(List<ResultSetDTO> resultSets, DataLoader<Long, ProtocolData> protocolLoader) {
+        List<Long> protocolIds = resultSets.stream().map(ResultSetDTO::getProtocolId).distinct().toList();
+        return protocolLoader.loadMany(protocolIds);
+    }
 
-        return IntStream.range(0, resultData.getValues().length)
-                .mapToObj(i -> new FeatureValue(plateId, featureId, resultData.getValues()[i], wells.get(i).getId(), wells.get(i).getWellType(), wells.get(i).getRow(), wells.get(i).getColumn()))
-                .collect(Collectors.toList());
+    /**
+     * Batch loader for {@link ProtocolData}: fetches all requested protocols concurrently, unless they are cached.
+     */
+    private CompletableFuture<Map<Long, ProtocolData>> loadProtocols(Set<Long> protocolIds) {
+        var protocols = protocolIds.stream()
+            .map(protocolId -> referenceDataCache.getProtocol(protocolId).thenApply(PlateResultsGraphQLController::toProtocolData))
+            .toList();
+        RemoteLookupExecutor.cancelOnFailure(protocols);
+        return CompletableFuture.allOf(protocols.toArray(CompletableFuture[]::new))
+            .thenApply(v -> protocols.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toMap(ProtocolData::protocolId, Function.identity())));
+    }
+
+    private static ProtocolData toProtocolData(ProtocolDTO protocolDTO) {
+        List<FeatureData> features = protocolDTO.getFeatures().stream().map(f -> new FeatureData(f.getId(), f.getName())).collect(Collectors.toList());
+        return new ProtocolData(protocolDTO.getId(), protocolDTO.getName(), features);
     }
 }
@@ -20,34 +20,46 @@
  */
 package eu.openanalytics.phaedra.resultdataservice.api;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
+import javax.validation.Valid;
+
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import eu.openanalytics.phaedra.resultdataservice.dto.FeatureMatrixQueryDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.LatestResultSetsQueryDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.PlateResultDTO;
-import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
-import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import eu.openanalytics.phaedra.resultdataservice.service.FeatureMatrixExportService;
 import eu.openanalytics.phaedra.resultdataservice.service.ModelMapper;
+import eu.openanalytics.phaedra.resultdataservice.service.PlateResultAssembler;
+import eu.openanalytics.phaedra.resultdataservice.service.PlateResultStreamService;
 import eu.openanalytics.phaedra.resultdataservice.service.ResultDataService;
 import eu.openanalytics.phaedra.resultdataservice.service.ResultFeatureStatService;
 import eu.openanalytics.phaedra.resultdataservice.service.ResultSetService;
 import eu.openanalytics.phaedra.util.exceptionhandling.UserVisibleException;
 import eu.openanalytics.phaedra.util.exceptionhandling.UserVisibleExceptionHandler;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * Convenience API for retrieving result data based on plate IDs.
@@ -60,13 +72,25 @@ public class PlateResultsRestController implements UserVisibleExceptionHandler {
     private final ResultSetService resultSetService;
     private final ResultDataService resultDataService;
     private final ResultFeatureStatService resultFeatureStatService;
+    private final PlateResultStreamService plateResultStreamService;
+    private final FeatureMatrixExportService featureMatrixExportService;
     private final ModelMapper modelMapper;
+    private final DistributionSummary resultDataCount;
 
-    public PlateResultsRestController(ResultSetService resultSetService, ResultDataService resultDataService, ResultFeatureStatService resultFeatureStatService, ModelMapper modelMapper) {
+    public PlateResultsRestController(ResultSetService resultSetService, ResultDataService resultDataService, ResultFeatureStatService resultFeatureStatService,
+    		PlateResultStreamService plateResultStreamService, FeatureMatrixExportService featureMatrixExportService, ModelMapper modelMapper,
+    		MeterRegistry meterRegistry) {
         this.resultSetService = resultSetService;
         this.resultDataService = resultDataService;
         this.resultFeatureStatService = resultFeatureStatService;
+        this.plateResultStreamService = plateResultStreamService;
+        this.featureMatrixExportService = featureMatrixExportService;
         this.modelMapper = modelMapper;
+        this.resultDataCount = DistributionSummary.builder("phaedra2.plateresults.resultdata")
+            .description("Number of ResultData in a plate-results response")
+            .baseUnit("resultdata")
+            .tag("endpoint", "rest")
+            .register(meterRegistry);
     }
 
     @GetMapping("/{plateId}")
@@ -89,82 +113,120 @@ public class PlateResultsRestController implements UserVisibleExceptionHandler {
         return getPlateResults(resultSets);
     }
 
-    private PlateResultDTO getPlateResults(List<ResultSetDTO> resultSets) throws UserVisibleException {
-        if (resultSets.size() > 100) {
-            throw new UserVisibleException(String.format("Found too many ResultSets for this plate, only 100 ResultSets can be prossed, found %s ResultSets.", resultSets.size()));
+    /**
+     * Returns the results of the latest ResultSet of every (protocol, measurement) combination of each of the given
+     * plates, by plateId. Plates without a (matching) ResultSet are omitted. The ResultSets, their ResultData and
+     * their ResultFeatureStats are each fetched using a single query, regardless of the number of plates.
+     */
+    @PostMapping("/latest")
+    @ResponseBody
+    public Map<Long, PlateResultDTO> getLatestPlateResults(@Valid @RequestBody LatestResultSetsQueryDTO query) throws UserVisibleException {
+        var resultSets = resultSetService.getLatestResultSetsPerProtocolAndMeas(query.getPlateIds(),
+            Optional.ofNullable(query.getMeasId()), Optional.ofNullable(query.getProtocolId()));
+        if (resultSets.isEmpty()) {
+            return Map.of();
+        }
+        var resultSetsByPlate = resultSets.stream().collect(Collectors.groupingBy(ResultSetDTO::getPlateId));
+        for (var plateResultSets : resultSetsByPlate.values()) {
+            checkResultSetCount(plateResultSets);
         }
 
         var resultIds = resultSets.stream().map(ResultSetDTO::getId).toList();
+        var plateIdByResultSet = resultSets.stream().collect(Collectors.toMap(ResultSetDTO::getId, ResultSetDTO::getPlateId));
+        var resultDataByPlate = resultDataService.getResultDataByResultSetIds(resultIds).stream()
+            .collect(Collectors.groupingBy(rd -> plateIdByResultSet.get(rd.getResultSetId())));
+        var resultFeatureStatsByPlate = resultFeatureStatService.getResultFeatureStatsByResultIds(resultIds).stream()
+            .collect(Collectors.groupingBy(stat -> plateIdByResultSet.get(stat.getResultSetId())));
+
+        var plateResults = new LinkedHashMap<Long, PlateResultDTO>();
+        for (var plateId : query.getPlateIds()) {
+            var plateResultSets = resultSetsByPlate.get(plateId);
+            if (plateResultSets == null || plateResults.containsKey(plateId)) {
+                continue;
+            }
+            var resultData = resultDataByPlate.getOrDefault(plateId, List.of());
+            resultDataCount.record(resultData.size());
+            plateResults.put(plateId, PlateResultAssembler.assemble(plateResultSets, resultData,
+                resultFeatureStatsByPlate.getOrDefault(plateId, List.of()), modelMapper));
+        }
+        return plateResults;
+    }
+
+    /**
+     * Streaming variant of {@link #getPlateResults(Long, Optional)}: the results are written while they are read from
+     * the database, so that there is no limit on the number of ResultSets.
+     */
+    @GetMapping(value = "/{plateId}/stream", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<StreamingResponseBody> streamPlateResults(@PathVariable(name = "plateId") Long plateId,
+                                                                    @RequestParam(name = "measId") Optional<Long> measId,
+                                                                    @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept) throws UserVisibleException {
+        var resultSets = resultSetService.getResultSetsByPlateId(plateId, measId);
+        return streamPlateResults(resultSets, accept);
+    }
+
+    @GetMapping(value = "/{plateId}/latest/stream", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<StreamingResponseBody> streamLatestPlateResults(@PathVariable(name = "plateId") Long plateId,
+                                                                          @RequestParam(name = "measId") Optional<Long> measId,
+                                                                          @RequestParam(name = "protocolId") Optional<Long> protocolId,
+                                                                          @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept) throws UserVisibleException {
+        var resultSets = resultSetService.getLatestResultSetsByPlateId(plateId, measId, protocolId);
+        return streamPlateResults(resultSets, accept);
+    }
 
-        // 2. get ResultData for these ResultSets and group by ResultData
-        var resultData = resultDataService
-            .getResultDataByResultSetIds(resultIds)
-            .stream()
-            .collect(Collectors.groupingBy(
-                ResultData::getResultSetId,
-                Collectors.toList()
-            ));
-
-        // 3. get ResultFeatureStats for these ResultData and group by ResultSetId and FeatureId (FeatureId is unique for one protocol)
-        var resultFeatureStats = resultFeatureStatService.getResultFeatureStatsByResultIds(resultIds)
-            .stream()
-            .collect(Collectors.groupingBy(
-                ResultFeatureStatDTO::getResultSetId,
-                Collectors.groupingBy(
-                    ResultFeatureStatDTO::getFeatureId,
-                    Collectors.toList()
-                )
-            ));
-
-        // 4. group resultSets by ProtocolId and MeasId
-        var resultSetsByProtocolAndMeasId = resultSets.stream()
-            .collect(Collectors.groupingBy(
-                    ResultSetDTO::getProtocolId,
-                    Collectors.groupingBy(
-                        ResultSetDTO::getMeasId,
-                        Collectors.toList()
-                    )
-                )
-            );
-
-        // convert all the data
-        var results = new HashMap<Long, PlateResultDTO.ResultsPerProtocolDTO>();
-        resultSetsByProtocolAndMeasId.forEach((protocolId, measurements) -> {
-            var protocolBuilder = PlateResultDTO.ResultsPerProtocolDTO.builder();
-
-            // convert the measurements into DTO objects
-            var convertedMeasurements = new ArrayListValuedHashMap<Long, PlateResultDTO.ResultsPerMeasurement>();
-            measurements.forEach((measurementId, measurement) -> {
-                for (var resultSet : measurement) {
-                    if (!resultData.containsKey(resultSet.getId())) continue;
-                    // for each ResultSet, get ResultData, convert it to DTO and attach the relevant FeatureStats
-                    var convertedResultData = resultData.get(resultSet.getId())
-                        .stream()
-                        .map(it -> modelMapper.map(it)
-                                .resultFeatureStats(
-                                    getFeatureStats(resultFeatureStats, it)
-                                ).build()
-                        ).toList();
-
-                    convertedMeasurements.put(measurementId, PlateResultDTO.ResultsPerMeasurement.builder().resultData(convertedResultData).build());
-                }
-            });
-
-            protocolBuilder.measurements(convertedMeasurements.asMap());
-
-            results.put(protocolId, protocolBuilder.build());
-        });
-
-        return PlateResultDTO.builder().protocols(results).build();
+    private ResponseEntity<StreamingResponseBody> streamPlateResults(List<ResultSetDTO> resultSets, String accept) {
+        var mediaType = selectStreamingMediaType(accept);
+        return ResponseEntity.ok()
+            .contentType(mediaType)
+            .body(outputStream -> plateResultStreamService.writePlateResults(resultSets, mediaType, outputStream));
     }
 
-    private List<ResultFeatureStatDTO> getFeatureStats(Map<Long, Map<Long, List<ResultFeatureStatDTO>>> resultFeatureStats, ResultData resultData) {
-        if (resultFeatureStats.containsKey(resultData.getResultSetId())) {
-            if (resultFeatureStats.get(resultData.getResultSetId()).containsKey(resultData.getFeatureId())) {
-                return resultFeatureStats.get(resultData.getResultSetId()).get(resultData.getFeatureId());
+    /**
+     * Exports the values of the given features of the latest ResultSet of each plate as an Apache Arrow IPC stream,
+     * see {@link FeatureMatrixExportService} for the layout.
+     */
+    @PostMapping(value = "/matrix", produces = FeatureMatrixExportService.ARROW_STREAM_MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportFeatureMatrix(@Valid @RequestBody FeatureMatrixQueryDTO query) {
+        var resultSets = resultSetService.getLatestResultSetPerPlate(query.getPlateIds(),
+            Optional.ofNullable(query.getMeasId()), Optional.ofNullable(query.getProtocolId()));
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(FeatureMatrixExportService.ARROW_STREAM_MEDIA_TYPE))
+            .body(outputStream -> featureMatrixExportService.writeFeatureMatrix(resultSets, query.getFeatureIds(), outputStream));
+    }
+
+    /**
+     * Returns CBOR if the client prefers it over JSON, JSON otherwise.
+     */
+    private static MediaType selectStreamingMediaType(String accept) {
+        if (accept == null) {
+            return MediaType.APPLICATION_JSON;
+        }
+        var acceptedMediaTypes = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(acceptedMediaTypes);
+        for (var mediaType : acceptedMediaTypes) {
+            if (mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_CBOR)) {
+                return MediaType.APPLICATION_CBOR;
+            }
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return MediaType.APPLICATION_JSON;
             }
         }
-        return Collections.emptyList();
+        return MediaType.APPLICATION_JSON;
+    }
+
+    private PlateResultDTO getPlateResults(List<ResultSetDTO> resultSets) throws UserVisibleException {
+        checkResultSetCount(resultSets);
+
+        var resultIds = resultSets.stream().map(ResultSetDTO::getId).toList();
+        var resultData = resultDataService.getResultDataByResultSetIds(resultIds);
+        var resultFeatureStats = resultFeatureStatService.getResultFeatureStatsByResultIds(resultIds);
+        resultDataCount.record(resultData.size());
+        return PlateResultAssembler.assemble(resultSets, resultData, resultFeatureStats, modelMapper);
+    }
+
+    private static void checkResultSetCount(List<ResultSetDTO> resultSets) throws UserVisibleException {
+        if (resultSets.size() > 100) {
+            throw new UserVisibleException(String.format("Found too many ResultSets for this plate, only 100 ResultSets can be prossed, found %s ResultSets.", resultSets.size()));
+        }
     }
 
 }
@@ -20,11 +20,19 @@
  */
 package eu.openanalytics.phaedra.resultdataservice.api;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+
 import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -34,6 +42,10 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
 
 import eu.openanalytics.phaedra.resultdataservice.dto.PageDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
@@ -41,7 +53,10 @@ import eu.openanalytics.phaedra.resultdataservice.exception.InvalidResultSetIdEx
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultDataNotFoundException;
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetAlreadyCompletedException;
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetNotFoundException;
+import eu.openanalytics.phaedra.resultdataservice.service.FeatureMatrixExportService;
+import eu.openanalytics.phaedra.resultdataservice.service.ResultDataArrowService;
 import eu.openanalytics.phaedra.resultdataservice.service.ResultDataService;
+import eu.openanalytics.phaedra.resultdataservice.service.ResultSetService;
 import eu.openanalytics.phaedra.util.dto.validation.OnCreate;
 import eu.openanalytics.phaedra.util.exceptionhandling.HttpMessageNotReadableExceptionHandler;
 import eu.openanalytics.phaedra.util.exceptionhandling.MethodArgumentNotValidExceptionHandler;
@@ -51,10 +66,16 @@ import eu.openanalytics.phaedra.util.exceptionhandling.UserVisibleExceptionHandl
 @Validated
 public class ResultDataController implements MethodArgumentNotValidExceptionHandler, HttpMessageNotReadableExceptionHandler, UserVisibleExceptionHandler {
 
+    private static final MediaType ARROW_STREAM = MediaType.parseMediaType(FeatureMatrixExportService.ARROW_STREAM_MEDIA_TYPE);
+
     private final ResultDataService resultDataService;
+    private final ResultSetService resultSetService;
+    private final ResultDataArrowService resultDataArrowService;
 
-    public ResultDataController(ResultDataService resultDataService) {
+    public ResultDataController(ResultDataService resultDataService, ResultSetService resultSetService, ResultDataArrowService resultDataArrowService) {
         this.resultDataService = resultDataService;
+        this.resultSetService = resultSetService;
+        this.resultDataArrowService = resultDataArrowService;
     }
 
     @PostMapping("/resultsets/{resultSetId}/resultdata")
@@ -64,12 +85,33 @@ public class ResultDataController implements MethodArgumentNotValidExceptionHand
         return resultDataService.create(resultSetId, resultDataDTO);
     }
 
+    @PostMapping("/resultsets/{resultSetId}/resultdata/batch")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.CREATED)
+    @Validated(OnCreate.class)
+    public List<ResultDataDTO> createResultDataBatch(@PathVariable long resultSetId, @RequestBody @Validated(OnCreate.class) ResultDataDTOList resultDataDTOList) throws ResultSetNotFoundException, ResultSetAlreadyCompletedException {
+        return resultDataService.create(resultSetId, resultDataDTOList.getList());
+    }
+
+    /**
+     * Supports two kinds of pagination: offset pagination ({@code page} and {@code pageSize}) and, when {@code after}
+     * or {@code limit} is given, keyset pagination. Keyset pagination returns the first {@code limit} ResultData with
+     * an id larger than {@code after}, which does not get slower for later pages, and only counts the total number
+     * of ResultData when {@code count} is set. The next page is requested using {@code status.nextAfter}.
+     */
     @GetMapping("/resultsets/{resultSetId}/resultdata")
     @ResponseBody
     public PageDTO<ResultDataDTO> getResultData(@PathVariable long resultSetId,
                                                 @RequestParam(name = "page", required = false, defaultValue = "0") Integer page,
                                                 @RequestParam(name = "pageSize", required = false) Optional<Integer> pageSize,
+                                                @RequestParam(name = "after", required = false) Long after,
+                                                @RequestParam(name = "limit", required = false) Optional<@Min(1) Integer> limit,
+                                                @RequestParam(name = "count", required = false, defaultValue = "false") boolean count,
                                                 @RequestParam(name = "featureId", required = false) Integer featureId) throws ResultSetNotFoundException {
+        if (after != null || limit.isPresent()) {
+            var featureIdFilter = featureId == null ? null : featureId.longValue();
+            return resultDataService.getResultDataAfter(resultSetId, featureIdFilter, after, limit, count).toPageDTO(after);
+        }
         Page<ResultDataDTO> pages;
         if (featureId == null) {
             pages = resultDataService.getPagedResultData(resultSetId, page, pageSize);
@@ -79,6 +121,32 @@ public class ResultDataController implements MethodArgumentNotValidExceptionHand
         return PageDTO.map(pages);
     }
 
+    /**
+     * Returns all ResultData of the ResultSet as an Apache Arrow IPC stream, see {@link ResultDataArrowService}.
+     */
+    @GetMapping(value = "/resultsets/{resultSetId}/resultdata/arrow", produces = FeatureMatrixExportService.ARROW_STREAM_MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> getResultDataAsArrow(@PathVariable long resultSetId) throws ResultSetNotFoundException {
+        if (!resultSetService.exists(resultSetId)) {
+            throw new ResultSetNotFoundException(resultSetId);
+        }
+        return streamResultDataAsArrow(List.of(resultSetId));
+    }
+
+    /**
+     * Returns all ResultData of the given ResultSets (e.g. the latest ResultSets of the plates of an experiment) as a
+     * single Apache Arrow IPC stream. Unknown ResultSet ids are ignored.
+     */
+    @GetMapping(value = "/resultdata/arrow", produces = FeatureMatrixExportService.ARROW_STREAM_MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> getResultDataAsArrow(@RequestParam(name = "resultSetIds") List<Long> resultSetIds) {
+        return streamResultDataAsArrow(resultSetIds.stream().distinct().toList());
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamResultDataAsArrow(List<Long> resultSetIds) {
+        return ResponseEntity.ok()
+            .contentType(ARROW_STREAM)
+            .body(outputStream -> resultDataArrowService.writeResultData(resultSetIds, outputStream));
+    }
+
     @GetMapping("/resultsets/{resultSetId}/resultdata/{resultDataId}")
     @ResponseBody
     public ResultDataDTO getResultData(@PathVariable long resultSetId, @PathVariable long resultDataId) throws ResultSetNotFoundException, ResultDataNotFoundException {
@@ -92,4 +160,28 @@ public class ResultDataController implements MethodArgumentNotValidExceptionHand
         resultDataService.delete(resultSetId, resultDataId);
     }
 
+    /**
+     * Wraps the list of ResultData so that every object in the list is validated,
+     * see {@link ResultFeatureStatController.ResultFeatureStatDTOList}.
+     * In that case a {@link MethodArgumentNotValidException} is thrown, which we can properly handle.
+     */
+    static class ResultDataDTOList {
+        @JsonValue
+        @Valid
+        private List<ResultDataDTO> list;
+
+        @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+        public ResultDataDTOList(ResultDataDTO... list) {
+            this.list = Arrays.asList(list);
+        }
+
+        public List<ResultDataDTO> getList() {
+            return list;
+        }
+
+        public void setList(List<ResultDataDTO> list) {
+            this.list = list;
+        }
+    }
+
 }
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Optional;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 
 import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
@@ -74,12 +75,25 @@ public class ResultFeatureStatController implements MethodArgumentNotValidExcept
         return resultFeatureStatService.create(resultSetId, resultFeatureStatDTOList.list);
     }
 
+    /**
+     * Supports two kinds of pagination: offset pagination ({@code page} and {@code pageSize}) and, when {@code after}
+     * or {@code limit} is given, keyset pagination. Keyset pagination returns the first {@code limit} ResultFeatureStats with
+     * an id larger than {@code after}, which does not get slower for later pages, and only counts the total number
+     * of ResultFeatureStats when {@code count} is set. The next page is requested using {@code status.nextAfter}.
+     */
     @GetMapping("/resultsets/{resultSetId}/resultfeaturestats")
     @ResponseBody
     public PageDTO<ResultFeatureStatDTO> getResultFeatureStat(@PathVariable long resultSetId,
                                                               @RequestParam(name = "page", required = false, defaultValue = "0") Integer page,
                                                               @RequestParam(name = "pageSize", required = false) Optional<Integer> pageSize,
+                                                              @RequestParam(name = "after", required = false) Long after,
+                                                              @RequestParam(name = "limit", required = false) Optional<@Min(1) Integer> limit,
+                                                              @RequestParam(name = "count", required = false, defaultValue = "false") boolean count,
                                                               @RequestParam(name = "featureId", required = false) Integer featureId) throws ResultSetNotFoundException {
+        if (after != null || limit.isPresent()) {
+            var featureIdFilter = featureId == null ? null : featureId.longValue();
+            return resultFeatureStatService.getResultFeatureStatsAfter(resultSetId, featureIdFilter, after, limit, count).toPageDTO(after);
+        }
         Page<ResultFeatureStatDTO> pages;
         if (featureId == null) {
             pages = resultFeatureStatService.getPagedResultFeatureStats(resultSetId, page, pageSize);
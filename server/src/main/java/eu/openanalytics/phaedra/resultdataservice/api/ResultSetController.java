@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Optional;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.validation.annotation.Validated;
@@ -39,6 +40,7 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import eu.openanalytics.phaedra.resultdataservice.dto.LatestResultSetsQueryDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.PageDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
 import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
@@ -88,13 +90,26 @@ public class ResultSetController implements MethodArgumentNotValidExceptionHandl
         return resultSetService.getResultSetById(id);
     }
 
+    /**
+     * Supports two kinds of pagination: offset pagination ({@code page} and {@code pageSize}) and, when {@code after}
+     * or {@code limit} is given, keyset pagination. Keyset pagination returns the first {@code limit} ResultSets with
+     * an id larger than {@code after}, which does not get slower for later pages, and only counts the total number
+     * of ResultSets when {@code count} is set. The next page is requested using {@code status.nextAfter}.
+     * Filtering on {@code plateId} always returns all ResultSets of the plate.
+     */
     @GetMapping
     @ResponseBody
     public PageDTO<ResultSetDTO> getResultSets(
     		@RequestParam(name = "page", required = false, defaultValue = "0") Integer page,
     		@RequestParam(name = "pageSize", required = false) Optional<Integer> pageSize,
+    		@RequestParam(name = "after", required = false) Long after,
+    		@RequestParam(name = "limit", required = false) Optional<@Min(1) Integer> limit,
+    		@RequestParam(name = "count", required = false, defaultValue = "false") boolean count,
     		@RequestParam(name = "plateId", required = false) Long plateId,
     		@RequestParam(name = "outcome", required = false) @Valid StatusCode outcome) {
+    	if (plateId == null && (after != null || limit.isPresent())) {
+    		return resultSetService.getResultSetsAfter(outcome, after, limit, count).toPageDTO(after);
+    	}
     	return PageDTO.map(resultSetService.getPagedResultSets(plateId, outcome, page, pageSize));
     }
 
@@ -108,4 +123,10 @@ public class ResultSetController implements MethodArgumentNotValidExceptionHandl
 
         return resultSetService.getTopNResultsSets(n, plateId, measId, protocolId);
     }
+
+    @PostMapping("/latest/batch")
+    @ResponseBody
+    public List<ResultSetDTO> getLatestResultSetsByPlateIds(@Valid @RequestBody LatestResultSetsQueryDTO query) {
+        return resultSetService.getLatestResultSetPerPlate(query.getPlateIds(), Optional.ofNullable(query.getMeasId()), Optional.ofNullable(query.getProtocolId()));
+    }
 }
@@ -20,10 +20,38 @@
  */
 package eu.openanalytics.phaedra.resultdataservice.config;
 
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaConsumerFactoryCustomizer;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.kafka.annotation.EnableKafka;
-import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 
 @Configuration
 @EnableKafka
@@ -33,21 +61,165 @@ public class KafkaConfig {
 	
     // Topics
     public static final String TOPIC_RESULTDATA = "resultdata";
+    public static final String TOPIC_RESULTDATA_DLT = TOPIC_RESULTDATA + ".DLT";
+    // Topics of the plate and protocol services, only used to invalidate the ReferenceDataCache
+    public static final String TOPIC_PLATES = "plates";
+    public static final String TOPIC_PROTOCOLS = "protocols";
+
+    // Every instance has its own cache, and must therefore receive all invalidation events: one group per instance
+    public static final String CACHE_INVALIDATION_GROUP_ID = GROUP_ID + "_cache_${phaedra2.result-data-service.kafka.instance-id:${HOSTNAME:local}}";
+
+    // Number of consumers per listener (and instance of the service), each consuming a share of the partitions
+    public static final String LISTENER_CONCURRENCY = "${phaedra2.result-data-service.kafka.listener-concurrency:1}";
+
+    // Listener container factories
+    public static final String BATCH_LISTENER_CONTAINER_FACTORY = "batchListenerContainerFactory";
+    public static final String CACHE_INVALIDATION_LISTENER_CONTAINER_FACTORY = "cacheInvalidationListenerContainerFactory";
 
     // Events
     public static final String EVENT_SAVE_RESULT_DATA = "saveResultData";
     public static final String EVENT_SAVE_RESULT_STATS = "saveResultStats";
     
     public static final String EVENT_RESULT_SET_UPDATED = "resultSetUpdated";
+    public static final String EVENT_RESULT_SET_DELETED = "resultSetDeleted";
     public static final String EVENT_RESULT_DATA_UPDATED = "resultDataUpdated";
     public static final String EVENT_RESULT_FEATURE_STAT_UPDATED = "resultFeatureStatUpdated";
+    // Envelopes of several ResultData/ResultFeatureStats of the same ResultSet
+    public static final String EVENT_RESULT_DATA_BATCH_UPDATED = "resultDataBatchUpdated";
+    public static final String EVENT_RESULT_FEATURE_STAT_BATCH_UPDATED = "resultFeatureStatBatchUpdated";
+
+    /**
+     * Header holding the event type. The events of this service are keyed by resultSetId, so that they are
+     * partitioned by ResultSet and the events of a ResultSet stay ordered (the {@code EventOutboxRelay} publishes
+     * them in order).
+     * <p>
+     * Older versions used the event type as key: consumers that select events on {@code rec.key()} no longer see
+     * the events of this service, and must use this header (or {@link #eventType}) instead.
+     */
+    public static final String HEADER_EVENT_TYPE = "eventType";
+
+    /**
+     * Returns the type of an event: the {@link #HEADER_EVENT_TYPE} header, or the key for producers that still use
+     * the event type as key.
+     */
+    public static String eventType(ConsumerRecord<?, ?> rec) {
+        var header = rec.headers().lastHeader(HEADER_EVENT_TYPE);
+        if (header != null) {
+            return new String(header.value(), StandardCharsets.UTF_8);
+        }
+        return rec.key() == null ? null : rec.key().toString();
+    }
+
+    /**
+     * Container factory for listeners that receive a whole poll as a {@code List<ConsumerRecord<String, byte[]>>}.
+     * The values are not deserialized, so that the listener can skip the events it is not interested in based on
+     * their {@link #eventType} without parsing them.
+     * Offsets are committed once the listener has processed the complete batch.
+     */
+    @Bean(BATCH_LISTENER_CONTAINER_FACTORY)
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer, KafkaProperties kafkaProperties) {
+        // Not a bean: that would replace the auto-configured consumer factory of the other listeners
+        var consumerFactory = new DefaultKafkaConsumerFactory<Object, Object>(kafkaProperties.buildConsumerProperties(),
+            (Deserializer) new StringDeserializer(), (Deserializer) new ByteArrayDeserializer());
+        var factory = new ConcurrentKafkaListenerContainerFactory<Object, Object>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        return factory;
+    }
+
+    /**
+     * Container factory for the listeners of the {@link #CACHE_INVALIDATION_GROUP_ID}. These listeners only need the
+     * events published while the instance is running, so they never commit offsets: a group without committed
+     * offsets is removed by the broker as soon as its instance stops, instead of being kept until the offsets expire.
+     * The values are not deserialized: the listeners only parse the few events that invalidate a cache entry.
+     */
+    @Bean(CACHE_INVALIDATION_LISTENER_CONTAINER_FACTORY)
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> cacheInvalidationListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer, KafkaProperties kafkaProperties) {
+        // Not a bean: that would replace the auto-configured consumer factory of the other listeners
+        var consumerFactory = new DefaultKafkaConsumerFactory<Object, Object>(kafkaProperties.buildConsumerProperties(),
+            (Deserializer) new StringDeserializer(), (Deserializer) new ByteArrayDeserializer());
+        var factory = new ConcurrentKafkaListenerContainerFactory<Object, Object>();
+        configurer.configure(factory, consumerFactory);
+        // the listeners never acknowledge, hence nothing is committed
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().getKafkaConsumerProperties().setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        factory.getContainerProperties().getKafkaConsumerProperties().setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        return factory;
+    }
+
+    /**
+     * Publishes records that could not be processed to {@link #TOPIC_RESULTDATA_DLT}, keeping the original key,
+     * headers and (undeserialized) value.
+     */
+    @Bean
+    public DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaProperties kafkaProperties) {
+        // Not a bean: that would replace the auto-configured producer factory and KafkaTemplate
+        var producerFactory = new DefaultKafkaProducerFactory<String, byte[]>(kafkaProperties.buildProducerProperties(),
+            new StringSerializer(), new ByteArraySerializer());
+        return new DeadLetterPublishingRecoverer(new KafkaTemplate<>(producerFactory), (rec, ex) -> new TopicPartition(TOPIC_RESULTDATA_DLT, -1));
+    }
+
+    /**
+     * Creates the {@link #TOPIC_RESULTDATA} topic, or adds partitions to it, when a number of partitions is
+     * configured. The number of partitions caps the number of consumers that can share the load.
+     */
+    @Bean
+    @ConditionalOnProperty("phaedra2.result-data-service.kafka.partitions")
+    public NewTopic resultDataTopic(Environment environment) {
+        return TopicBuilder.name(TOPIC_RESULTDATA)
+            .partitions(environment.getRequiredProperty("phaedra2.result-data-service.kafka.partitions", Integer.class))
+            .build();
+    }
+
+    @Bean
+    public ResultEventFormat resultEventFormat(Environment environment) {
+        return new ResultEventFormat(environment);
+    }
 
+    /**
+     * Encodes events as CBOR on the topics configured to use it, see {@link ResultEventFormat}. Other events are
+     * serialized by the configured value serializer.
+     */
     @Bean
-    public RecordFilterStrategy<String, Object> saveResultDataEventFilter() {
-        return rec -> !(rec.key().equalsIgnoreCase(EVENT_SAVE_RESULT_DATA));
+    @SuppressWarnings("unchecked")
+    public DefaultKafkaProducerFactoryCustomizer resultEventSerializerCustomizer(ResultEventFormat resultEventFormat, MappingJackson2CborHttpMessageConverter cborHttpMessageConverter) {
+        return producerFactory -> {
+            Serializer<Object> jsonSerializer = newInstance(producerFactory.getConfigurationProperties().get(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG), Serializer.class);
+            ((DefaultKafkaProducerFactory<Object, Object>) producerFactory).setValueSerializer(
+                new ResultEventSerializer(resultEventFormat, cborHttpMessageConverter.getObjectMapper(), jsonSerializer));
+        };
     }
+
+    /**
+     * Decodes CBOR events, see {@link ResultEventFormat}. Other events are deserialized by the configured value
+     * deserializer. Events that cannot be decoded are passed to the listeners without value. This does not apply to
+     * the {@link #BATCH_LISTENER_CONTAINER_FACTORY}, which does not deserialize values.
+     */
     @Bean
-    public RecordFilterStrategy<String, Object> saveResultStatsEventFilter() {
-        return rec -> !(rec.key().equalsIgnoreCase(EVENT_SAVE_RESULT_STATS));
+    @SuppressWarnings("unchecked")
+    public DefaultKafkaConsumerFactoryCustomizer resultEventDeserializerCustomizer(MappingJackson2CborHttpMessageConverter cborHttpMessageConverter) {
+        return consumerFactory -> {
+            Deserializer<Object> jsonDeserializer = newInstance(consumerFactory.getConfigurationProperties().get(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG), Deserializer.class);
+            ((DefaultKafkaConsumerFactory<Object, Object>) consumerFactory).setValueDeserializer(
+                new ErrorHandlingDeserializer<>(new ResultEventDeserializer(cborHttpMessageConverter.getObjectMapper(), jsonDeserializer)));
+        };
     }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T newInstance(Object configuredClass, Class<?> type) {
+        try {
+            if (configuredClass instanceof Class<?> cls) {
+                return (T) Utils.newInstance(cls);
+            }
+            return (T) Utils.newInstance(String.valueOf(configuredClass), type);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException(String.format("Cannot instantiate the configured %s %s", type.getSimpleName(), configuredClass), ex);
+        }
+    }
+
 }
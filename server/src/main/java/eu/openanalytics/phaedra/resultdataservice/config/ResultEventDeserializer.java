@@ -0,0 +1,80 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.config;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Deserializes events written by the {@link ResultEventSerializer}: CBOR events are read straight into the DTO named
+ * by their payload type header, all other events (e.g. those of other services) are read using the configured value
+ * deserializer (JSON).
+ */
+public class ResultEventDeserializer implements Deserializer<Object> {
+
+    private final ObjectMapper cborObjectMapper;
+    private final Deserializer<Object> jsonDeserializer;
+
+    public ResultEventDeserializer(ObjectMapper cborObjectMapper, Deserializer<Object> jsonDeserializer) {
+        this.cborObjectMapper = cborObjectMapper;
+        this.jsonDeserializer = jsonDeserializer;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonDeserializer.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return jsonDeserializer.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null || !ResultEventFormat.isCbor(headers)) {
+            return jsonDeserializer.deserialize(topic, headers, data);
+        }
+
+        ResultEventFormat.checkSchemaVersion(headers);
+        try {
+            var payloadType = ResultEventFormat.getHeader(headers, ResultEventFormat.HEADER_PAYLOAD_TYPE).flatMap(ResultEventFormat::getPayloadType);
+            if (payloadType.isPresent()) {
+                return cborObjectMapper.readValue(data, payloadType.get());
+            }
+            return cborObjectMapper.readTree(data);
+        } catch (IOException ex) {
+            throw new SerializationException("Cannot deserialize CBOR event", ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.core.env.Environment;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataBatchDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatBatchDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+
+/**
+ * Wire format of the events on the Kafka topics, shared by the {@link ResultEventSerializer} and
+ * {@link ResultEventDeserializer}.
+ * <p>
+ * The format is configured per topic using {@code phaedra2.result-data-service.kafka.format.<topic>}: {@code json}
+ * (the default, readable by every consumer) or {@code cbor}. CBOR events carry three headers: the content type, the
+ * type of the payload (the simple name of the DTO) and the version of its schema. The schema of a type only gets a
+ * new version for incompatible changes: added properties are ignored by older consumers.
+ */
+public class ResultEventFormat {
+
+    public static final String JSON = "json";
+    public static final String CBOR = "cbor";
+
+    public static final String HEADER_CONTENT_TYPE = "contentType";
+    public static final String HEADER_PAYLOAD_TYPE = "phaedra2.payloadType";
+    public static final String HEADER_SCHEMA_VERSION = "phaedra2.schemaVersion";
+
+    public static final String CBOR_CONTENT_TYPE = "application/cbor";
+
+    /**
+     * The current schema version of the payload types that can be encoded as CBOR.
+     */
+    public static final int SCHEMA_VERSION = 1;
+
+    private static final Map<String, Class<?>> PAYLOAD_TYPES = List.<Class<?>>of(
+            ResultSetDTO.class,
+            ResultDataDTO.class,
+            ResultFeatureStatDTO.class,
+            ResultDataBatchDTO.class,
+            ResultFeatureStatBatchDTO.class)
+        .stream().collect(Collectors.toUnmodifiableMap(Class::getSimpleName, Function.identity()));
+
+    private static final String PROPERTY_PREFIX = "phaedra2.result-data-service.kafka.format.";
+
+    private final Environment environment;
+    private final Map<String, String> formats = new ConcurrentHashMap<>();
+
+    public ResultEventFormat(Environment environment) {
+        this.environment = environment;
+    }
+
+    public String getFormat(String topic) {
+        return formats.computeIfAbsent(topic, t -> environment.getProperty(PROPERTY_PREFIX + t, JSON));
+    }
+
+    public static boolean isPayloadType(Class<?> type) {
+        return PAYLOAD_TYPES.get(type.getSimpleName()) == type;
+    }
+
+    public static Optional<Class<?>> getPayloadType(String name) {
+        return Optional.ofNullable(PAYLOAD_TYPES.get(name));
+    }
+
+    public static boolean isCbor(Headers headers) {
+        return getHeader(headers, HEADER_CONTENT_TYPE).filter(CBOR_CONTENT_TYPE::equals).isPresent();
+    }
+
+    /**
+     * Fails if the event was written using a newer schema version than this service understands.
+     */
+    public static void checkSchemaVersion(Headers headers) {
+        var version = getHeader(headers, HEADER_SCHEMA_VERSION).map(Integer::valueOf).orElse(1);
+        if (version > SCHEMA_VERSION) {
+            throw new SerializationException(String.format("Unsupported schema version %d, only versions up to %d are supported", version, SCHEMA_VERSION));
+        }
+    }
+
+    public static Optional<String> getHeader(Headers headers, String name) {
+        var header = headers == null ? null : headers.lastHeader(name);
+        return header == null ? Optional.empty() : Optional.of(new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Serializes event payloads as CBOR when the {@link ResultEventFormat} of the topic is {@code cbor} and the payload
+ * is one of the event DTOs, and using the configured value serializer (JSON) otherwise. CBOR encodes the float values
+ * of a ResultData as 5 bytes each, instead of up to 15 characters of JSON text.
+ */
+public class ResultEventSerializer implements Serializer<Object> {
+
+    private final ResultEventFormat format;
+    private final ObjectMapper cborObjectMapper;
+    private final Serializer<Object> jsonSerializer;
+
+    public ResultEventSerializer(ResultEventFormat format, ObjectMapper cborObjectMapper, Serializer<Object> jsonSerializer) {
+        this.format = format;
+        this.cborObjectMapper = cborObjectMapper;
+        this.jsonSerializer = jsonSerializer;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonSerializer.configure(configs, isKey);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return jsonSerializer.serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        if (data == null || !ResultEventFormat.CBOR.equals(format.getFormat(topic)) || !ResultEventFormat.isPayloadType(data.getClass())) {
+            return jsonSerializer.serialize(topic, headers, data);
+        }
+        try {
+            var bytes = cborObjectMapper.writeValueAsBytes(data);
+            headers.add(ResultEventFormat.HEADER_CONTENT_TYPE, ResultEventFormat.CBOR_CONTENT_TYPE.getBytes(StandardCharsets.UTF_8));
+            headers.add(ResultEventFormat.HEADER_PAYLOAD_TYPE, data.getClass().getSimpleName().getBytes(StandardCharsets.UTF_8));
+            headers.add(ResultEventFormat.HEADER_SCHEMA_VERSION, String.valueOf(ResultEventFormat.SCHEMA_VERSION).getBytes(StandardCharsets.UTF_8));
+            return bytes;
+        } catch (JsonProcessingException ex) {
+            throw new SerializationException(String.format("Cannot serialize %s as CBOR", data.getClass().getSimpleName()), ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        jsonSerializer.close();
+    }
+
+}
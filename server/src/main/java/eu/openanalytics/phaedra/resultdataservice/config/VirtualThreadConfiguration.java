@@ -0,0 +1,76 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.config;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Support for virtual threads, which are used when the JVM provides them (Java 21+, or 19/20 with
+ * --enable-preview). The service itself is built for an older Java version, therefore virtual threads are created
+ * through reflection.
+ */
+@Configuration
+public class VirtualThreadConfiguration {
+
+    public static final String TOMCAT_VIRTUAL_THREADS_PROPERTY = "phaedra2.result-data-service.tomcat.virtual-threads";
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfiguration.class);
+
+    /**
+     * Returns an executor that starts a new virtual thread for every task, or an empty Optional if the JVM does not
+     * support virtual threads.
+     */
+    public static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        try {
+            var method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return Optional.of((ExecutorService) method.invoke(null));
+        } catch (ReflectiveOperationException ex) {
+            // NoSuchMethodException before Java 19, InvocationTargetException on Java 19/20 without --enable-preview
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Lets Tomcat handle every request on its own virtual thread, instead of on a thread of its bounded worker pool,
+     * so that requests blocked on I/O to other services do not limit the number of concurrent requests.
+     */
+    @Bean
+    @ConditionalOnProperty(name = TOMCAT_VIRTUAL_THREADS_PROPERTY, havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        var executor = newVirtualThreadPerTaskExecutor();
+        if (executor.isEmpty()) {
+            logger.warn(String.format("%s is enabled, but this JVM does not support virtual threads: using the default Tomcat thread pool", TOMCAT_VIRTUAL_THREADS_PROPERTY));
+            return protocolHandler -> {};
+        }
+        logger.info("Tomcat requests are handled on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(executor.get());
+    }
+
+}
@@ -0,0 +1,30 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.model;
+
+import java.util.List;
+
+/**
+ * Columnar representation of the values of one or more features of a plate: the well properties are stored once, as
+ * parallel arrays, and every feature is a single array of values in the same well order.
+ */
+public record PlateFeatureColumns(long plateId, long[] wellIds, String[] wellTypes, int[] rows, int[] columns, List<FeatureColumn> features) {
+}
@@ -66,7 +66,7 @@ public class ResultSet {
     StatusCodeHolder outcome;
 
     public StatusCode getOutcome() {
-        return outcome.getStatusCode();
+        return outcome != null ? outcome.getStatusCode() : null;
     }
 
     public static class ResultSetBuilder {
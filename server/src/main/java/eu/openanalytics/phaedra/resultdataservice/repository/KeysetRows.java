@@ -0,0 +1,50 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.PageDTO;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A page of keyset pagination: the first rows (ordered by id) with an id larger than a given id. Unlike offset
+ * pagination, the cost of fetching a page does not depend on how many pages precede it.
+ *
+ * @param rows       the rows of the page
+ * @param limit      the maximum number of rows of a page
+ * @param nextAfter  the id to continue after to get the next page, or {@code null} if there are no more rows
+ * @param totalCount the total number of matching rows ignoring paging, or {@code null} if it was not counted
+ */
+public record KeysetRows<T>(List<T> rows, int limit, Long nextAfter, Long totalCount) {
+
+    public <R> KeysetRows<R> map(Function<T, R> mapper) {
+        return new KeysetRows<>(rows.stream().map(mapper).toList(), limit, nextAfter, totalCount);
+    }
+
+    /**
+     * @param after the id this page continues after, {@code null} for the first page
+     */
+    public PageDTO<T> toPageDTO(Long after) {
+        return PageDTO.keyset(rows, after == null, nextAfter, totalCount, limit);
+    }
+
+}
@@ -21,24 +21,15 @@
 package eu.openanalytics.phaedra.resultdataservice.repository;
 
 import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
-public interface ResultDataRepository extends PagingAndSortingRepository<ResultData, Long> {
-
-    Page<ResultData> findAllByResultSetId(Pageable pageable, long resultSetId);
-
-    Page<ResultData> findAllByResultSetIdAndFeatureId(Pageable pageable, long resultSetId, long featureId);
-
-    List<ResultData> findAllByResultSetId(long resultSetId);
-
-    Optional<ResultData> findByResultSetIdAndFeatureId(long resultSetId, long featureId);
+public interface ResultDataRepository extends PagingAndSortingRepository<ResultData, Long>, ResultDataRepositoryCustom {
 
     List<ResultData> findByResultSetIdIn(Collection<Long> resultSetIds);
+
+    List<ResultData> findAllByResultSetIdAndFeatureIdIn(long resultSetId, Collection<Long> featureIds);
 }
 
@@ -0,0 +1,55 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+
+import java.util.Optional;
+
+public class ResultDataRepositoryCustomImpl implements ResultDataRepositoryCustom {
+
+    private static final String TABLE = "result_data";
+
+    private final NamedParameterJdbcOperations jdbcOperations;
+    private final ResultDataRowMapper rowMapper = new ResultDataRowMapper();
+
+    public ResultDataRepositoryCustomImpl(NamedParameterJdbcOperations jdbcOperations) {
+        this.jdbcOperations = jdbcOperations;
+    }
+
+    @Override
+    public Optional<ResultSetRows<ResultData>> findByResultSet(long resultSetId, Long featureId, Pageable pageable) {
+        return ResultSetRowsQuery.query(jdbcOperations, TABLE, resultSetId, "feature_id", featureId, pageable, rowMapper);
+    }
+
+    @Override
+    public Optional<KeysetRows<ResultData>> findByResultSetAfter(long resultSetId, Long featureId, Long after, int limit, boolean count) {
+        return ResultSetRowsQuery.queryAfter(jdbcOperations, TABLE, resultSetId, "feature_id", featureId, after, limit, count, rowMapper);
+    }
+
+    @Override
+    public Optional<ResultSetRows<ResultData>> findByResultSetAndId(long resultSetId, long id) {
+        return ResultSetRowsQuery.query(jdbcOperations, TABLE, resultSetId, "id", id, Pageable.unpaged(), rowMapper);
+    }
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * Maps a row of the result_data table to {@link ResultData}, for queries that are executed outside of Spring Data.
+ */
+public class ResultDataRowMapper implements RowMapper<ResultData> {
+
+    @Override
+    public ResultData mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return ResultData.builder()
+            .id(rs.getLong("id"))
+            .resultSetId(rs.getLong("result_set_id"))
+            .featureId(rs.getLong("feature_id"))
+            .values(toFloatArray(rs.getArray("values")))
+            .statusCode(StatusCode.valueOf(rs.getString("status_code")))
+            .statusMessage(rs.getString("status_message"))
+            .exitCode(rs.getInt("exit_code"))
+            .createdTimestamp(rs.getObject("created_timestamp", LocalDateTime.class))
+            .build();
+    }
+
+    private static float[] toFloatArray(java.sql.Array array) throws SQLException {
+        if (array == null) {
+            return null;
+        }
+        try {
+            var values = (Float[]) array.getArray();
+            var res = new float[values.length];
+            for (int i = 0; i < values.length; i++) {
+                res[i] = values[i] == null ? Float.NaN : values[i];
+            }
+            return res;
+        } finally {
+            array.free();
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.model.ResultFeatureStat;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Optional;
+
+/**
+ * Queries on {@link ResultFeatureStat} that also check whether the ResultSet exists, see {@link ResultSetRows}.
+ */
+public interface ResultFeatureStatRepositoryCustom {
+
+    /**
+     * Returns the ResultFeatureStats of a ResultSet, ordered by id, optionally only those of a single feature.
+     *
+     * @param featureId the feature to filter on, or {@code null} to return the ResultFeatureStats of all features
+     * @return the ResultFeatureStats, or an empty Optional if the ResultSet does not exist
+     */
+    Optional<ResultSetRows<ResultFeatureStat>> findByResultSet(long resultSetId, Long featureId, Pageable pageable);
+
+    /**
+     * Keyset variant of {@link #findByResultSet(long, Long, Pageable)}: returns the first {@code limit} ResultFeatureStats of
+     * a ResultSet with an id larger than {@code after}.
+     *
+     * @param featureId the feature to filter on, or {@code null} to return the ResultFeatureStats of all features
+     * @param after     the id to continue after, or {@code null} to start at the first ResultFeatureStat
+     * @param count     whether to also count the total number of matching ResultFeatureStats
+     * @return the ResultFeatureStats, or an empty Optional if the ResultSet does not exist
+     */
+    Optional<KeysetRows<ResultFeatureStat>> findByResultSetAfter(long resultSetId, Long featureId, Long after, int limit, boolean count);
+
+    /**
+     * Returns the ResultFeatureStat with the given id, if it belongs to the ResultSet.
+     *
+     * @return the ResultFeatureStat (if any), or an empty Optional if the ResultSet does not exist
+     */
+    Optional<ResultSetRows<ResultFeatureStat>> findByResultSetAndId(long resultSetId, long id);
+
+}
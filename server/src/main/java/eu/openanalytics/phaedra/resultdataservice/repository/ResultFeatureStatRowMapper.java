@@ -0,0 +1,54 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultFeatureStat;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * Maps a row of the result_feature_stat table to {@link ResultFeatureStat}, for queries that are executed outside of
+ * Spring Data.
+ */
+public class ResultFeatureStatRowMapper implements RowMapper<ResultFeatureStat> {
+
+    @Override
+    public ResultFeatureStat mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return ResultFeatureStat.builder()
+            .id(rs.getLong("id"))
+            .resultSetId(rs.getLong("result_set_id"))
+            .featureId(rs.getLong("feature_id"))
+            .featureStatId(rs.getLong("feature_stat_id"))
+            .value(rs.getObject("value", Float.class))
+            .statisticName(rs.getString("statistic_name"))
+            .welltype(rs.getString("welltype"))
+            .statusCode(StatusCode.valueOf(rs.getString("status_code")))
+            .statusMessage(rs.getString("status_message"))
+            .exitCode(rs.getObject("exit_code", Integer.class))
+            .createdTimestamp(rs.getObject("created_timestamp", LocalDateTime.class))
+            .build();
+    }
+
+}
@@ -28,9 +28,10 @@ import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.util.Collection;
 import java.util.List;
 
-public interface ResultSetRepository extends PagingAndSortingRepository<ResultSet, Long>, CrudRepository<ResultSet, Long> {
+public interface ResultSetRepository extends PagingAndSortingRepository<ResultSet, Long>, CrudRepository<ResultSet, Long>, ResultSetRepositoryCustom {
 
     Page<ResultSet> findAllByOutcome(Pageable pageable, ResultSet.StatusCodeHolder outcome);
 
@@ -44,28 +45,7 @@ public interface ResultSetRepository extends PagingAndSortingRepository<ResultSe
     @Query("SELECT * FROM result_set WHERE plate_id = :plateId AND meas_id = :measId ORDER BY execution_end_time_stamp DESC")
     List<ResultSet> findByPlateIdAndMeasId(Long plateId, Long measId);
 
-    @Query("SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM resultdataservice.result_set WHERE plate_id = :plateId)")
-    List<ResultSet> findLatestByPlateId(Long plateId);
+    List<ResultSet> findAllByPlateIdIn(Collection<Long> plateIds);
 
-    @Query("SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM resultdataservice.result_set WHERE meas_id = :measId)")
-    List<ResultSet> findLatestByMeasId(Long measId);
-
-    @Query("SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM resultdataservice.result_set WHERE protocol_id = :protocolId)")
-    List<ResultSet> findLatestByProtocolId(Long protocolId);
-
-    @Query("SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM resultdataservice.result_set WHERE plate_id = :plateId and meas_id = :measId)")
-    List<ResultSet> findLatestByPlateIdAndMeasId(Long plateId, Long measId);
-
-    @Query("SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM resultdataservice.result_set WHERE plate_id = :plateId and protocol_id = :protocolId)")
-    List<ResultSet> findLatestByPlateIdAndProtocolId(Long plateId, Long protocolId);
-
-    @Query("SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM resultdataservice.result_set WHERE meas_id = :plateId and protocol_id = :protocolId)")
-    List<ResultSet> findLatestByMeasIdAndProtocolId(Long measId, Long protocolId);
-
-    @Query("SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM resultdataservice.result_set WHERE plate_id = :plateId and protocol_id = :protocolId and meas_id = :measId)")
-    List<ResultSet> findLatestByPlateIdAndProtocolIdAndMeasId(Long plateId, Long protocolId, Long measId);
-
-    @Query("SELECT * FROM result_set ORDER BY execution_start_time_stamp DESC LIMIT :n")
-    List<ResultSet> findNMostRecentResultSets(Integer n);
 }
 
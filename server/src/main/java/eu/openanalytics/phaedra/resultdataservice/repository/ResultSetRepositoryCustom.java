@@ -0,0 +1,60 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultSet;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Queries on {@link ResultSet} that depend on which filters are given, and are therefore built at runtime.
+ * Every filter is optional, pass {@code null} to not filter on it.
+ */
+public interface ResultSetRepositoryCustom {
+
+    /**
+     * Returns the {@code limit} most recent ResultSets matching the filters, most recent first.
+     */
+    List<ResultSet> findLatest(Long plateId, Long measId, Long protocolId, int limit);
+
+    /**
+     * Returns the most recent ResultSet matching the filters of every plate in {@code plateIds}, using a single query.
+     */
+    List<ResultSet> findLatestPerPlate(Collection<Long> plateIds, Long measId, Long protocolId);
+
+    /**
+     * Returns, for every plate in {@code plateIds}, the most recent ResultSet matching the filters of each
+     * (protocol, measurement) combination of that plate, using a single query.
+     */
+    List<ResultSet> findLatestPerPlateProtocolAndMeas(Collection<Long> plateIds, Long measId, Long protocolId);
+
+    /**
+     * Returns the first {@code limit} ResultSets matching the filter with an id larger than {@code after}, ordered by
+     * id (i.e. keyset pagination).
+     *
+     * @param after the id to continue after, or {@code null} to start at the first ResultSet
+     * @param count whether to also count the total number of matching ResultSets
+     */
+    KeysetRows<ResultSet> findAfter(StatusCode outcome, Long after, int limit, boolean count);
+
+}
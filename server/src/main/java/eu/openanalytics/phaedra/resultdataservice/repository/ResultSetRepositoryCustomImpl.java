@@ -0,0 +1,131 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultSet;
+import org.springframework.data.jdbc.core.convert.EntityRowMapper;
+import org.springframework.data.jdbc.core.convert.JdbcConverter;
+import org.springframework.data.relational.core.mapping.RelationalMappingContext;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The generated queries are written so that PostgreSQL can answer them with a backward scan over one of the
+ * (plate_id, ..., id) indexes, instead of aggregating MAX(id) in a sub-query.
+ */
+public class ResultSetRepositoryCustomImpl implements ResultSetRepositoryCustom {
+
+    private final NamedParameterJdbcOperations jdbcOperations;
+    private final RowMapper<ResultSet> rowMapper;
+
+    @SuppressWarnings("unchecked")
+    public ResultSetRepositoryCustomImpl(NamedParameterJdbcOperations jdbcOperations, RelationalMappingContext mappingContext, JdbcConverter jdbcConverter) {
+        this.jdbcOperations = jdbcOperations;
+        this.rowMapper = new EntityRowMapper<>((RelationalPersistentEntity<ResultSet>) mappingContext.getRequiredPersistentEntity(ResultSet.class), jdbcConverter);
+    }
+
+    @Override
+    public List<ResultSet> findLatest(Long plateId, Long measId, Long protocolId, int limit) {
+        var params = new MapSqlParameterSource("limit", limit);
+        var conditions = new ArrayList<String>();
+        addCondition(conditions, params, "plate_id", plateId);
+        addCondition(conditions, params, "meas_id", measId);
+        addCondition(conditions, params, "protocol_id", protocolId);
+
+        var sql = "SELECT * FROM result_set" + where(conditions) + " ORDER BY id DESC LIMIT :limit";
+        return jdbcOperations.query(sql, params, rowMapper);
+    }
+
+    @Override
+    public List<ResultSet> findLatestPerPlate(Collection<Long> plateIds, Long measId, Long protocolId) {
+        return findLatestPerGroup(List.of("plate_id"), plateIds, measId, protocolId);
+    }
+
+    @Override
+    public List<ResultSet> findLatestPerPlateProtocolAndMeas(Collection<Long> plateIds, Long measId, Long protocolId) {
+        return findLatestPerGroup(List.of("plate_id", "protocol_id", "meas_id"), plateIds, measId, protocolId);
+    }
+
+    private List<ResultSet> findLatestPerGroup(List<String> groupColumns, Collection<Long> plateIds, Long measId, Long protocolId) {
+        if (plateIds.isEmpty()) {
+            return List.of();
+        }
+        var params = new MapSqlParameterSource("plateIds", plateIds);
+        var conditions = new ArrayList<String>();
+        conditions.add("plate_id IN (:plateIds)");
+        addCondition(conditions, params, "meas_id", measId);
+        addCondition(conditions, params, "protocol_id", protocolId);
+
+        // DISTINCT ON keeps the first row of every group, which is the highest id thanks to the ORDER BY
+        var groupBy = String.join(", ", groupColumns);
+        var sql = "SELECT DISTINCT ON (" + groupBy + ") * FROM result_set" + where(conditions)
+            + " ORDER BY " + groupBy + ", id DESC";
+        return jdbcOperations.query(sql, params, rowMapper);
+    }
+
+    @Override
+    public KeysetRows<ResultSet> findAfter(StatusCode outcome, Long after, int limit, boolean count) {
+        // one row more than requested tells whether there is a next page
+        var params = new MapSqlParameterSource("limit", limit + 1);
+        var conditions = new ArrayList<String>();
+        if (outcome != null) {
+            conditions.add("outcome = CAST(:outcome AS status_code)");
+            params.addValue("outcome", outcome.name());
+        }
+        Long totalCount = null;
+        if (count) {
+            totalCount = jdbcOperations.queryForObject("SELECT count(*) FROM result_set" + where(conditions), params, Long.class);
+        }
+        addCondition(conditions, params, "id", after, ">");
+
+        var sql = "SELECT * FROM result_set" + where(conditions) + " ORDER BY id LIMIT :limit";
+        var resultSets = jdbcOperations.query(sql, params, rowMapper);
+        Long nextAfter = null;
+        if (resultSets.size() > limit) {
+            resultSets = resultSets.subList(0, limit);
+            nextAfter = resultSets.get(limit - 1).getId();
+        }
+        return new KeysetRows<>(resultSets, limit, nextAfter, totalCount);
+    }
+
+    private static void addCondition(List<String> conditions, MapSqlParameterSource params, String column, Long value) {
+        addCondition(conditions, params, column, value, "=");
+    }
+
+    private static void addCondition(List<String> conditions, MapSqlParameterSource params, String column, Long value, String operator) {
+        if (value != null) {
+            conditions.add(column + " " + operator + " :" + column);
+            params.addValue(column, value);
+        }
+    }
+
+    private static String where(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+}
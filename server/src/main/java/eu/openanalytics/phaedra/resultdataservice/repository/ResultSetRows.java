@@ -0,0 +1,46 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Rows of a table that belongs to a ResultSet (e.g. result_data), fetched together with the outcome of that
+ * ResultSet. A query returning this is only answered if the ResultSet exists, which allows to distinguish a missing
+ * ResultSet from a ResultSet without (matching) rows using a single query.
+ *
+ * @param resultSetOutcome the outcome of the ResultSet
+ * @param rows             the (requested page of) rows
+ * @param totalCount       the total number of matching rows, ignoring paging
+ */
+public record ResultSetRows<T>(StatusCode resultSetOutcome, List<T> rows, long totalCount) {
+
+    public <R> Page<R> toPage(Pageable pageable, Function<T, R> mapper) {
+        return new PageImpl<>(rows.stream().map(mapper).toList(), pageable, totalCount);
+    }
+
+}
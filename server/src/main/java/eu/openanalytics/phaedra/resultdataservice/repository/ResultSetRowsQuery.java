@@ -0,0 +1,166 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+
+import java.util.ArrayList;
+import java.util.Optional;
+
+/**
+ * Builds and executes the queries returning {@link ResultSetRows}.
+ * <p>
+ * The rows are selected in a LATERAL sub-query that is LEFT JOINed to the ResultSet, so that the ResultSet is
+ * returned (with NULL columns) even if there are no matching rows. The total number of rows is computed by a
+ * window function before the LIMIT is applied.
+ */
+final class ResultSetRowsQuery {
+
+    private ResultSetRowsQuery() {
+    }
+
+    /**
+     * @param table        the table to select from, must have an id and result_set_id column
+     * @param resultSetId  the id of the ResultSet
+     * @param filterColumn an additional column to filter on
+     * @param filterValue  the value of {@code filterColumn}, or {@code null} to not filter on it
+     * @param pageable     the page to return, ordered by id
+     * @return the rows, or an empty Optional if the ResultSet does not exist
+     */
+    static <T> Optional<ResultSetRows<T>> query(NamedParameterJdbcOperations jdbcOperations, String table,
+                                                long resultSetId, String filterColumn, Long filterValue,
+                                                Pageable pageable, RowMapper<T> rowMapper) {
+        var params = new MapSqlParameterSource("resultSetId", resultSetId);
+        var condition = "t.result_set_id = rs.id";
+        if (filterValue != null) {
+            condition += " AND t." + filterColumn + " = :filterValue";
+            params.addValue("filterValue", filterValue);
+        }
+        var limit = "";
+        if (pageable.isPaged()) {
+            limit = " LIMIT :limit OFFSET :offset";
+            params.addValue("limit", pageable.getPageSize());
+            params.addValue("offset", pageable.getOffset());
+        }
+
+        var sql = "SELECT rs.outcome AS result_set_outcome, c.* FROM result_set rs"
+            + " LEFT JOIN LATERAL (SELECT t.*, count(*) OVER () AS total_count FROM " + table + " t"
+            + " WHERE " + condition + " ORDER BY t.id" + limit + ") c ON true"
+            + " WHERE rs.id = :resultSetId";
+
+        ResultSetExtractor<Optional<ResultSetRows<T>>> extractor = rs -> {
+            if (!rs.next()) {
+                return Optional.empty();
+            }
+            var outcome = rs.getString("result_set_outcome");
+            var rows = new ArrayList<T>();
+            long totalCount = 0;
+            do {
+                // the LEFT JOIN returns a single row with NULL columns if there are no matching rows
+                if (rs.getObject("id") != null) {
+                    rows.add(rowMapper.mapRow(rs, rows.size()));
+                    totalCount = rs.getLong("total_count");
+                }
+            } while (rs.next());
+            return Optional.of(new ResultSetRows<>(outcome == null ? null : StatusCode.valueOf(outcome), rows, totalCount));
+        };
+        var result = jdbcOperations.query(sql, params, extractor);
+
+        if (result.isPresent() && result.get().rows().isEmpty() && pageable.isPaged() && pageable.getOffset() > 0) {
+            // the requested page is past the last row, the total count is only known by counting separately
+            var totalCount = count(jdbcOperations, table, filterColumn, filterValue, params);
+            return Optional.of(new ResultSetRows<>(result.get().resultSetOutcome(), result.get().rows(), totalCount));
+        }
+        return result;
+    }
+
+    /**
+     * Keyset variant of {@link #query}: returns the first {@code limit} rows with an id larger than {@code after}.
+     * One row more than requested is fetched to know whether there is a next page, the rows are only counted (using
+     * a separate query) when {@code count} is set.
+     *
+     * @param after the id to continue after, or {@code null} to start at the first row
+     * @return the rows, or an empty Optional if the ResultSet does not exist
+     */
+    static <T> Optional<KeysetRows<T>> queryAfter(NamedParameterJdbcOperations jdbcOperations, String table,
+                                                  long resultSetId, String filterColumn, Long filterValue,
+                                                  Long after, int limit, boolean count, RowMapper<T> rowMapper) {
+        var params = new MapSqlParameterSource("resultSetId", resultSetId);
+        params.addValue("limit", limit + 1);
+        var condition = "t.result_set_id = rs.id";
+        if (filterValue != null) {
+            condition += " AND t." + filterColumn + " = :filterValue";
+            params.addValue("filterValue", filterValue);
+        }
+        if (after != null) {
+            condition += " AND t.id > :after";
+            params.addValue("after", after);
+        }
+
+        var sql = "SELECT c.* FROM result_set rs"
+            + " LEFT JOIN LATERAL (SELECT t.* FROM " + table + " t"
+            + " WHERE " + condition + " ORDER BY t.id LIMIT :limit) c ON true"
+            + " WHERE rs.id = :resultSetId";
+
+        ResultSetExtractor<Optional<KeysetRows<T>>> extractor = rs -> {
+            if (!rs.next()) {
+                return Optional.empty();
+            }
+            var rows = new ArrayList<T>();
+            Long lastId = null;
+            Long nextAfter = null;
+            do {
+                // the LEFT JOIN returns a single row with NULL columns if there are no matching rows
+                if (rs.getObject("id") == null) {
+                    continue;
+                }
+                if (rows.size() == limit) {
+                    nextAfter = lastId;
+                    break;
+                }
+                rows.add(rowMapper.mapRow(rs, rows.size()));
+                lastId = rs.getLong("id");
+            } while (rs.next());
+            return Optional.of(new KeysetRows<>(rows, limit, nextAfter, null));
+        };
+        var result = jdbcOperations.query(sql, params, extractor);
+
+        if (result.isPresent() && count) {
+            var totalCount = count(jdbcOperations, table, filterColumn, filterValue, params);
+            return Optional.of(new KeysetRows<>(result.get().rows(), limit, result.get().nextAfter(), totalCount));
+        }
+        return result;
+    }
+
+    private static long count(NamedParameterJdbcOperations jdbcOperations, String table, String filterColumn, Long filterValue,
+                              MapSqlParameterSource params) {
+        var countSql = "SELECT count(*) FROM " + table + " t WHERE t.result_set_id = :resultSetId"
+            + (filterValue != null ? " AND t." + filterColumn + " = :filterValue" : "");
+        var totalCount = jdbcOperations.queryForObject(countSql, params, Long.class);
+        return totalCount == null ? 0 : totalCount;
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The JDBC cursor and Arrow stream setup shared by the Arrow exports ({@link FeatureMatrixExportService} and
+ * {@link ResultDataArrowService}): rows are read from a forward-only cursor on the connection of the current
+ * transaction and copied into the vectors of a single {@link VectorSchemaRoot}, which is written as a record batch
+ * whenever it is full.
+ */
+final class ArrowExportSupport {
+
+    static final int FETCH_SIZE = 100;
+
+    static final FieldType ID_TYPE = FieldType.notNullable(new ArrowType.Int(64, true));
+    static final FieldType VALUE_TYPE = FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE));
+
+    @FunctionalInterface
+    interface ExportCallback<T> {
+        void apply(T t) throws SQLException, IOException;
+    }
+
+    @FunctionalInterface
+    interface StreamCallback {
+        void write(VectorSchemaRoot root, ArrowStreamWriter writer) throws SQLException, IOException;
+    }
+
+    private ArrowExportSupport() {
+    }
+
+    /**
+     * Runs the callback on the connection of the current transaction, and flushes the outputStream afterwards.
+     */
+    static void export(JdbcTemplate jdbcTemplate, OutputStream outputStream, ExportCallback<Connection> callback) throws IOException {
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                try {
+                    callback.apply(con);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Writes an Arrow IPC stream with the given schema to the outputStream: the callback fills the root and writes
+     * its record batches. The outputStream is not closed.
+     */
+    static void writeStream(Schema schema, OutputStream outputStream, StreamCallback callback) throws SQLException, IOException {
+        try (var allocator = new RootAllocator();
+             var root = VectorSchemaRoot.create(schema, allocator)) {
+            // the writer is not closed, as that would close the outputStream
+            var writer = new ArrowStreamWriter(root, null, Channels.newChannel(outputStream));
+            writer.start();
+            callback.write(root, writer);
+            writer.end();
+        }
+    }
+
+    /**
+     * Executes the query with a forward-only cursor that fetches {@link #FETCH_SIZE} rows at a time, and passes the
+     * open ResultSet to the callback. The parameters of the query are bound as bigint[] arrays.
+     */
+    static void query(Connection con, String sql, List<? extends List<Long>> arrayParameters, ExportCallback<ResultSet> callback) throws SQLException, IOException {
+        var arrays = new ArrayList<java.sql.Array>();
+        try (var stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            for (var parameter : arrayParameters) {
+                var array = con.createArrayOf("bigint", parameter.toArray());
+                arrays.add(array);
+                stmt.setArray(arrays.size(), array);
+            }
+            try (var rs = stmt.executeQuery()) {
+                callback.apply(rs);
+            }
+        } finally {
+            for (var array : arrays) {
+                array.free();
+            }
+        }
+    }
+
+    /**
+     * Reads a float4[] column that was selected as <code>array_send(...)</code>, see {@link Float4ArrayDecoder}.
+     */
+    static float[] readValues(ResultSet rs, String column) throws SQLException {
+        return Float4ArrayDecoder.decode(rs.getBytes(column));
+    }
+
+}
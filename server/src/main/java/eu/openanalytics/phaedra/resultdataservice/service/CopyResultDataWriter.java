@@ -0,0 +1,181 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes ResultData by streaming the rows through <code>COPY ... FROM STDIN (FORMAT binary)</code>.
+ * The values are written as binary float4 arrays, which avoids formatting and parsing the floats as text.
+ * Since COPY cannot return the generated ids, the ids are first reserved from the sequence of the table.
+ */
+@Component
+@ConditionalOnProperty(name = ResultDataWriter.MODE_PROPERTY, havingValue = "copy")
+public class CopyResultDataWriter implements ResultDataWriter {
+
+    private static final String COPY_RESULT_DATA = "COPY result_data (id, result_set_id, feature_id, \"values\", status_code, status_message, exit_code, created_timestamp) FROM STDIN (FORMAT binary)";
+    private static final String RESERVE_IDS = "SELECT nextval(pg_get_serial_sequence('result_data', 'id')) FROM generate_series(1, ?)";
+
+    // see "Binary Format" in https://www.postgresql.org/docs/current/sql-copy.html
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final short FIELD_COUNT = 8;
+    private static final int FLOAT4_OID = 700;
+    private static final LocalDateTime POSTGRES_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CopyResultDataWriter(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public List<ResultData> write(List<ResultData> resultData) {
+        if (resultData.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return jdbcTemplate.execute((ConnectionCallback<List<ResultData>>) con -> {
+            var ids = reserveIds(con, resultData.size());
+            var result = new ArrayList<ResultData>(resultData.size());
+
+            CopyIn copyIn = con.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_RESULT_DATA);
+            try {
+                var header = ByteBuffer.allocate(SIGNATURE.length + 8).put(SIGNATURE).putInt(0).putInt(0);
+                copyIn.writeToCopy(header.array(), 0, header.position());
+
+                for (int i = 0; i < resultData.size(); i++) {
+                    var rd = resultData.get(i).withId(ids.get(i));
+                    var row = encodeRow(rd);
+                    copyIn.writeToCopy(row.array(), 0, row.position());
+                    result.add(rd);
+                }
+
+                var trailer = ByteBuffer.allocate(2).putShort((short) -1);
+                copyIn.writeToCopy(trailer.array(), 0, trailer.position());
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "copy";
+    }
+
+    private List<Long> reserveIds(Connection con, int count) throws SQLException {
+        var ids = new ArrayList<Long>(count);
+        try (var stmt = con.prepareStatement(RESERVE_IDS)) {
+            stmt.setInt(1, count);
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Encodes a single tuple in the PostgreSQL binary COPY format.
+     */
+    private ByteBuffer encodeRow(ResultData rd) {
+        byte[] statusCode = rd.getStatusCode().name().getBytes(StandardCharsets.UTF_8);
+        byte[] statusMessage = rd.getStatusMessage() == null ? null : rd.getStatusMessage().getBytes(StandardCharsets.UTF_8);
+        float[] values = rd.getValues();
+
+        int size = 2
+            + 3 * (4 + 8) // id, result_set_id, feature_id
+            + 4 + (values == null ? 0 : floatArraySize(values))
+            + 4 + statusCode.length
+            + 4 + (statusMessage == null ? 0 : statusMessage.length)
+            + 4 + 4 // exit_code
+            + 4 + 8; // created_timestamp
+
+        var buffer = ByteBuffer.allocate(size);
+        buffer.putShort(FIELD_COUNT);
+        buffer.putInt(8).putLong(rd.getId());
+        buffer.putInt(8).putLong(rd.getResultSetId());
+        buffer.putInt(8).putLong(rd.getFeatureId());
+        if (values == null) {
+            buffer.putInt(-1);
+        } else {
+            putFloatArray(buffer, values);
+        }
+        buffer.putInt(statusCode.length).put(statusCode);
+        if (statusMessage == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(statusMessage.length).put(statusMessage);
+        }
+        buffer.putInt(4).putInt(rd.getExitCode());
+        buffer.putInt(8).putLong(ChronoUnit.MICROS.between(POSTGRES_EPOCH, rd.getCreatedTimestamp()));
+        return buffer;
+    }
+
+    private static int floatArraySize(float[] values) {
+        if (values.length == 0) {
+            return 12;
+        }
+        return 20 + values.length * 8;
+    }
+
+    /**
+     * Writes a one-dimensional float4[] in the binary array format (see array_send in PostgreSQL).
+     */
+    private static void putFloatArray(ByteBuffer buffer, float[] values) {
+        buffer.putInt(floatArraySize(values));
+        if (values.length == 0) {
+            buffer.putInt(0).putInt(0).putInt(FLOAT4_OID);
+            return;
+        }
+        buffer.putInt(1) // number of dimensions
+            .putInt(0) // no null elements
+            .putInt(FLOAT4_OID)
+            .putInt(values.length)
+            .putInt(1); // lower bound
+        for (float value : values) {
+            buffer.putInt(4).putFloat(value);
+        }
+    }
+
+}
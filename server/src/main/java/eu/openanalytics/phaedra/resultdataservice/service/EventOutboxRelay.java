@@ -0,0 +1,225 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import java.sql.Types;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.kafka.common.errors.RetriableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Publishes the events recorded by the {@link EventOutboxService} to Kafka, in batches, and deletes them once the
+ * broker acknowledged them.
+ * <p>
+ * Only one instance of the service relays at a time: a batch is relayed while holding a transaction-scoped advisory
+ * lock, and the other instances skip their run while it is held. Events are published in the order in which they were
+ * recorded. When an event could not be published, it stays in the outbox together with the later events with the
+ * same key (i.e. of the same ResultSet), and they are all published again, in order, on the next run. The delivery
+ * is therefore at-least-once: an event can be published more than once, but never after a later event of its
+ * ResultSet without being followed by that event again.
+ * <p>
+ * An event that the broker rejects with a non-retriable error (e.g. because it is too large) is parked after
+ * {@code max-attempts} attempts, an event of which the payload cannot be read is parked immediately. Parked events
+ * are no longer relayed: they stay in the outbox with their last error for inspection, and are counted
+ * (phaedra2.outbox.parked). Retriable errors, such as an unavailable broker, are retried until they succeed. A parked
+ * event is replayed by resetting its parked_timestamp to NULL and its attempts to 0.
+ */
+@Component
+public class EventOutboxRelay {
+
+    private static final String PROPERTY_PREFIX = "phaedra2.result-data-service.outbox.";
+
+    // the key of the advisory lock, only needs to be unique within the database
+    static final long RELAY_LOCK_ID = 0x70686165647261L;
+
+    private static final String TRY_LOCK = "SELECT pg_try_advisory_xact_lock(:lockId)";
+    private static final String SELECT_EVENTS = "SELECT id, topic, message_key, event, payload_type, payload, attempts FROM event_outbox " +
+        "WHERE parked_timestamp IS NULL ORDER BY id LIMIT :limit";
+    private static final String DELETE_EVENTS = "DELETE FROM event_outbox WHERE id IN (:ids)";
+    private static final String UPDATE_FAILED_EVENT = "UPDATE event_outbox SET attempts = :attempts, last_error = :lastError, " +
+        "parked_timestamp = :parkedTimestamp WHERE id = :id";
+
+    private final NamedParameterJdbcOperations jdbcOperations;
+    private final TransactionTemplate transactionTemplate;
+    private final KafkaProducerService kafkaProducerService;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration sendTimeout;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private record OutboxEvent(long id, String topic, String messageKey, String event, String payloadType, String payload, int attempts) {
+    }
+
+    public EventOutboxRelay(NamedParameterJdbcOperations jdbcOperations, PlatformTransactionManager transactionManager,
+                            KafkaProducerService kafkaProducerService, ObjectMapper objectMapper, Clock clock,
+                            MeterRegistry meterRegistry, Environment environment) {
+        this.jdbcOperations = jdbcOperations;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.kafkaProducerService = kafkaProducerService;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = environment.getProperty(PROPERTY_PREFIX + "batch-size", Integer.class, 500);
+        this.maxAttempts = environment.getProperty(PROPERTY_PREFIX + "max-attempts", Integer.class, 3);
+        this.sendTimeout = environment.getProperty(PROPERTY_PREFIX + "send-timeout", Duration.class, Duration.ofSeconds(30));
+    }
+
+    /**
+     * Relays batches of events until the outbox is empty, or a batch could not be published completely.
+     */
+    @Scheduled(fixedDelayString = "${phaedra2.result-data-service.outbox.poll-interval-ms:500}")
+    public void relay() {
+        Integer relayed;
+        do {
+            relayed = transactionTemplate.execute(status -> relayBatch());
+        } while (relayed != null && relayed == batchSize);
+    }
+
+    /**
+     * @return the number of events that were published or parked, or 0 if another instance is relaying
+     */
+    private int relayBatch() {
+        if (!Boolean.TRUE.equals(jdbcOperations.queryForObject(TRY_LOCK, Map.of("lockId", RELAY_LOCK_ID), Boolean.class))) {
+            return 0;
+        }
+        var events = jdbcOperations.query(SELECT_EVENTS, Map.of("limit", batchSize), (rs, rowNum) -> new OutboxEvent(
+            rs.getLong("id"), rs.getString("topic"), rs.getString("message_key"), rs.getString("event"), rs.getString("payload_type"),
+            rs.getString("payload"), rs.getInt("attempts")));
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        int parked = 0;
+        var sends = new LinkedHashMap<OutboxEvent, CompletableFuture<?>>();
+        for (var event : events) {
+            Object payload;
+            try {
+                payload = objectMapper.readValue(event.payload(), Class.forName(event.payloadType()));
+            } catch (Exception ex) {
+                // retrying is pointless
+                recordFailure(event, event.attempts(), ex, true);
+                parked++;
+                continue;
+            }
+            sends.put(event, kafkaProducerService.send(event.topic(), event.messageKey(), event.event(), payload));
+        }
+
+        long deadline = System.nanoTime() + sendTimeout.toNanos();
+        var done = new ArrayList<Long>();
+        var failedKeys = new HashSet<String>();
+        for (var send : sends.entrySet()) {
+            var event = send.getKey();
+            Throwable error;
+            try {
+                send.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                error = null;
+            } catch (ExecutionException ex) {
+                // also logged and counted by the KafkaProducerService
+                error = ex.getCause();
+            } catch (TimeoutException ex) {
+                error = ex;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (error == null) {
+                // published, but must be published again after the earlier event of its key that failed
+                if (!failedKeys.contains(event.messageKey())) {
+                    done.add(event.id());
+                }
+                continue;
+            }
+            failedKeys.add(event.messageKey());
+            int attempts = isRetriable(error) ? event.attempts() : event.attempts() + 1;
+            boolean park = attempts >= maxAttempts;
+            recordFailure(event, attempts, error, park);
+            if (park) {
+                parked++;
+            }
+        }
+
+        if (!done.isEmpty()) {
+            jdbcOperations.update(DELETE_EVENTS, Map.of("ids", done));
+        }
+        return done.size() + parked;
+    }
+
+    private void recordFailure(OutboxEvent event, int attempts, Throwable error, boolean park) {
+        var params = new MapSqlParameterSource("id", event.id())
+            .addValue("attempts", attempts)
+            .addValue("lastError", String.valueOf(error))
+            .addValue("parkedTimestamp", park ? LocalDateTime.now(clock) : null, Types.TIMESTAMP);
+        jdbcOperations.update(UPDATE_FAILED_EVENT, params);
+        if (park) {
+            parkedCounter(event.event()).increment();
+            logger.error(String.format("Parking outbox event %d (%s) after %d attempt(s), it is no longer relayed", event.id(), event.event(), attempts), error);
+        }
+    }
+
+    /**
+     * Whether the error may go away by itself, e.g. a broker that is not available or did not answer in time.
+     */
+    private static boolean isRetriable(Throwable error) {
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RetriableException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Counter parkedCounter(String event) {
+        return Counter.builder("phaedra2.outbox.parked")
+            .description("Number of events that were parked in the outbox because they could not be published")
+            .tag("event", event)
+            .register(meterRegistry);
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataBatchDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatBatchDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+
+/**
+ * Records the update events in the event_outbox table, as part of the transaction that changes the data. The
+ * {@link EventOutboxRelay} publishes them to Kafka once that transaction committed, so that an event is never lost
+ * nor published for a change that was rolled back, and so that requests never wait on the broker.
+ * <p>
+ * Several ResultData or ResultFeatureStats of one ResultSet are recorded as a single envelope event
+ * ({@link ResultDataBatchDTO}, {@link ResultFeatureStatBatchDTO}), split in several envelopes when needed to keep
+ * every message well below the maximum message size of the broker.
+ */
+@Service
+public class EventOutboxService {
+
+    private static final String PROPERTY_PREFIX = "phaedra2.result-data-service.kafka.";
+
+    private static final String INSERT_EVENT = "INSERT INTO event_outbox (topic, message_key, event, payload_type, payload, created_timestamp) " +
+        "VALUES (:topic, :messageKey, :event, :payloadType, CAST(:payload AS jsonb), :createdTimestamp)";
+
+    private final NamedParameterJdbcOperations jdbcOperations;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final int maxValuesPerEvent;
+    private final int maxFeatureStatsPerEvent;
+
+    public EventOutboxService(NamedParameterJdbcOperations jdbcOperations, ObjectMapper objectMapper, Clock clock, Environment environment) {
+        this.jdbcOperations = jdbcOperations;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.maxValuesPerEvent = environment.getProperty(PROPERTY_PREFIX + "max-values-per-event", Integer.class, 50_000);
+        this.maxFeatureStatsPerEvent = environment.getProperty(PROPERTY_PREFIX + "max-feature-stats-per-event", Integer.class, 1_000);
+    }
+
+    public void resultSetUpdated(ResultSetDTO resultSet) {
+        append(resultSet.getId(), KafkaConfig.EVENT_RESULT_SET_UPDATED, List.of(resultSet));
+    }
+
+    /**
+     * Records the deletion of a ResultSet, upon which every instance of the service evicts it from its
+     * {@link ResultSetCache}.
+     */
+    public void resultSetDeleted(ResultSetDTO resultSet) {
+        append(resultSet.getId(), KafkaConfig.EVENT_RESULT_SET_DELETED, List.of(resultSet));
+    }
+
+    public void resultDataUpdated(ResultDataDTO resultData) {
+        append(resultData.getResultSetId(), KafkaConfig.EVENT_RESULT_DATA_UPDATED, List.of(resultData));
+    }
+
+    /**
+     * Records the ResultData of one ResultSet as {@link KafkaConfig#EVENT_RESULT_DATA_BATCH_UPDATED} events, each
+     * containing at most {@code max-values-per-event} values (but at least one ResultData).
+     */
+    public void resultDataUpdated(long resultSetId, List<ResultDataDTO> resultData) {
+        var envelopes = chunk(resultData, r -> r.getValues() == null ? 1 : Math.max(1, r.getValues().length), maxValuesPerEvent).stream()
+            .map(chunk -> new ResultDataBatchDTO(resultSetId, chunk))
+            .toList();
+        append(resultSetId, KafkaConfig.EVENT_RESULT_DATA_BATCH_UPDATED, envelopes);
+    }
+
+    public void resultFeatureStatUpdated(ResultFeatureStatDTO featureStat) {
+        append(featureStat.getResultSetId(), KafkaConfig.EVENT_RESULT_FEATURE_STAT_UPDATED, List.of(featureStat));
+    }
+
+    /**
+     * Records the ResultFeatureStats of one ResultSet as {@link KafkaConfig#EVENT_RESULT_FEATURE_STAT_BATCH_UPDATED}
+     * events, each containing at most {@code max-feature-stats-per-event} ResultFeatureStats.
+     */
+    public void resultFeatureStatsUpdated(long resultSetId, List<ResultFeatureStatDTO> featureStats) {
+        var envelopes = chunk(featureStats, s -> 1, maxFeatureStatsPerEvent).stream()
+            .map(chunk -> new ResultFeatureStatBatchDTO(resultSetId, chunk))
+            .toList();
+        append(resultSetId, KafkaConfig.EVENT_RESULT_FEATURE_STAT_BATCH_UPDATED, envelopes);
+    }
+
+    /**
+     * Inserts the events using a single JDBC batch, as part of the transaction of the caller. The events are keyed
+     * by resultSetId, so that the events of a ResultSet end up on the same partition.
+     */
+    private void append(Long resultSetId, String event, List<?> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        var createdTimestamp = LocalDateTime.now(clock);
+        var params = payloads.stream()
+            .map(payload -> new MapSqlParameterSource()
+                .addValue("topic", KafkaConfig.TOPIC_RESULTDATA)
+                .addValue("messageKey", resultSetId == null ? null : resultSetId.toString())
+                .addValue("event", event)
+                .addValue("payloadType", payload.getClass().getName())
+                .addValue("payload", toJson(payload))
+                .addValue("createdTimestamp", createdTimestamp))
+            .toArray(MapSqlParameterSource[]::new);
+        jdbcOperations.batchUpdate(INSERT_EVENT, params);
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException(String.format("Cannot serialize event payload of type %s", payload.getClass().getName()), ex);
+        }
+    }
+
+    /**
+     * Splits the items in consecutive chunks of which the total weight does not exceed {@code maxWeight}, unless the
+     * chunk consists of a single item.
+     */
+    private static <T> List<List<T>> chunk(List<T> items, ToIntFunction<T> weight, int maxWeight) {
+        var chunks = new ArrayList<List<T>>();
+        var current = new ArrayList<T>();
+        long currentWeight = 0;
+        for (var item : items) {
+            int itemWeight = weight.applyAsInt(item);
+            if (!current.isEmpty() && currentWeight + itemWeight > maxWeight) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                currentWeight = 0;
+            }
+            current.add(item);
+            currentWeight += itemWeight;
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exports the values of several features of several ResultSets as an Apache Arrow IPC stream.
+ * <p>
+ * The stream contains one record batch per ResultSet (i.e. per plate) that has ResultData for at least one of the
+ * features, with one row per well and the columns:
+ * <ul>
+ *     <li>plateId, resultSetId (int64) and wellNr (int32, starting at 1)</li>
+ *     <li>one float32 column per requested feature, named after the feature id, which is null for the wells of a
+ *     feature without ResultData</li>
+ * </ul>
+ * The values are copied straight from a single result_data cursor into the Arrow vectors, one ResultSet at a time,
+ * see {@link ArrowExportSupport}. They are read in the binary array format, so that they are never boxed.
+ * <p>
+ * Arrow requires {@code --add-opens=java.base/java.nio=ALL-UNNAMED} on Java 16 and later.
+ */
+@Service
+public class FeatureMatrixExportService {
+
+    public static final String ARROW_STREAM_MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+
+    private static final String SELECT_RESULT_DATA = "SELECT rd.result_set_id, rd.feature_id, array_send(rd.\"values\") AS \"values\" FROM result_data rd " +
+        "WHERE rd.result_set_id = ANY(?) AND rd.feature_id = ANY(?) " +
+        "ORDER BY rd.result_set_id, rd.feature_id, rd.id";
+
+    private static final FieldType WELL_NR_TYPE = FieldType.notNullable(new ArrowType.Int(32, true));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public FeatureMatrixExportService(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Transactional(readOnly = true)
+    public void writeFeatureMatrix(List<ResultSetDTO> resultSets, List<Long> featureIds, OutputStream outputStream) throws IOException {
+        var featureColumns = featureIds.stream().distinct().toList();
+        var fields = new ArrayList<Field>();
+        fields.add(new Field("plateId", ArrowExportSupport.ID_TYPE, null));
+        fields.add(new Field("resultSetId", ArrowExportSupport.ID_TYPE, null));
+        fields.add(new Field("wellNr", WELL_NR_TYPE, null));
+        featureColumns.forEach(featureId -> fields.add(new Field(String.valueOf(featureId), ArrowExportSupport.VALUE_TYPE, null)));
+
+        var plateIds = new HashMap<Long, Long>();
+        resultSets.forEach(rs -> plateIds.put(rs.getId(), rs.getPlateId()));
+
+        ArrowExportSupport.export(jdbcTemplate, outputStream, con -> ArrowExportSupport.writeStream(new Schema(fields), outputStream, (root, writer) -> {
+            if (!plateIds.isEmpty()) {
+                ArrowExportSupport.query(con, SELECT_RESULT_DATA, List.of(List.copyOf(plateIds.keySet()), featureColumns),
+                    rs -> writeBatches(rs, plateIds, featureColumns, root, writer));
+            }
+        }));
+    }
+
+    private static void writeBatches(ResultSet rs, Map<Long, Long> plateIds, List<Long> featureColumns, VectorSchemaRoot root, ArrowStreamWriter writer) throws SQLException, IOException {
+        Long resultSetId = null;
+        var values = new HashMap<Long, float[]>();
+        while (rs.next()) {
+            long rowResultSetId = rs.getLong("result_set_id");
+            if (resultSetId != null && resultSetId != rowResultSetId) {
+                writeBatch(plateIds.get(resultSetId), resultSetId, featureColumns, values, root, writer);
+                values.clear();
+            }
+            resultSetId = rowResultSetId;
+            // only the first ResultData of a feature is used
+            long featureId = rs.getLong("feature_id");
+            if (!values.containsKey(featureId)) {
+                var featureValues = ArrowExportSupport.readValues(rs, "values");
+                values.put(featureId, featureValues == null ? new float[0] : featureValues);
+            }
+        }
+        if (resultSetId != null) {
+            writeBatch(plateIds.get(resultSetId), resultSetId, featureColumns, values, root, writer);
+        }
+    }
+
+    private static void writeBatch(long plateId, long resultSetId, List<Long> featureColumns, Map<Long, float[]> values,
+                                   VectorSchemaRoot root, ArrowStreamWriter writer) throws IOException {
+        int rowCount = values.values().stream().mapToInt(v -> v.length).max().orElse(0);
+
+        root.allocateNew();
+        var plateIdVector = (BigIntVector) root.getVector(0);
+        var resultSetIdVector = (BigIntVector) root.getVector(1);
+        var wellNrVector = (IntVector) root.getVector(2);
+        for (int i = 0; i < rowCount; i++) {
+            plateIdVector.setSafe(i, plateId);
+            resultSetIdVector.setSafe(i, resultSetId);
+            wellNrVector.setSafe(i, i + 1);
+        }
+
+        for (int col = 0; col < featureColumns.size(); col++) {
+            var vector = (Float4Vector) root.getVector(3 + col);
+            var featureValues = values.get(featureColumns.get(col));
+            for (int i = 0; i < rowCount; i++) {
+                if (featureValues != null && i < featureValues.length) {
+                    vector.setSafe(i, featureValues[i]);
+                } else {
+                    vector.setNull(i);
+                }
+            }
+        }
+
+        root.setRowCount(rowCount);
+        writer.writeBatch();
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes a float4[] in the binary array format, as returned by <code>array_send("values")</code>, straight into a
+ * float[]. This avoids the Float[] that the JDBC driver creates for a {@link java.sql.Array}, i.e. one object per
+ * value. Null elements are decoded as NaN, like in {@link eu.openanalytics.phaedra.resultdataservice.repository.ResultDataRowMapper}.
+ * <p>
+ * See also {@link CopyResultDataWriter}, which encodes arrays in the same format.
+ */
+final class Float4ArrayDecoder {
+
+    private Float4ArrayDecoder() {
+    }
+
+    static float[] decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        var buffer = ByteBuffer.wrap(bytes);
+        int dimensions = buffer.getInt();
+        buffer.getInt(); // has null elements
+        buffer.getInt(); // element type
+        if (dimensions == 0) {
+            return new float[0];
+        }
+        if (dimensions != 1) {
+            throw new IllegalArgumentException(String.format("Expected a one-dimensional array, got %d dimensions", dimensions));
+        }
+        var values = new float[buffer.getInt()];
+        buffer.getInt(); // lower bound
+        for (int i = 0; i < values.length; i++) {
+            int length = buffer.getInt();
+            values[i] = length < 0 ? Float.NaN : buffer.getFloat();
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes ResultData using a single JDBC batch of INSERT statements. The generated ids and timestamps are returned
+ * by the insert itself, so that the rows don't have to be read again.
+ */
+@Component
+@ConditionalOnProperty(name = ResultDataWriter.MODE_PROPERTY, havingValue = "batch", matchIfMissing = true)
+public class JdbcBatchResultDataWriter implements ResultDataWriter {
+
+    private static final String INSERT_RESULT_DATA = "INSERT INTO result_data (result_set_id, feature_id, \"values\", status_code, status_message, exit_code, created_timestamp) " +
+        "VALUES (?, ?, ?, CAST(? AS status_code), ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcBatchResultDataWriter(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public List<ResultData> write(List<ResultData> resultData) {
+        // workaround for https://github.com/spring-projects/spring-data-jdbc/issues/1033
+        if (resultData.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return jdbcTemplate.execute((ConnectionCallback<List<ResultData>>) con -> {
+            try (var stmt = con.prepareStatement(INSERT_RESULT_DATA, new String[]{"id", "created_timestamp"})) {
+                for (var rd : resultData) {
+                    stmt.setLong(1, rd.getResultSetId());
+                    stmt.setLong(2, rd.getFeatureId());
+                    if (rd.getValues() == null) {
+                        stmt.setNull(3, Types.ARRAY);
+                    } else {
+                        stmt.setObject(3, rd.getValues());
+                    }
+                    stmt.setString(4, rd.getStatusCode().name());
+                    stmt.setString(5, rd.getStatusMessage());
+                    stmt.setInt(6, rd.getExitCode());
+                    stmt.setObject(7, rd.getCreatedTimestamp());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                var result = new ArrayList<ResultData>(resultData.size());
+                try (var keys = stmt.getGeneratedKeys()) {
+                    var it = resultData.iterator();
+                    while (keys.next()) {
+                        result.add(it.next()
+                            .withId(keys.getLong("id"))
+                            .withCreatedTimestamp(keys.getObject("created_timestamp", LocalDateTime.class)));
+                    }
+                }
+                return result;
+            }
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "batch";
+    }
+
+}
@@ -20,42 +20,307 @@
  */
 package eu.openanalytics.phaedra.resultdataservice.service;
 
+import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.BATCH_LISTENER_CONTAINER_FACTORY;
+import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.CACHE_INVALIDATION_GROUP_ID;
+import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.CACHE_INVALIDATION_LISTENER_CONTAINER_FACTORY;
+import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.EVENT_RESULT_SET_DELETED;
+import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.EVENT_SAVE_RESULT_DATA;
+import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.EVENT_SAVE_RESULT_STATS;
 import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.GROUP_ID;
+import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.LISTENER_CONCURRENCY;
+import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.TOPIC_PLATES;
+import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.TOPIC_PROTOCOLS;
 import static eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig.TOPIC_RESULTDATA;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig;
+import eu.openanalytics.phaedra.resultdataservice.config.ResultEventFormat;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
-import eu.openanalytics.phaedra.resultdataservice.exception.DuplicateResultFeatureStatException;
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetAlreadyCompletedException;
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 @Service
 public class KafkaConsumerService {
 
     private final ResultDataService resultDataService;
     private final ResultFeatureStatService resultFeatureStatService;
+    private final ReferenceDataCache referenceDataCache;
+    private final ResultSetCache resultSetCache;
+    private final DeadLetterPublishingRecoverer deadLetterPublishingRecoverer;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper cborObjectMapper;
+    private final MeterRegistry meterRegistry;
+
+    // The events of the resultdata topic that are handled, by event type
+    private final Map<String, Route<?>> routes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Counter skippedRecords;
+    private final Counter skippedBytes;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
     
-    public KafkaConsumerService(ResultDataService resultDataService, ResultFeatureStatService resultFeatureStatService) {
+    public KafkaConsumerService(ResultDataService resultDataService, ResultFeatureStatService resultFeatureStatService, ReferenceDataCache referenceDataCache,
+    		ResultSetCache resultSetCache, DeadLetterPublishingRecoverer deadLetterPublishingRecoverer, ObjectMapper objectMapper, MappingJackson2CborHttpMessageConverter cborHttpMessageConverter,
+    		MeterRegistry meterRegistry) {
         this.resultDataService = resultDataService;
         this.resultFeatureStatService = resultFeatureStatService;
+        this.referenceDataCache = referenceDataCache;
+        this.resultSetCache = resultSetCache;
+        this.deadLetterPublishingRecoverer = deadLetterPublishingRecoverer;
+        this.objectMapper = objectMapper;
+        this.cborObjectMapper = cborHttpMessageConverter.getObjectMapper();
+        this.meterRegistry = meterRegistry;
+
+        routes.put(EVENT_SAVE_RESULT_DATA, new Route<>(EVENT_SAVE_RESULT_DATA, ResultDataDTO.class, ResultDataDTO::getResultSetId, this.resultDataService::create));
+        routes.put(EVENT_SAVE_RESULT_STATS, new Route<>(EVENT_SAVE_RESULT_STATS, ResultFeatureStatDTO.class, ResultFeatureStatDTO::getResultSetId, this.resultFeatureStatService::create));
+        this.skippedRecords = Counter.builder("phaedra2.kafka.consume.skipped.records")
+        		.description("Number of events on the resultdata topic that were skipped without deserializing them")
+        		.baseUnit("records")
+        		.register(meterRegistry);
+        this.skippedBytes = Counter.builder("phaedra2.kafka.consume.skipped.bytes")
+        		.description("Size of the payloads of the events on the resultdata topic that were skipped without deserializing them")
+        		.baseUnit("bytes")
+        		.register(meterRegistry);
+    }
+
+    /**
+     * Receives every event on the resultdata topic, as undeserialized bytes. The events are routed by their
+     * {@link KafkaConfig#eventType event type}: events without a route (such as the update events published by this
+     * service) are skipped without parsing them, the others are deserialized into the DTO of their route and saved.
+     * <p>
+     * The group of the former resultData listener is kept, so that consumption resumes from its committed offsets.
+     * The offsets of the former {@code _resStats} group are not used: saveResultStats events between the offsets of
+     * both groups would be lost when upgrading. Drain the topic first: stop the producers of saveResultData and
+     * saveResultStats events, wait until neither group has any lag left, and only then deploy this version.
+     */
+    @KafkaListener(topics = TOPIC_RESULTDATA, groupId = GROUP_ID + "_resData", containerFactory = BATCH_LISTENER_CONTAINER_FACTORY,
+    		concurrency = LISTENER_CONCURRENCY)
+    public void onResultDataTopicEvents(List<ConsumerRecord<String, byte[]>> records) {
+    	var routed = new LinkedHashMap<Route<?>, List<ConsumerRecord<String, byte[]>>>();
+    	for (var rec : records) {
+    		var eventType = KafkaConfig.eventType(rec);
+    		var route = eventType == null ? null : routes.get(eventType);
+    		if (route == null) {
+    			skippedRecords.increment();
+    			skippedBytes.increment(rec.value() == null ? 0 : rec.value().length);
+    			continue;
+    		}
+    		routed.computeIfAbsent(route, r -> new ArrayList<>()).add(rec);
+    	}
+    	routed.forEach((route, routedRecords) -> {
+    		logger.info(String.format("Event batch received to %s: %d events", route.event(), routedRecords.size()));
+    		processBatch(route, routedRecords);
+    	});
+    }
+
+    /**
+     * Evicts a deleted ResultSet from the {@link ResultSetCache} of this instance, also when it was deleted by another
+     * instance. The event is keyed by the resultSetId, other events on the topic are ignored without parsing them.
+     */
+    @KafkaListener(topics = TOPIC_RESULTDATA, groupId = CACHE_INVALIDATION_GROUP_ID, containerFactory = CACHE_INVALIDATION_LISTENER_CONTAINER_FACTORY)
+    public void onResultSetEvent(ConsumerRecord<String, Object> rec) {
+    	if (!EVENT_RESULT_SET_DELETED.equals(KafkaConfig.eventType(rec))) {
+    		return;
+    	}
+    	try {
+    		resultSetCache.invalidate(Long.parseLong(rec.key()));
+    	} catch (NumberFormatException ex) {
+    		logger.warn(String.format("Cannot determine the resultSetId of event %s at %s-%d@%d", EVENT_RESULT_SET_DELETED, rec.topic(), rec.partition(), rec.offset()), ex);
+    	}
+    }
+
+    /**
+     * Invalidates the cached wells of a plate when the plate service publishes an event about the plate or one of its
+     * wells.
+     */
+    @KafkaListener(topics = TOPIC_PLATES, groupId = CACHE_INVALIDATION_GROUP_ID, containerFactory = CACHE_INVALIDATION_LISTENER_CONTAINER_FACTORY)
+    public void onPlateEvent(ConsumerRecord<String, Object> rec) {
+    	referencedId(rec, "plateId").ifPresent(referenceDataCache::invalidateWells);
+    }
+
+    /**
+     * Invalidates a cached protocol when the protocol service publishes an event about the protocol or one of its
+     * features.
+     */
+    @KafkaListener(topics = TOPIC_PROTOCOLS, groupId = CACHE_INVALIDATION_GROUP_ID, containerFactory = CACHE_INVALIDATION_LISTENER_CONTAINER_FACTORY)
+    public void onProtocolEvent(ConsumerRecord<String, Object> rec) {
+    	referencedId(rec, "protocolId").ifPresent(referenceDataCache::invalidateProtocol);
+    }
+
+    /**
+     * Returns the value of the {@code idProperty} of the event payload (for events about a child object, e.g. a well),
+     * or of its id property (for events about the object itself).
+     */
+    private Optional<Long> referencedId(ConsumerRecord<String, Object> rec, String idProperty) {
+    	try {
+    		Map<?, ?> payload = convert(rec.value(), Map.class);
+    		var id = payload.containsKey(idProperty) ? payload.get(idProperty) : payload.get("id");
+    		if (id instanceof Number number) {
+    			return Optional.of(number.longValue());
+    		}
+    		if (id instanceof String string) {
+    			return Optional.of(Long.parseLong(string));
+    		}
+    	} catch (Exception ex) {
+    		logger.warn(String.format("Cannot determine the %s of event %s at %s-%d@%d", idProperty, KafkaConfig.eventType(rec), rec.topic(), rec.partition(), rec.offset()), ex);
+    	}
+    	return Optional.empty();
+    }
+
+    @FunctionalInterface
+    private interface GroupWriter<T> {
+    	void write(long resultSetId, List<T> items) throws Exception;
+    }
+
+    /**
+     * The handler of an event type: the DTO the payload is deserialized into, and how it is saved.
+     */
+    private record Route<T>(String event, Class<T> type, Function<T, Long> resultSetIdGetter, GroupWriter<T> writer) {
+    }
+
+    /**
+     * Processes a batch of records, see {@link #doProcessBatch}, and records the consume metrics.
+     */
+    private <T> void processBatch(Route<T> route, List<ConsumerRecord<String, byte[]>> records) {
+    	var sample = Timer.start(meterRegistry);
+    	int failed = doProcessBatch(records, route.type(), route.resultSetIdGetter(), route.writer());
+    	sample.stop(Timer.builder("phaedra2.kafka.consume")
+    			.description("Time spent processing a batch of events")
+    			.tag("event", route.event())
+    			.register(meterRegistry));
+    	recordCounter(route.event(), "saved").increment(records.size() - failed);
+    	recordCounter(route.event(), "dead-letter").increment(failed);
+    }
+
+    private Counter recordCounter(String event, String outcome) {
+    	return Counter.builder("phaedra2.kafka.consume.records")
+    			.description("Number of consumed events")
+    			.tag("event", event)
+    			.tag("outcome", outcome)
+    			.register(meterRegistry);
+    }
+
+    /**
+     * Groups the records of a batch by ResultSet and writes every group at once.
+     * If a group cannot be written as a whole, its records are retried one by one so that only the offending records
+     * end up on the dead-letter topic. The dead letters are only published once all groups were written, and a
+     * failure to publish them does not fail the batch: that would redeliver it, and write the other groups again.
+     *
+     * @return the number of records that were sent to the dead-letter topic
+     */
+    private <T> int doProcessBatch(List<ConsumerRecord<String, byte[]>> records, Class<T> type, Function<T, Long> resultSetIdGetter, GroupWriter<T> writer) {
+    	var deadLetters = new ArrayList<DeadLetter>();
+    	var groups = new LinkedHashMap<Long, Map<ConsumerRecord<String, byte[]>, T>>();
+    	for (var rec : records) {
+    		try {
+    			T item = decode(rec, type);
+    			Long resultSetId = resultSetIdGetter.apply(item);
+    			if (resultSetId == null) {
+    				throw new IllegalArgumentException("Event does not specify a resultSetId");
+    			}
+    			groups.computeIfAbsent(resultSetId, id -> new LinkedHashMap<>()).put(rec, item);
+    		} catch (Exception ex) {
+    			addDeadLetter(deadLetters, rec, ex);
+    		}
+    	}
+
+    	groups.forEach((resultSetId, group) -> {
+    		try {
+    			writer.write(resultSetId, new ArrayList<>(group.values()));
+    		} catch (ResultSetNotFoundException | ResultSetAlreadyCompletedException ex) {
+    			// Applies to every record of the group, retrying them individually is pointless
+    			group.keySet().forEach(rec -> addDeadLetter(deadLetters, rec, ex));
+    		} catch (Exception ex) {
+    			if (group.size() == 1) {
+    				group.keySet().forEach(rec -> addDeadLetter(deadLetters, rec, ex));
+    				return;
+    			}
+    			logger.warn(String.format("Failed to save %d events for resultSet %d as a batch, retrying one by one", group.size(), resultSetId), ex);
+    			group.forEach((rec, item) -> {
+    				try {
+    					writer.write(resultSetId, List.of(item));
+    				} catch (Exception recordEx) {
+    					addDeadLetter(deadLetters, rec, recordEx);
+    				}
+    			});
+    		}
+    	});
+
+    	deadLetters.forEach(this::publishDeadLetter);
+    	return deadLetters.size();
+    }
+
+    /**
+     * Deserializes the payload of an event on the resultdata topic: CBOR (see {@link ResultEventFormat}) or JSON.
+     */
+    private <T> T decode(ConsumerRecord<String, byte[]> rec, Class<T> type) throws IOException {
+    	if (rec.value() == null) {
+    		throw new IllegalArgumentException("Event has no payload");
+    	}
+    	if (ResultEventFormat.isCbor(rec.headers())) {
+    		ResultEventFormat.checkSchemaVersion(rec.headers());
+    		return cborObjectMapper.readValue(rec.value(), type);
+    	}
+    	return objectMapper.readValue(rec.value(), type);
+    }
+
+    private <T> T convert(Object value, Class<T> type) throws IOException {
+    	if (value == null) {
+    		throw new IllegalArgumentException("Event has no payload");
+    	}
+    	if (type.isInstance(value)) {
+    		return type.cast(value);
+    	}
+    	if (value instanceof String json) {
+    		return objectMapper.readValue(json, type);
+    	}
+    	if (value instanceof byte[] json) {
+    		return objectMapper.readValue(json, type);
+    	}
+    	return objectMapper.convertValue(value, type);
+    }
+
+    private record DeadLetter(ConsumerRecord<String, byte[]> rec, Exception ex) {
     }
 
-    @KafkaListener(topics = TOPIC_RESULTDATA, groupId = GROUP_ID + "_resData", filter = "saveResultDataEventFilter")
-    public void onSaveResultDataEvent(ResultDataDTO resultDataDTO) throws ResultSetNotFoundException, ResultSetAlreadyCompletedException {
-    	logger.info(String.format("Event received to save resultData for resultSet %d, feature %d", resultDataDTO.getResultSetId(), resultDataDTO.getFeatureId()));
-        resultDataService.create(resultDataDTO.getResultSetId(), resultDataDTO);
+    private void addDeadLetter(List<DeadLetter> deadLetters, ConsumerRecord<String, byte[]> rec, Exception ex) {
+    	deadLetters.add(new DeadLetter(rec, ex));
+    	logger.error(String.format("Failed to process event %s at %s-%d@%d, sending it to the dead-letter topic", KafkaConfig.eventType(rec), rec.topic(), rec.partition(), rec.offset()), ex);
     }
 
-    @KafkaListener(topics = TOPIC_RESULTDATA, groupId = GROUP_ID + "_resStats", filter = "saveResultStatsEventFilter")
-    public void onSaveResultStatsEvent(ResultFeatureStatDTO featureStatDTO) throws ResultSetNotFoundException, DuplicateResultFeatureStatException, ResultSetAlreadyCompletedException {
-    	logger.info(String.format("Event received to save featureStats for resultSet %d, feature %d, stat %s", featureStatDTO.getResultSetId(), featureStatDTO.getFeatureId(), featureStatDTO.getStatisticName()));
-        resultFeatureStatService.create(featureStatDTO.getResultSetId(), featureStatDTO);
+    private void publishDeadLetter(DeadLetter deadLetter) {
+    	var rec = deadLetter.rec();
+    	try {
+    		deadLetterPublishingRecoverer.accept(rec, deadLetter.ex());
+    	} catch (Exception ex) {
+    		// the event is lost, but failing the batch would write the events that were saved again
+    		Counter.builder("phaedra2.kafka.consume.dead-letter.failures")
+    				.description("Number of events that could not be published to the dead-letter topic")
+    				.tag("event", String.valueOf(KafkaConfig.eventType(rec)))
+    				.register(meterRegistry)
+    				.increment();
+    		logger.error(String.format("Failed to publish event %s at %s-%d@%d to the dead-letter topic, dropping it", KafkaConfig.eventType(rec), rec.topic(), rec.partition(), rec.offset()), ex);
+    	}
     }
 }
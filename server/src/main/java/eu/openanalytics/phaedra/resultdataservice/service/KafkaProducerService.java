@@ -20,33 +20,83 @@
  */
 package eu.openanalytics.phaedra.resultdataservice.service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 import eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig;
-import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
-import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
-import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
 
+/**
+ * Publishes events to Kafka, used by the {@link EventOutboxRelay} to publish the recorded update events.
+ * <p>
+ * Sending is asynchronous: {@link #send} returns a future that completes once the broker acknowledged the event.
+ * Failed sends are logged and counted (phaedra2.kafka.produce.failures).
+ */
 @Service
 public class KafkaProducerService {
-	
+
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    public KafkaProducerService(KafkaTemplate<String, Object> kafkaTemplate) {
+    public KafkaProducerService(KafkaTemplate<String, Object> kafkaTemplate, MeterRegistry meterRegistry) {
         this.kafkaTemplate = kafkaTemplate;
+        this.meterRegistry = meterRegistry;
     }
 
-    public void sendResultSetUpdated(ResultSetDTO resultSet) {
-    	kafkaTemplate.send(KafkaConfig.TOPIC_RESULTDATA, KafkaConfig.EVENT_RESULT_SET_UPDATED, resultSet);
+    /**
+     * Sends an event and records the time until it is acknowledged by the broker. The event type is sent as
+     * {@link KafkaConfig#HEADER_EVENT_TYPE} header.
+     *
+     * @param key the key that determines the partition (the resultSetId), or {@code null} to use the event type
+     */
+    public CompletableFuture<SendResult<String, Object>> send(String topic, String key, String event, Object payload) {
+    	var sample = Timer.start(meterRegistry);
+    	CompletableFuture<SendResult<String, Object>> future;
+    	try {
+    		var rec = new ProducerRecord<String, Object>(topic, key == null ? event : key, payload);
+    		rec.headers().add(KafkaConfig.HEADER_EVENT_TYPE, event.getBytes(StandardCharsets.UTF_8));
+    		future = kafkaTemplate.send(rec).completable();
+    	} catch (Exception ex) {
+    		// e.g. the serialization failed or the producer buffer stayed full for max.block.ms
+    		future = CompletableFuture.failedFuture(ex);
+    	}
+    	return future.whenComplete((result, ex) -> {
+    		if (ex == null) {
+    			sample.stop(produceTimer(event, "success"));
+    		} else {
+    			sample.stop(produceTimer(event, "failure"));
+    			failureCounter(event).increment();
+    			logger.error(String.format("Failed to publish %s event", event), ex);
+    		}
+    	});
     }
-    
-    public void sendResultDataUpdated(ResultDataDTO resultData) {
-    	kafkaTemplate.send(KafkaConfig.TOPIC_RESULTDATA, KafkaConfig.EVENT_RESULT_DATA_UPDATED, resultData);
+
+    private Timer produceTimer(String event, String outcome) {
+    	return Timer.builder("phaedra2.kafka.produce")
+    			.description("Time between sending an event and its acknowledgement by the broker")
+    			.tag("event", event)
+    			.tag("outcome", outcome)
+    			.register(meterRegistry);
     }
-    
-    public void sendResultFeatureStatUpdated(ResultFeatureStatDTO featureStat) {
-    	kafkaTemplate.send(KafkaConfig.TOPIC_RESULTDATA, KafkaConfig.EVENT_RESULT_FEATURE_STAT_UPDATED, featureStat);
+
+    private Counter failureCounter(String event) {
+    	return Counter.builder("phaedra2.kafka.produce.failures")
+    			.description("Number of events that could not be published")
+    			.tag("event", event)
+    			.register(meterRegistry);
     }
-    
+
 }
@@ -20,67 +20,39 @@
  */
 package eu.openanalytics.phaedra.resultdataservice.service;
 
-import eu.openanalytics.phaedra.resultdataservice.dto.ErrorDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
 import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
 import eu.openanalytics.phaedra.resultdataservice.model.ResultFeatureStat;
 import eu.openanalytics.phaedra.resultdataservice.model.ResultSet;
-import org.modelmapper.Conditions;
-import org.modelmapper.Converter;
-import org.modelmapper.config.Configuration;
-import org.modelmapper.convention.NameTransformers;
-import org.modelmapper.convention.NamingConventions;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-
+/**
+ * Maps between the entities and the DTOs. Only properties that are not null are copied, so that the returned builders
+ * keep their defaults (or, for updates, the existing values) for properties that are not specified.
+ * <p>
+ * The mappings are written out by hand, since they are executed for every row that is read or written.
+ */
 @Service
 public class ModelMapper {
 
-    private final org.modelmapper.ModelMapper modelMapper = new org.modelmapper.ModelMapper();
-
-    public ModelMapper() {
-        Configuration builderConfiguration = modelMapper.getConfiguration().copy()
-            .setDestinationNameTransformer(NameTransformers.builder())
-            .setDestinationNamingConvention(NamingConventions.builder());
-
-        modelMapper.createTypeMap(ResultDataDTO.class, ResultData.ResultDataBuilder.class, builderConfiguration)
-            .setPropertyCondition(Conditions.isNotNull());
-
-        modelMapper.createTypeMap(ResultData.class, ResultDataDTO.ResultDataDTOBuilder.class, builderConfiguration)
-            .setPropertyCondition(Conditions.isNotNull())
-            .addMappings(mapper -> mapper.skip(ResultDataDTO.ResultDataDTOBuilder::resultFeatureStats));
-
-        modelMapper.createTypeMap(ResultSetDTO.class, ResultSet.ResultSetBuilder.class, builderConfiguration)
-            .setPropertyCondition(Conditions.isNotNull())
-            .addMappings(mapper -> mapper.using((Converter<List<ErrorDTO>, ResultSet.ErrorHolder>) context -> {
-                if (context.getSource() != null) {
-                    return new ResultSet.ErrorHolder(context.getSource());
-                }
-                return null;
-            }).map(ResultSetDTO::getErrors, ResultSet.ResultSetBuilder::errors));
-
-        modelMapper.createTypeMap(ResultSet.class, ResultSetDTO.ResultSetDTOBuilder.class, builderConfiguration)
-            .setPropertyCondition(Conditions.isNotNull());
-
-        modelMapper.createTypeMap(ResultFeatureStat.class, ResultFeatureStatDTO.ResultFeatureStatDTOBuilder.class, builderConfiguration)
-            .setPropertyCondition(Conditions.isNotNull());
-
-        modelMapper.createTypeMap(ResultFeatureStatDTO.class, ResultFeatureStat.ResultFeatureStatBuilder.class, builderConfiguration)
-            .setPropertyCondition(Conditions.isNotNull());
-
-        modelMapper.validate(); // ensure that objects can be mapped
-    }
-
     /**
      * Maps a {@link ResultDataDTO} to a {@link ResultData.ResultDataBuilder}.
      * The return value can be further customized by calling the builder methods.
      */
     public ResultData.ResultDataBuilder map(ResultDataDTO resultDataDTO) {
-        ResultData.ResultDataBuilder builder = ResultData.builder();
-        modelMapper.map(resultDataDTO, builder);
+        ResultData.ResultDataBuilder builder = ResultData.builder()
+            .id(resultDataDTO.getId())
+            .resultSetId(resultDataDTO.getResultSetId())
+            .featureId(resultDataDTO.getFeatureId())
+            .values(resultDataDTO.getValues())
+            .statusCode(resultDataDTO.getStatusCode())
+            .statusMessage(resultDataDTO.getStatusMessage())
+            .createdTimestamp(resultDataDTO.getCreatedTimestamp());
+        if (resultDataDTO.getExitCode() != null) {
+            builder.exitCode(resultDataDTO.getExitCode());
+        }
         return builder;
     }
 
@@ -89,9 +61,15 @@ public class ModelMapper {
      * The return value can be further customized by calling the builder methods.
      */
     public ResultDataDTO.ResultDataDTOBuilder map(ResultData resultData) {
-        ResultDataDTO.ResultDataDTOBuilder builder = ResultDataDTO.builder();
-        modelMapper.map(resultData, builder);
-        return builder;
+        return ResultDataDTO.builder()
+            .id(resultData.getId())
+            .resultSetId(resultData.getResultSetId())
+            .featureId(resultData.getFeatureId())
+            .values(resultData.getValues())
+            .statusCode(resultData.getStatusCode())
+            .statusMessage(resultData.getStatusMessage())
+            .exitCode(resultData.getExitCode())
+            .createdTimestamp(resultData.getCreatedTimestamp());
     }
 
     /**
@@ -99,9 +77,7 @@ public class ModelMapper {
      * The return value can be further customized by calling the builder methods.
      */
     public ResultSet.ResultSetBuilder map(ResultSetDTO resultSetDTO) {
-        ResultSet.ResultSetBuilder builder = ResultSet.builder();
-        modelMapper.map(resultSetDTO, builder);
-        return builder;
+        return map(resultSetDTO, ResultSet.builder());
     }
 
     /**
@@ -109,9 +85,16 @@ public class ModelMapper {
      * The return value can be further customized by calling the builder methods.
      */
     public ResultSetDTO.ResultSetDTOBuilder map(ResultSet resultSet) {
-        ResultSetDTO.ResultSetDTOBuilder builder = ResultSetDTO.builder();
-        modelMapper.map(resultSet, builder);
-        return builder;
+        return ResultSetDTO.builder()
+            .id(resultSet.getId())
+            .protocolId(resultSet.getProtocolId())
+            .plateId(resultSet.getPlateId())
+            .measId(resultSet.getMeasId())
+            .executionStartTimeStamp(resultSet.getExecutionStartTimeStamp())
+            .executionEndTimeStamp(resultSet.getExecutionEndTimeStamp())
+            .outcome(resultSet.getOutcome())
+            .errors(resultSet.getErrors() != null ? resultSet.getErrors().getErrors() : null)
+            .errorsText(resultSet.getErrorsText());
     }
 
     /**
@@ -121,16 +104,49 @@ public class ModelMapper {
      * This function should be used for PUT requests.
      */
     public ResultSet.ResultSetBuilder map(ResultSetDTO resultSetDTO, ResultSet resultSet) {
-        ResultSet.ResultSetBuilder builder = resultSet.toBuilder();
-        modelMapper.map(resultSetDTO, builder);
-        return builder;
+        return map(resultSetDTO, resultSet.toBuilder());
     }
 
     public ResultFeatureStat.ResultFeatureStatBuilder map(ResultFeatureStatDTO resultFeatureStatDTO) {
-        return modelMapper.map(resultFeatureStatDTO, ResultFeatureStat.ResultFeatureStatBuilder.class);
+        return ResultFeatureStat.builder()
+            .id(resultFeatureStatDTO.getId())
+            .resultSetId(resultFeatureStatDTO.getResultSetId())
+            .featureId(resultFeatureStatDTO.getFeatureId())
+            .featureStatId(resultFeatureStatDTO.getFeatureStatId())
+            .value(resultFeatureStatDTO.getValue())
+            .statisticName(resultFeatureStatDTO.getStatisticName())
+            .welltype(resultFeatureStatDTO.getWelltype())
+            .statusCode(resultFeatureStatDTO.getStatusCode())
+            .statusMessage(resultFeatureStatDTO.getStatusMessage())
+            .exitCode(resultFeatureStatDTO.getExitCode())
+            .createdTimestamp(resultFeatureStatDTO.getCreatedTimestamp());
     }
 
     public ResultFeatureStatDTO.ResultFeatureStatDTOBuilder map(ResultFeatureStat resultFeatureStat) {
-        return modelMapper.map(resultFeatureStat, ResultFeatureStatDTO.ResultFeatureStatDTOBuilder.class);
+        return ResultFeatureStatDTO.builder()
+            .id(resultFeatureStat.getId())
+            .resultSetId(resultFeatureStat.getResultSetId())
+            .featureId(resultFeatureStat.getFeatureId())
+            .featureStatId(resultFeatureStat.getFeatureStatId())
+            .value(resultFeatureStat.getValue())
+            .statisticName(resultFeatureStat.getStatisticName())
+            .welltype(resultFeatureStat.getWelltype())
+            .statusCode(resultFeatureStat.getStatusCode())
+            .statusMessage(resultFeatureStat.getStatusMessage())
+            .exitCode(resultFeatureStat.getExitCode())
+            .createdTimestamp(resultFeatureStat.getCreatedTimestamp());
+    }
+
+    private ResultSet.ResultSetBuilder map(ResultSetDTO resultSetDTO, ResultSet.ResultSetBuilder builder) {
+        if (resultSetDTO.getId() != null) builder.id(resultSetDTO.getId());
+        if (resultSetDTO.getProtocolId() != null) builder.protocolId(resultSetDTO.getProtocolId());
+        if (resultSetDTO.getPlateId() != null) builder.plateId(resultSetDTO.getPlateId());
+        if (resultSetDTO.getMeasId() != null) builder.measId(resultSetDTO.getMeasId());
+        if (resultSetDTO.getExecutionStartTimeStamp() != null) builder.executionStartTimeStamp(resultSetDTO.getExecutionStartTimeStamp());
+        if (resultSetDTO.getExecutionEndTimeStamp() != null) builder.executionEndTimeStamp(resultSetDTO.getExecutionEndTimeStamp());
+        if (resultSetDTO.getOutcome() != null) builder.outcome(resultSetDTO.getOutcome());
+        if (resultSetDTO.getErrors() != null) builder.errors(new ResultSet.ErrorHolder(resultSetDTO.getErrors()));
+        if (resultSetDTO.getErrorsText() != null) builder.errorsText(resultSetDTO.getErrorsText());
+        return builder;
     }
 }
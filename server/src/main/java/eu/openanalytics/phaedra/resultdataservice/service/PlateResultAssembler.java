@@ -0,0 +1,114 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.PlateResultDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import org.apache.commons.collections4.multimap.ArrayListValuedHashMap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Groups the ResultData and ResultFeatureStats of a set of ResultSets into a {@link PlateResultDTO}.
+ */
+public final class PlateResultAssembler {
+
+    private PlateResultAssembler() {
+    }
+
+    public static PlateResultDTO assemble(List<ResultSetDTO> resultSets, List<ResultData> resultData, List<ResultFeatureStatDTO> resultFeatureStats, ModelMapper modelMapper) {
+        // 1. group ResultData by ResultSetId
+        var resultDataByResultSet = resultData
+            .stream()
+            .collect(Collectors.groupingBy(
+                ResultData::getResultSetId,
+                Collectors.toList()
+            ));
+
+        // 2. group ResultFeatureStats by ResultSetId and FeatureId (FeatureId is unique for one protocol)
+        var featureStatsByResultSet = resultFeatureStats
+            .stream()
+            .collect(Collectors.groupingBy(
+                ResultFeatureStatDTO::getResultSetId,
+                Collectors.groupingBy(
+                    ResultFeatureStatDTO::getFeatureId,
+                    Collectors.toList()
+                )
+            ));
+
+        // 3. group resultSets by ProtocolId and MeasId
+        var resultSetsByProtocolAndMeasId = resultSets.stream()
+            .collect(Collectors.groupingBy(
+                    ResultSetDTO::getProtocolId,
+                    Collectors.groupingBy(
+                        ResultSetDTO::getMeasId,
+                        Collectors.toList()
+                    )
+                )
+            );
+
+        // convert all the data
+        var results = new HashMap<Long, PlateResultDTO.ResultsPerProtocolDTO>();
+        resultSetsByProtocolAndMeasId.forEach((protocolId, measurements) -> {
+            var protocolBuilder = PlateResultDTO.ResultsPerProtocolDTO.builder();
+
+            // convert the measurements into DTO objects
+            var convertedMeasurements = new ArrayListValuedHashMap<Long, PlateResultDTO.ResultsPerMeasurement>();
+            measurements.forEach((measurementId, measurement) -> {
+                for (var resultSet : measurement) {
+                    if (!resultDataByResultSet.containsKey(resultSet.getId())) continue;
+                    // for each ResultSet, get ResultData, convert it to DTO and attach the relevant FeatureStats
+                    var convertedResultData = resultDataByResultSet.get(resultSet.getId())
+                        .stream()
+                        .map(it -> modelMapper.map(it)
+                                .resultFeatureStats(
+                                    getFeatureStats(featureStatsByResultSet, it)
+                                ).build()
+                        ).toList();
+
+                    convertedMeasurements.put(measurementId, PlateResultDTO.ResultsPerMeasurement.builder().resultData(convertedResultData).build());
+                }
+            });
+
+            protocolBuilder.measurements(convertedMeasurements.asMap());
+
+            results.put(protocolId, protocolBuilder.build());
+        });
+
+        return PlateResultDTO.builder().protocols(results).build();
+    }
+
+    private static List<ResultFeatureStatDTO> getFeatureStats(Map<Long, Map<Long, List<ResultFeatureStatDTO>>> resultFeatureStats, ResultData resultData) {
+        if (resultFeatureStats.containsKey(resultData.getResultSetId())) {
+            if (resultFeatureStats.get(resultData.getResultSetId()).containsKey(resultData.getFeatureId())) {
+                return resultFeatureStats.get(resultData.getResultSetId()).get(resultData.getFeatureId());
+            }
+        }
+        return Collections.emptyList();
+    }
+
+}
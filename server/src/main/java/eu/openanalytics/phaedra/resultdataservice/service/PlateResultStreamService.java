@@ -0,0 +1,307 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultFeatureStat;
+import eu.openanalytics.phaedra.resultdataservice.repository.ResultDataRowMapper;
+import eu.openanalytics.phaedra.resultdataservice.repository.ResultFeatureStatRowMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Writes the results of a plate in the same layout as {@link eu.openanalytics.phaedra.resultdataservice.dto.PlateResultDTO},
+ * without loading them into memory first.
+ * <p>
+ * The ResultData and the ResultFeatureStats are read using two server-side cursors that are both ordered by
+ * (protocol, measurement, ResultSet, feature), so that the stats of a ResultData can be picked up by walking both
+ * cursors in step (a merge join). Only a single ResultData and its stats are kept in memory at any time.
+ * <p>
+ * Like {@link PlateResultAssembler}, every protocol of the ResultSets is written, including protocols without
+ * ResultData (which have no measurements).
+ */
+@Service
+public class PlateResultStreamService {
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final String SELECT_RESULT_DATA = "SELECT rs.protocol_id, rs.meas_id, rd.* FROM result_data rd " +
+        "JOIN result_set rs ON rs.id = rd.result_set_id WHERE rs.id = ANY(?) " +
+        "ORDER BY rs.protocol_id, rs.meas_id, rd.result_set_id, rd.feature_id, rd.id";
+
+    private static final String SELECT_RESULT_FEATURE_STATS = "SELECT rs.protocol_id, rs.meas_id, rfs.* FROM result_feature_stat rfs " +
+        "JOIN result_set rs ON rs.id = rfs.result_set_id WHERE rs.id = ANY(?) " +
+        "ORDER BY rs.protocol_id, rs.meas_id, rfs.result_set_id, rfs.feature_id, rfs.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper cborObjectMapper;
+    private final ModelMapper modelMapper;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary resultDataCount;
+
+    private final RowMapper<ResultData> resultDataRowMapper = new ResultDataRowMapper();
+    private final RowMapper<ResultFeatureStat> resultFeatureStatRowMapper = new ResultFeatureStatRowMapper();
+
+    public PlateResultStreamService(DataSource dataSource, ObjectMapper objectMapper, MappingJackson2CborHttpMessageConverter cborHttpMessageConverter, ModelMapper modelMapper,
+                                    MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.objectMapper = objectMapper;
+        this.cborObjectMapper = cborHttpMessageConverter.getObjectMapper();
+        this.modelMapper = modelMapper;
+        this.meterRegistry = meterRegistry;
+        this.resultDataCount = DistributionSummary.builder("phaedra2.plateresults.resultdata")
+            .description("Number of ResultData in a plate-results response")
+            .baseUnit("resultdata")
+            .tag("endpoint", "stream")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Writes the results of the given ResultSets to the outputStream, as CBOR when the mediaType is
+     * application/cbor and as JSON otherwise. The outputStream is not closed.
+     */
+    @Transactional(readOnly = true)
+    public void writePlateResults(List<ResultSetDTO> resultSets, MediaType mediaType, OutputStream outputStream) throws IOException {
+        var resultSetIds = resultSets.stream().map(ResultSetDTO::getId).toList();
+        var protocolIds = new TreeSet<Long>();
+        resultSets.forEach(rs -> protocolIds.add(rs.getProtocolId()));
+        boolean cbor = MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(mediaType);
+        var mapper = cbor ? cborObjectMapper : objectMapper;
+        var countingOutputStream = new CountingOutputStream(outputStream);
+        int resultDataWritten = 0;
+        try (var generator = mapper.createGenerator(countingOutputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("protocols");
+            if (!resultSetIds.isEmpty()) {
+                try {
+                    resultDataWritten = jdbcTemplate.execute((ConnectionCallback<Integer>) con -> writeProtocols(con, resultSetIds, protocolIds.iterator(), generator));
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+
+        resultDataCount.record(resultDataWritten);
+        DistributionSummary.builder("phaedra2.plateresults.payload")
+            .description("Size of a streamed plate-results response")
+            .baseUnit("bytes")
+            .tag("format", cbor ? "cbor" : "json")
+            .register(meterRegistry)
+            .record(countingOutputStream.count);
+    }
+
+    /**
+     * Writes the ResultData of the given ResultSets and returns the number of ResultData written.
+     *
+     * @param protocolIds the protocols of the ResultSets, in ascending order
+     */
+    private int writeProtocols(Connection con, List<Long> resultSetIds, Iterator<Long> protocolIds, JsonGenerator generator) throws SQLException {
+        var ids = con.createArrayOf("bigint", resultSetIds.toArray());
+        try (var dataStmt = openCursor(con, SELECT_RESULT_DATA, ids);
+             var statStmt = openCursor(con, SELECT_RESULT_FEATURE_STATS, ids);
+             var data = dataStmt.executeQuery();
+             var stats = statStmt.executeQuery()) {
+
+            var featureStats = new FeatureStatCursor(stats);
+            Long protocolId = null;
+            Long measId = null;
+            Long resultSetId = null;
+            int resultDataWritten = 0;
+
+            while (data.next()) {
+                var resultData = resultDataRowMapper.mapRow(data, data.getRow());
+                var key = new long[]{data.getLong("protocol_id"), data.getLong("meas_id"), resultData.getResultSetId(), resultData.getFeatureId()};
+
+                boolean newProtocol = protocolId == null || protocolId != key[0];
+                boolean newMeas = newProtocol || measId != key[1];
+                boolean newResultSet = newMeas || resultSetId != key[2];
+
+                // close the groups that ended with the previous row
+                if (newResultSet && resultSetId != null) {
+                    generator.writeEndArray();
+                    generator.writeEndObject();
+                }
+                if (newMeas && measId != null) {
+                    generator.writeEndArray();
+                }
+                if (newProtocol && protocolId != null) {
+                    generator.writeEndObject();
+                    generator.writeEndObject();
+                }
+
+                // open the groups that start with this row
+                if (newProtocol) {
+                    protocolId = key[0];
+                    writeEmptyProtocols(protocolIds, protocolId, generator);
+                    generator.writeObjectFieldStart(String.valueOf(protocolId));
+                    generator.writeObjectFieldStart("measurements");
+                }
+                if (newMeas) {
+                    measId = key[1];
+                    generator.writeArrayFieldStart(String.valueOf(measId));
+                }
+                if (newResultSet) {
+                    resultSetId = key[2];
+                    generator.writeStartObject();
+                    generator.writeArrayFieldStart("resultData");
+                }
+
+                generator.writeObject(modelMapper.map(resultData)
+                    .resultFeatureStats(featureStats.collect(key))
+                    .build());
+                resultDataWritten++;
+            }
+
+            if (resultSetId != null) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            writeEmptyProtocols(protocolIds, null, generator);
+            return resultDataWritten;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            ids.free();
+        }
+    }
+
+    /**
+     * Writes the protocols without ResultData that precede the given protocol (all remaining protocols when it is
+     * {@code null}), and skips the given protocol itself.
+     */
+    private static void writeEmptyProtocols(Iterator<Long> protocolIds, Long protocolId, JsonGenerator generator) throws IOException {
+        while (protocolIds.hasNext()) {
+            long next = protocolIds.next();
+            if (protocolId != null && next >= protocolId) {
+                return;
+            }
+            generator.writeObjectFieldStart(String.valueOf(next));
+            generator.writeObjectFieldStart("measurements");
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+    }
+
+    private PreparedStatement openCursor(Connection con, String sql, java.sql.Array ids) throws SQLException {
+        var stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(FETCH_SIZE);
+        stmt.setArray(1, ids);
+        return stmt;
+    }
+
+    /**
+     * Walks the ResultFeatureStat cursor, which is ordered by the same key as the ResultData cursor.
+     */
+    private class FeatureStatCursor {
+
+        private final ResultSet stats;
+        private ResultFeatureStat current;
+        private long[] currentKey;
+
+        FeatureStatCursor(ResultSet stats) throws SQLException {
+            this.stats = stats;
+            advance();
+        }
+
+        /**
+         * Returns the stats of the given key. Stats with a lower key have no corresponding ResultData and are skipped.
+         */
+        List<ResultFeatureStatDTO> collect(long[] key) throws SQLException {
+            while (current != null && Arrays.compare(currentKey, key) < 0) {
+                advance();
+            }
+            var res = new ArrayList<ResultFeatureStatDTO>();
+            while (current != null && Arrays.compare(currentKey, key) == 0) {
+                res.add(modelMapper.map(current).build());
+                advance();
+            }
+            return res;
+        }
+
+        private void advance() throws SQLException {
+            if (stats.next()) {
+                current = resultFeatureStatRowMapper.mapRow(stats, stats.getRow());
+                currentKey = new long[]{stats.getLong("protocol_id"), stats.getLong("meas_id"), current.getResultSetId(), current.getFeatureId()};
+            } else {
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes written to the underlying stream, for the payload size metric.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.core.env.Environment;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import eu.openanalytics.phaedra.plateservice.client.PlateServiceClient;
+import eu.openanalytics.phaedra.plateservice.dto.WellDTO;
+import eu.openanalytics.phaedra.protocolservice.client.ProtocolServiceClient;
+import eu.openanalytics.phaedra.protocolservice.dto.ProtocolDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Cache of data owned by other Phaedra services that rarely changes: the wells of a plate and the protocols
+ * (including their features).
+ * <p>
+ * Entries expire after a configurable TTL and are invalidated when the owning service publishes an event about them,
+ * see {@link KafkaConsumerService}. Cache misses are loaded on the {@link RemoteLookupExecutor}, and concurrent
+ * requests for the same key share a single remote call. The number of remote calls that were saved is exposed as
+ * the cache hits of the "wells" and "protocols" caches.
+ * <p>
+ * Entries are loaded with the bearer token of the current user, and are therefore cached per user: an entry is never
+ * served to a user other than the one it was loaded for, who may not be allowed to see it.
+ */
+@Component
+public class ReferenceDataCache {
+
+    public static final String PROPERTY_PREFIX = "phaedra2.result-data-service.reference-data-cache.";
+
+    private final PlateServiceClient plateServiceClient;
+    private final ProtocolServiceClient protocolServiceClient;
+    private final RemoteLookupExecutor remoteLookupExecutor;
+
+    private final AsyncCache<Key, List<WellDTO>> wellsCache;
+    private final AsyncCache<Key, ProtocolDTO> protocolCache;
+
+    public ReferenceDataCache(PlateServiceClient plateServiceClient, ProtocolServiceClient protocolServiceClient,
+                              RemoteLookupExecutor remoteLookupExecutor, Environment environment, MeterRegistry meterRegistry) {
+        this.plateServiceClient = plateServiceClient;
+        this.protocolServiceClient = protocolServiceClient;
+        this.remoteLookupExecutor = remoteLookupExecutor;
+
+        var ttl = environment.getProperty(PROPERTY_PREFIX + "ttl", Duration.class, Duration.ofMinutes(10));
+        wellsCache = Caffeine.newBuilder()
+            .maximumSize(environment.getProperty(PROPERTY_PREFIX + "wells.maximum-size", Long.class, 1_000L))
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .buildAsync();
+        protocolCache = Caffeine.newBuilder()
+            .maximumSize(environment.getProperty(PROPERTY_PREFIX + "protocols.maximum-size", Long.class, 500L))
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, wellsCache, "wells");
+        CaffeineCacheMetrics.monitor(meterRegistry, protocolCache, "protocols");
+    }
+
+    /**
+     * Returns the wells of a plate. The returned future can be cancelled without affecting other callers.
+     */
+    public CompletableFuture<List<WellDTO>> getWells(long plateId) {
+        return wellsCache.get(Key.of(plateId), (key, executor) -> remoteLookupExecutor.supplyAsync(() -> plateServiceClient.getWells(key.id()))).copy();
+    }
+
+    /**
+     * Returns a protocol. The returned future can be cancelled without affecting other callers.
+     */
+    public CompletableFuture<ProtocolDTO> getProtocol(long protocolId) {
+        return protocolCache.get(Key.of(protocolId), (key, executor) -> remoteLookupExecutor.supplyAsync(() -> protocolServiceClient.getProtocol(key.id()))).copy();
+    }
+
+    /**
+     * Invalidates the cached wells of a plate, for all users.
+     */
+    public void invalidateWells(long plateId) {
+        wellsCache.synchronous().asMap().keySet().removeIf(key -> key.id() == plateId);
+    }
+
+    /**
+     * Invalidates a cached protocol, for all users.
+     */
+    public void invalidateProtocol(long protocolId) {
+        protocolCache.synchronous().asMap().keySet().removeIf(key -> key.id() == protocolId);
+    }
+
+    /**
+     * Key of a cache entry: the id of the cached object and the name of the user it was loaded for (null when the
+     * current request is not authenticated).
+     */
+    private record Key(String principal, long id) {
+
+        static Key of(long id) {
+            var authentication = SecurityContextHolder.getContext().getAuthentication();
+            return new Key(authentication == null ? null : authentication.getName(), id);
+        }
+
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.env.Environment;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.phaedra.resultdataservice.config.VirtualThreadConfiguration;
+
+/**
+ * Runs calls to other Phaedra services (e.g. the plate and protocol service clients) concurrently.
+ * <p>
+ * Every call runs on its own virtual thread when the JVM supports them, otherwise on a bounded thread pool. The
+ * security context of the calling thread is propagated to the call, so that the clients can forward the bearer
+ * token of the current request.
+ * <p>
+ * Calls are cancelled (i.e. their thread is interrupted) when they exceed their timeout or when the returned future
+ * is cancelled, see also {@link #cancelOnFailure(List)}.
+ */
+@Component
+public class RemoteLookupExecutor implements DisposableBean {
+
+    public static final String PROPERTY_PREFIX = "phaedra2.result-data-service.remote-lookup.";
+
+    private final ExecutorService executorService;
+    private final Duration defaultTimeout;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public RemoteLookupExecutor(Environment environment) {
+        this.defaultTimeout = environment.getProperty(PROPERTY_PREFIX + "timeout", Duration.class, Duration.ofSeconds(30));
+
+        var delegate = VirtualThreadConfiguration.newVirtualThreadPerTaskExecutor().orElseGet(() -> {
+            int poolSize = environment.getProperty(PROPERTY_PREFIX + "pool-size", Integer.class, 16);
+            logger.info(String.format("Virtual threads are not available, using a pool of %d threads for remote lookups", poolSize));
+            var threadCount = new AtomicInteger();
+            return Executors.newFixedThreadPool(poolSize, r -> {
+                var thread = new Thread(r, "remote-lookup-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        });
+        this.executorService = new DelegatingSecurityContextExecutorService(delegate);
+    }
+
+    /**
+     * Starts the given call in the background, using the default timeout.
+     */
+    public <T> CompletableFuture<T> supplyAsync(Callable<T> call) {
+        return supplyAsync(call, defaultTimeout);
+    }
+
+    /**
+     * Starts the given call in the background. The returned future completes exceptionally with a
+     * {@link java.util.concurrent.TimeoutException} if the call does not finish within the timeout. Checked
+     * exceptions thrown by the call are wrapped in a {@link CompletionException}.
+     */
+    public <T> CompletableFuture<T> supplyAsync(Callable<T> call, Duration timeout) {
+        var result = new CompletableFuture<T>();
+        var task = executorService.submit(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Exception ex) {
+                result.completeExceptionally(ex instanceof RuntimeException ? ex : new CompletionException(ex));
+            }
+        });
+        // interrupt the call when it times out or when the caller is no longer interested in the result
+        result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).whenComplete((r, ex) -> {
+            if (ex != null) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Cancels all given calls as soon as one of them fails, so that a request that will fail anyway does not keep
+     * waiting for (and occupying threads with) the other calls.
+     */
+    public static void cancelOnFailure(List<? extends CompletableFuture<?>> calls) {
+        for (var call : calls) {
+            call.whenComplete((r, ex) -> {
+                if (ex != null) {
+                    calls.forEach(other -> other.cancel(true));
+                }
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.FixedSizeListVector;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Bulk export of the ResultData of one or more ResultSets as an Apache Arrow IPC stream, intended for analytics
+ * clients that need complete ResultSets rather than pages of JSON.
+ * <p>
+ * Every row is one ResultData, i.e. one (resultSet, feature) pair, with the columns id, resultSetId, featureId
+ * (int64), statusCode (utf8), valueCount (int32) and values (FixedSizeList&lt;float32&gt;). Arrow requires a single
+ * list size for the whole stream, so the list size is the largest number of values of the exported ResultData and
+ * shorter lists are padded with nulls, valueCount holds the actual number of values. A record batch never contains
+ * rows of more than one ResultSet, nor more than {@link #MAX_BATCH_ROWS} rows.
+ * <p>
+ * The rows are copied from a JDBC cursor straight into the Arrow vectors, see {@link ArrowExportSupport}. The list
+ * size and the rows are queried in a single REPEATABLE READ transaction, so that ResultData that is added in the
+ * meantime cannot be longer than the list size.
+ */
+@Service
+public class ResultDataArrowService {
+
+    private static final int MAX_BATCH_ROWS = 1000;
+
+    private static final String SELECT_VALUES_LENGTH = "SELECT coalesce(max(cardinality(rd.\"values\")), 0) FROM result_data rd " +
+        "WHERE rd.result_set_id = ANY(?)";
+
+    private static final String SELECT_RESULT_DATA = "SELECT rd.id, rd.result_set_id, rd.feature_id, rd.status_code, array_send(rd.\"values\") AS \"values\" FROM result_data rd " +
+        "WHERE rd.result_set_id = ANY(?) " +
+        "ORDER BY rd.result_set_id, rd.id";
+
+    private static final FieldType STATUS_CODE_TYPE = FieldType.notNullable(ArrowType.Utf8.INSTANCE);
+    private static final FieldType VALUE_COUNT_TYPE = FieldType.notNullable(new ArrowType.Int(32, true));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ResultDataArrowService(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void writeResultData(List<Long> resultSetIds, OutputStream outputStream) throws IOException {
+        ArrowExportSupport.export(jdbcTemplate, outputStream, con -> writeResultData(con, resultSetIds, outputStream));
+    }
+
+    private void writeResultData(Connection con, List<Long> resultSetIds, OutputStream outputStream) throws SQLException, IOException {
+        int listSize = queryValuesLength(con, resultSetIds);
+        var schema = new Schema(List.of(
+            new Field("id", ArrowExportSupport.ID_TYPE, null),
+            new Field("resultSetId", ArrowExportSupport.ID_TYPE, null),
+            new Field("featureId", ArrowExportSupport.ID_TYPE, null),
+            new Field("statusCode", STATUS_CODE_TYPE, null),
+            new Field("valueCount", VALUE_COUNT_TYPE, null),
+            new Field("values", FieldType.nullable(new ArrowType.FixedSizeList(listSize)), List.of(new Field("item", ArrowExportSupport.VALUE_TYPE, null)))
+        ));
+
+        ArrowExportSupport.writeStream(schema, outputStream, (root, writer) ->
+            ArrowExportSupport.query(con, SELECT_RESULT_DATA, List.of(resultSetIds), rs -> {
+                var batch = new Batch(root, listSize);
+                while (rs.next()) {
+                    long resultSetId = rs.getLong("result_set_id");
+                    if (batch.rowCount == MAX_BATCH_ROWS || (batch.rowCount > 0 && batch.resultSetId != resultSetId)) {
+                        batch.write(writer);
+                    }
+                    batch.add(rs, resultSetId);
+                }
+                if (batch.rowCount > 0) {
+                    batch.write(writer);
+                }
+            }));
+    }
+
+    private static int queryValuesLength(Connection con, List<Long> resultSetIds) throws SQLException, IOException {
+        var length = new int[1];
+        ArrowExportSupport.query(con, SELECT_VALUES_LENGTH, List.of(resultSetIds), rs -> {
+            rs.next();
+            length[0] = rs.getInt(1);
+        });
+        return length[0];
+    }
+
+    /**
+     * The record batch that is being filled.
+     */
+    private static class Batch {
+
+        private final VectorSchemaRoot root;
+        private final int listSize;
+        private final BigIntVector id;
+        private final BigIntVector resultSetIdVector;
+        private final BigIntVector featureId;
+        private final VarCharVector statusCode;
+        private final IntVector valueCount;
+        private final FixedSizeListVector values;
+        private final Float4Vector items;
+
+        private long resultSetId;
+        private int rowCount;
+
+        private Batch(VectorSchemaRoot root, int listSize) {
+            this.root = root;
+            this.listSize = listSize;
+            this.id = (BigIntVector) root.getVector("id");
+            this.resultSetIdVector = (BigIntVector) root.getVector("resultSetId");
+            this.featureId = (BigIntVector) root.getVector("featureId");
+            this.statusCode = (VarCharVector) root.getVector("statusCode");
+            this.valueCount = (IntVector) root.getVector("valueCount");
+            this.values = (FixedSizeListVector) root.getVector("values");
+            this.items = (Float4Vector) values.getDataVector();
+            root.allocateNew();
+        }
+
+        private void add(ResultSet rs, long resultSetId) throws SQLException {
+            this.resultSetId = resultSetId;
+            int row = rowCount++;
+            id.setSafe(row, rs.getLong("id"));
+            resultSetIdVector.setSafe(row, resultSetId);
+            featureId.setSafe(row, rs.getLong("feature_id"));
+            statusCode.setSafe(row, rs.getString("status_code").getBytes(StandardCharsets.UTF_8));
+
+            var rowValues = ArrowExportSupport.readValues(rs, "values");
+            if (rowValues == null) {
+                valueCount.setSafe(row, 0);
+                values.setNull(row);
+                // keep the child vector aligned with the list offsets
+                for (int i = 0; i < listSize; i++) {
+                    items.setNull(row * listSize + i);
+                }
+                return;
+            }
+            if (rowValues.length > listSize) {
+                // cannot happen within the transaction, but values must never be truncated silently
+                throw new IllegalStateException(String.format("ResultData %d has %d values, more than the list size %d",
+                    rs.getLong("id"), rowValues.length, listSize));
+            }
+            valueCount.setSafe(row, rowValues.length);
+            int offset = values.startNewValue(row);
+            for (int i = 0; i < listSize; i++) {
+                if (i < rowValues.length) {
+                    items.setSafe(offset + i, rowValues[i]);
+                } else {
+                    items.setNull(offset + i);
+                }
+            }
+        }
+
+        private void write(ArrowStreamWriter writer) throws IOException {
+            root.setRowCount(rowCount);
+            writer.writeBatch();
+            root.allocateNew();
+            rowCount = 0;
+        }
+    }
+
+}
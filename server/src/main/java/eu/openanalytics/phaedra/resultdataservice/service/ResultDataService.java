@@ -27,48 +27,75 @@ import eu.openanalytics.phaedra.resultdataservice.exception.ResultDataNotFoundEx
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetAlreadyCompletedException;
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetNotFoundException;
 import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import eu.openanalytics.phaedra.resultdataservice.repository.KeysetRows;
 import eu.openanalytics.phaedra.resultdataservice.repository.ResultDataRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.sql.DataSource;
 import java.time.Clock;
 import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
 public class ResultDataService {
 
     private final ResultDataRepository resultDataRepository;
-    private final KafkaProducerService kafkaProducerService;
+    private final EventOutboxService eventOutboxService;
     private final ResultSetService resultSetService;
+    private final ResultSetCache resultSetCache;
 
-    private final DataSource dataSource;
+    private final ResultDataWriter resultDataWriter;
     private final Clock clock;
     private final ModelMapper modelMapper;
 
+    private final Timer ingestTimer;
+    private final DistributionSummary ingestThroughput;
+    private final DistributionSummary valuesSize;
+
     private static final int DEFAULT_PAGE_SIZE = 20;
 
     public ResultDataService(
     		ResultDataRepository resultDataRepository,
-    		KafkaProducerService kafkaProducerService,
+    		EventOutboxService eventOutboxService,
     		ResultSetService resultSetService,
-    		DataSource dataSource, Clock clock, ModelMapper modelMapper) {
+    		ResultSetCache resultSetCache,
+    		ResultDataWriter resultDataWriter, Clock clock, ModelMapper modelMapper,
+    		MeterRegistry meterRegistry) {
 
         this.resultDataRepository = resultDataRepository;
-        this.kafkaProducerService = kafkaProducerService;
+        this.eventOutboxService = eventOutboxService;
         this.resultSetService = resultSetService;
-        this.dataSource = dataSource;
+        this.resultSetCache = resultSetCache;
+        this.resultDataWriter = resultDataWriter;
         this.clock = clock;
         this.modelMapper = modelMapper;
+
+        this.ingestTimer = Timer.builder("phaedra2.resultdata.ingest")
+            .description("Time spent writing ResultData to the database")
+            .tag("writer", resultDataWriter.getName())
+            .register(meterRegistry);
+        this.ingestThroughput = DistributionSummary.builder("phaedra2.resultdata.ingest.throughput")
+            .description("Number of ResultData rows written per second")
+            .baseUnit("rows/s")
+            .tag("writer", resultDataWriter.getName())
+            .register(meterRegistry);
+        this.valuesSize = DistributionSummary.builder("phaedra2.resultdata.values")
+            .description("Number of values of a created ResultData")
+            .baseUnit("values")
+            .register(meterRegistry);
     }
 
+    @Transactional(rollbackFor = Exception.class)
     public ResultDataDTO create(long resultSetId, ResultDataDTO resultDataDTO) throws ResultSetNotFoundException, ResultSetAlreadyCompletedException {
         var resultSet = resultSetService.getResultSetById(resultSetId);
 
@@ -82,51 +109,101 @@ public class ResultDataService {
             .createdTimestamp(LocalDateTime.now(clock))
             .build();
 
-        resultDataDTO = save(resultData);
-        kafkaProducerService.sendResultDataUpdated(resultDataDTO);
+        resultDataDTO = save(List.of(resultData)).get(0);
+        eventOutboxService.resultDataUpdated(resultDataDTO);
         return resultDataDTO;
     }
 
-    public Page<ResultDataDTO> getPagedResultData(long resultSetId, int pageNumber, Optional<Integer> pageSize) throws ResultSetNotFoundException {
-        if (!resultSetService.exists(resultSetId)) {
-            throw new ResultSetNotFoundException(resultSetId);
+    /**
+     * Creates multiple {@link ResultData} for the same ResultSet. The ResultSet is validated once and all rows are
+     * inserted using a single JDBC batch, within one transaction.
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public List<ResultDataDTO> create(long resultSetId, List<ResultDataDTO> resultDataDTOs) throws ResultSetNotFoundException, ResultSetAlreadyCompletedException {
+        var resultSet = resultSetService.getResultSetById(resultSetId);
+
+        if (resultSet.getOutcome() != StatusCode.SCHEDULED) {
+            throw new ResultSetAlreadyCompletedException("ResultSet is already completed, cannot add new ResultData to this set.");
         }
-        var res = resultDataRepository.findAllByResultSetId(PageRequest.of(pageNumber, pageSize.orElse(DEFAULT_PAGE_SIZE), Sort.Direction.ASC, "id"), resultSetId);
-        return res.map((r) -> modelMapper.map(r).build());
+
+        var createdTimestamp = LocalDateTime.now(clock);
+        var resultData = resultDataDTOs
+            .stream()
+            .map(r -> modelMapper
+                .map(r)
+                .resultSetId(resultSetId)
+                .createdTimestamp(createdTimestamp)
+                .build()
+            ).toList();
+
+        List<ResultDataDTO> createdResultData = save(resultData);
+        eventOutboxService.resultDataUpdated(resultSetId, createdResultData);
+        return createdResultData;
+    }
+
+    public Page<ResultDataDTO> getPagedResultData(long resultSetId, int pageNumber, Optional<Integer> pageSize) throws ResultSetNotFoundException {
+        var pageable = PageRequest.of(pageNumber, pageSize.orElse(DEFAULT_PAGE_SIZE), Sort.Direction.ASC, "id");
+        var res = resultDataRepository.findByResultSet(resultSetId, null, pageable)
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        return res.toPage(pageable, r -> modelMapper.map(r).build());
+    }
+
+    /**
+     * Keyset variant of {@link #getPagedResultData}: returns the ResultData with an id larger than {@code after},
+     * optionally only of a single feature.
+     */
+    public KeysetRows<ResultDataDTO> getResultDataAfter(long resultSetId, Long featureId, Long after, Optional<Integer> limit, boolean count) throws ResultSetNotFoundException {
+        var res = resultDataRepository.findByResultSetAfter(resultSetId, featureId, after, limit.orElse(DEFAULT_PAGE_SIZE), count)
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        return res.map(r -> modelMapper.map(r).build());
     }
 
     public List<ResultDataDTO> getResultDataByResultSetId(long resultSetId) throws ResultSetNotFoundException {
-        if (!resultSetService.exists(resultSetId)) {
-            throw new ResultSetNotFoundException(resultSetId);
-        }
-        List<ResultData> results = resultDataRepository.findAllByResultSetId(resultSetId);
-        return results.stream().map(r -> modelMapper.map(r).build()).collect(Collectors.toList());
+        var res = resultDataRepository.findByResultSet(resultSetId, null, Pageable.unpaged())
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        return res.rows().stream().map(r -> modelMapper.map(r).build()).collect(Collectors.toList());
     }
 
     public ResultDataDTO getResultData(long resultSetId, long resultDataId) throws ResultSetNotFoundException, ResultDataNotFoundException {
-        if (!resultSetService.exists(resultSetId)) {
-            throw new ResultSetNotFoundException(resultSetId);
-        }
-
-        var res = resultDataRepository.findById(resultDataId);
-        if (res.isEmpty()) {
+        var res = resultDataRepository.findByResultSetAndId(resultSetId, resultDataId)
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        if (res.rows().isEmpty()) {
             throw new ResultDataNotFoundException(resultDataId);
         }
 
-        return modelMapper.map(res.get()).build();
+        return modelMapper.map(res.rows().get(0)).build();
     }
 
+    /**
+     * Gets the ResultData of a single feature. The ResultData of completed ResultSets is immutable and is therefore
+     * served from the {@link ResultSetCache} when possible.
+     */
     public ResultDataDTO getResultDataByResultSetIdAndFeatureId(long resultSetId, long featureId) throws ResultSetNotFoundException, ResultDataNotFoundException {
-        if (!resultSetService.exists(resultSetId)) {
-            throw new ResultSetNotFoundException(resultSetId);
+        var cachedResultData = resultSetCache.getResultData(resultSetId, featureId);
+        if (cachedResultData != null) {
+            return cachedResultData;
         }
 
-        var result = resultDataRepository.findByResultSetIdAndFeatureId(resultSetId, featureId);
-        if (result.isEmpty()) {
+        var res = resultDataRepository.findByResultSet(resultSetId, featureId, Pageable.unpaged())
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        if (res.rows().isEmpty()) {
             throw new ResultDataNotFoundException(String.format("No resultData found for resultSetId %s and featureId %s", resultSetId, featureId));
         }
 
-        return modelMapper.map(result.get()).build();
+        var resultDataDTO = modelMapper.map(res.rows().get(0)).build();
+        resultSetCache.putResultData(res.resultSetOutcome(), resultDataDTO);
+        return resultDataDTO;
+    }
+
+    /**
+     * Gets the ResultData of several features of a ResultSet using a single query. Features without ResultData are
+     * omitted.
+     */
+    public List<ResultData> getResultDataByResultSetIdAndFeatureIds(long resultSetId, List<Long> featureIds) {
+        if (featureIds.isEmpty()) {
+            return List.of();
+        }
+        return resultDataRepository.findAllByResultSetIdAndFeatureIdIn(resultSetId, featureIds);
     }
 
     public List<ResultData> getResultDataByResultSetIds(List<Long> resultSetIds) throws ResultSetNotFoundException, ResultDataNotFoundException {
@@ -134,11 +211,10 @@ public class ResultDataService {
     }
 
     public Page<ResultDataDTO> getPagedResultDataByFeatureId(long resultSetId, Integer featureId, Integer page, Optional<Integer> pageSize) throws ResultSetNotFoundException {
-        if (!resultSetService.exists(resultSetId)) {
-            throw new ResultSetNotFoundException(resultSetId);
-        }
-        var res = resultDataRepository.findAllByResultSetIdAndFeatureId(PageRequest.of(page, pageSize.orElse(DEFAULT_PAGE_SIZE), Sort.Direction.ASC, "id"), resultSetId, featureId);
-        return res.map((r) -> modelMapper.map(r).build());
+        var pageable = PageRequest.of(page, pageSize.orElse(DEFAULT_PAGE_SIZE), Sort.Direction.ASC, "id");
+        var res = resultDataRepository.findByResultSet(resultSetId, featureId.longValue(), pageable)
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        return res.toPage(pageable, r -> modelMapper.map(r).build());
     }
 
     public void delete(long resultSetId, long resultDataId) throws ResultSetNotFoundException, ResultDataNotFoundException, InvalidResultSetIdException, ResultSetAlreadyCompletedException {
@@ -157,23 +233,21 @@ public class ResultDataService {
     }
 
     /**
-     * Saves a {@link ResultData} and returns the resulting corresponding {@link ResultDataDTO}.
+     * Saves a list of {@link ResultData} using the configured {@link ResultDataWriter} and returns the resulting
+     * corresponding {@link ResultDataDTO}s.
      */
-    private ResultDataDTO save(ResultData resultData) {
-        // workaround for https://github.com/spring-projects/spring-data-jdbc/issues/1033
-        var simpleJdbcInsert = new SimpleJdbcInsert(dataSource).withTableName("result_data").usingGeneratedKeyColumns("id");
-
-        Number id = simpleJdbcInsert.executeAndReturnKey(new HashMap<>() {{
-            put("result_set_id", resultData.getResultSetId());
-            put("feature_id", resultData.getFeatureId());
-            put("values", resultData.getValues());
-            put("status_code", resultData.getStatusCode());
-            put("status_message", resultData.getStatusMessage());
-            put("exit_code", resultData.getExitCode());
-            put("created_timestamp", resultData.getCreatedTimestamp());
-        }});
-
-        return modelMapper.map(resultDataRepository.findById(id.longValue()).get()).build();
+    private List<ResultDataDTO> save(List<ResultData> resultData) {
+        resultData.forEach(r -> valuesSize.record(r.getValues() == null ? 0 : r.getValues().length));
+
+        long start = System.nanoTime();
+        var savedResultData = resultDataWriter.write(resultData);
+        long duration = System.nanoTime() - start;
+
+        ingestTimer.record(duration, TimeUnit.NANOSECONDS);
+        if (duration > 0 && !savedResultData.isEmpty()) {
+            ingestThroughput.record(savedResultData.size() * (double) TimeUnit.SECONDS.toNanos(1) / duration);
+        }
+        return savedResultData.stream().map(r -> modelMapper.map(r).build()).toList();
     }
 
 }
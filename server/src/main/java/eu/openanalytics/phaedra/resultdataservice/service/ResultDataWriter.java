@@ -0,0 +1,45 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+
+import java.util.List;
+
+/**
+ * Strategy used by {@link ResultDataService} to write {@link ResultData} rows to the database.
+ * The strategy is selected using the {@value #MODE_PROPERTY} property.
+ */
+public interface ResultDataWriter {
+
+    String MODE_PROPERTY = "phaedra2.result-data-service.ingest-mode";
+
+    /**
+     * Writes the given {@link ResultData} and returns them, including their generated id.
+     */
+    List<ResultData> write(List<ResultData> resultData);
+
+    /**
+     * Name of this strategy, used to tag the ingest metrics.
+     */
+    String getName();
+
+}
@@ -28,13 +28,16 @@ import eu.openanalytics.phaedra.resultdataservice.exception.ResultFeatureStatNot
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetAlreadyCompletedException;
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetNotFoundException;
 import eu.openanalytics.phaedra.resultdataservice.model.ResultFeatureStat;
+import eu.openanalytics.phaedra.resultdataservice.repository.KeysetRows;
 import eu.openanalytics.phaedra.resultdataservice.repository.ResultFeatureStatRepository;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.relational.core.conversion.DbActionExecutionException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
 import java.time.Clock;
@@ -48,7 +51,7 @@ import java.util.stream.StreamSupport;
 public class ResultFeatureStatService {
 
     private final ResultFeatureStatRepository resultFeatureStatRepository;
-    private final KafkaProducerService kafkaProducerService;
+    private final EventOutboxService eventOutboxService;
     private final ResultSetService resultSetService;
 
     private final Clock clock;
@@ -58,17 +61,18 @@ public class ResultFeatureStatService {
 
     public ResultFeatureStatService(
     		ResultFeatureStatRepository resultFeatureStatRepository,
-    		KafkaProducerService kafkaProducerService,
+    		EventOutboxService eventOutboxService,
     		ResultSetService resultSetService,
     		DataSource dataSource, Clock clock, ModelMapper modelMapper) {
 
         this.resultFeatureStatRepository = resultFeatureStatRepository;
-        this.kafkaProducerService = kafkaProducerService;
+        this.eventOutboxService = eventOutboxService;
         this.resultSetService = resultSetService;
         this.clock = clock;
         this.modelMapper = modelMapper;
     }
 
+    @Transactional(rollbackFor = Exception.class)
     public List<ResultFeatureStatDTO> create(long resultSetId, List<ResultFeatureStatDTO> resultFeatureStatDTOs) throws ResultSetNotFoundException, ResultSetAlreadyCompletedException, DuplicateResultFeatureStatException {
         var resultSet = resultSetService.getResultSetById(resultSetId);
 
@@ -86,10 +90,11 @@ public class ResultFeatureStatService {
             ).collect(Collectors.toList());
 
         List<ResultFeatureStatDTO> createdStats = save(resultFeatureStats);
-        createdStats.forEach(s -> kafkaProducerService.sendResultFeatureStatUpdated(s));
+        eventOutboxService.resultFeatureStatsUpdated(resultSetId, createdStats);
         return createdStats;
     }
 
+    @Transactional(rollbackFor = Exception.class)
     public ResultFeatureStatDTO create(long resultSetId, ResultFeatureStatDTO resultFeatureStatDTO) throws ResultSetNotFoundException, ResultSetAlreadyCompletedException, DuplicateResultFeatureStatException {
         var resultSet = resultSetService.getResultSetById(resultSetId);
 
@@ -103,37 +108,41 @@ public class ResultFeatureStatService {
             .build();
 
         resultFeatureStatDTO = save(resultFeatureStat);
-        kafkaProducerService.sendResultFeatureStatUpdated(resultFeatureStatDTO);
+        eventOutboxService.resultFeatureStatUpdated(resultFeatureStatDTO);
         return resultFeatureStatDTO;
     }
 
     public List<ResultFeatureStatDTO> getResultSetFeatureStats(long resultSetId) throws ResultSetNotFoundException {
-        if (!resultSetService.exists(resultSetId)) {
-            throw new ResultSetNotFoundException(resultSetId);
-        }
-        List<ResultFeatureStat> result = resultFeatureStatRepository.findAllByResultSetId(resultSetId);
-        return result.stream().map(r -> modelMapper.map(r).build()).collect(Collectors.toList());
+        var res = resultFeatureStatRepository.findByResultSet(resultSetId, null, Pageable.unpaged())
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        return res.rows().stream().map(r -> modelMapper.map(r).build()).collect(Collectors.toList());
     }
 
     public Page<ResultFeatureStatDTO> getPagedResultFeatureStats(long resultSetId, int pageNumber, Optional<Integer> pageSize) throws ResultSetNotFoundException {
-        if (!resultSetService.exists(resultSetId)) {
-            throw new ResultSetNotFoundException(resultSetId);
-        }
-        var res = resultFeatureStatRepository.findAllByResultSetId(PageRequest.of(pageNumber, pageSize.orElse(DEFAULT_PAGE_SIZE), Sort.Direction.ASC, "id"), resultSetId);
-        return res.map((r) -> modelMapper.map(r).build());
+        var pageable = PageRequest.of(pageNumber, pageSize.orElse(DEFAULT_PAGE_SIZE), Sort.Direction.ASC, "id");
+        var res = resultFeatureStatRepository.findByResultSet(resultSetId, null, pageable)
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        return res.toPage(pageable, r -> modelMapper.map(r).build());
     }
 
-    public ResultFeatureStatDTO getResultFeatureStat(long resultSetId, long resultFeatureStatId) throws ResultSetNotFoundException, ResultFeatureStatNotFoundException {
-        if (!resultSetService.exists(resultSetId)) {
-            throw new ResultSetNotFoundException(resultSetId);
-        }
+    /**
+     * Keyset variant of {@link #getPagedResultFeatureStats}: returns the ResultFeatureStats with an id larger than
+     * {@code after}, optionally only of a single feature.
+     */
+    public KeysetRows<ResultFeatureStatDTO> getResultFeatureStatsAfter(long resultSetId, Long featureId, Long after, Optional<Integer> limit, boolean count) throws ResultSetNotFoundException {
+        var res = resultFeatureStatRepository.findByResultSetAfter(resultSetId, featureId, after, limit.orElse(DEFAULT_PAGE_SIZE), count)
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        return res.map(r -> modelMapper.map(r).build());
+    }
 
-        var res = resultFeatureStatRepository.findById(resultFeatureStatId);
-        if (res.isEmpty()) {
+    public ResultFeatureStatDTO getResultFeatureStat(long resultSetId, long resultFeatureStatId) throws ResultSetNotFoundException, ResultFeatureStatNotFoundException {
+        var res = resultFeatureStatRepository.findByResultSetAndId(resultSetId, resultFeatureStatId)
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        if (res.rows().isEmpty()) {
             throw new ResultFeatureStatNotFoundException(resultFeatureStatId);
         }
 
-        return modelMapper.map(res.get()).build();
+        return modelMapper.map(res.rows().get(0)).build();
     }
 
     public List<ResultFeatureStatDTO> getResultFeatureStatsByResultIds(List<Long> resultIds) {
@@ -141,11 +150,10 @@ public class ResultFeatureStatService {
     }
 
     public Page<ResultFeatureStatDTO> getPagedResultFeatureStatByFeatureId(long resultSetId, Integer featureId, Integer page, Optional<Integer> pageSize) throws ResultSetNotFoundException {
-        if (!resultSetService.exists(resultSetId)) {
-            throw new ResultSetNotFoundException(resultSetId);
-        }
-        var res = resultFeatureStatRepository.findAllByResultSetIdAndFeatureId(PageRequest.of(page, pageSize.orElse(DEFAULT_PAGE_SIZE), Sort.Direction.ASC, "id"), resultSetId, featureId);
-        return res.map((r) -> modelMapper.map(r).build());
+        var pageable = PageRequest.of(page, pageSize.orElse(DEFAULT_PAGE_SIZE), Sort.Direction.ASC, "id");
+        var res = resultFeatureStatRepository.findByResultSet(resultSetId, featureId.longValue(), pageable)
+            .orElseThrow(() -> new ResultSetNotFoundException(resultSetId));
+        return res.toPage(pageable, r -> modelMapper.map(r).build());
     }
 
     public void delete(long resultSetId, long resultFeatureStatId) throws ResultSetNotFoundException, InvalidResultSetIdException, ResultSetAlreadyCompletedException, ResultFeatureStatNotFoundException {
@@ -0,0 +1,122 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import java.time.Duration;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * In-memory cache of completed ResultSets and their ResultData.
+ * <p>
+ * Once the outcome of a ResultSet is no longer {@link StatusCode#SCHEDULED}, the ResultSet and its ResultData can no
+ * longer be modified, only deleted. Therefore, only completed ResultSets (and their ResultData) are cached, and
+ * entries are only invalidated when the ResultSet is deleted: by the instance that deleted it, and by the other
+ * instances when they receive the resultSetDeleted event. Entries also expire a fixed time after they were cached
+ * ({@code expire-after-write}), which bounds how long a deleted ResultSet stays visible on an instance that missed
+ * the event, even when it keeps being read.
+ * <p>
+ * The ResultData cache is bounded by the (approximate) size in bytes of the cached values.
+ */
+@Component
+public class ResultSetCache {
+
+    public static final String PROPERTY_PREFIX = "phaedra2.result-data-service.cache.";
+
+    private record ResultDataKey(long resultSetId, long featureId) {
+    }
+
+    /**
+     * Approximate size of a ResultDataDTO without its values, used when weighing the cache entries.
+     */
+    private static final int RESULT_DATA_OVERHEAD = 128;
+
+    private final Cache<Long, ResultSetDTO> resultSetCache;
+    private final Cache<ResultDataKey, ResultDataDTO> resultDataCache;
+
+    public ResultSetCache(Environment environment, MeterRegistry meterRegistry) {
+        var expireAfterWrite = environment.getProperty(PROPERTY_PREFIX + "expire-after-write", Duration.class, Duration.ofHours(1));
+
+        resultSetCache = Caffeine.newBuilder()
+            .maximumSize(environment.getProperty(PROPERTY_PREFIX + "result-sets.maximum-size", Long.class, 10_000L))
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+        resultDataCache = Caffeine.newBuilder()
+            .maximumWeight(environment.getProperty(PROPERTY_PREFIX + "result-data.maximum-weight", Long.class, 256L * 1024 * 1024))
+            .weigher((ResultDataKey key, ResultDataDTO resultData) -> RESULT_DATA_OVERHEAD + (resultData.getValues() == null ? 0 : resultData.getValues().length * Float.BYTES))
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, resultSetCache, "resultSets");
+        CaffeineCacheMetrics.monitor(meterRegistry, resultDataCache, "resultData");
+    }
+
+    public ResultSetDTO getResultSet(long resultSetId) {
+        return resultSetCache.getIfPresent(resultSetId);
+    }
+
+    /**
+     * Caches the given ResultSet, if it is completed.
+     */
+    public void putResultSet(ResultSetDTO resultSet) {
+        if (isCompleted(resultSet.getOutcome())) {
+            resultSetCache.put(resultSet.getId(), resultSet);
+        }
+    }
+
+    public ResultDataDTO getResultData(long resultSetId, long featureId) {
+        return resultDataCache.getIfPresent(new ResultDataKey(resultSetId, featureId));
+    }
+
+    /**
+     * Caches the given ResultData, if the ResultSet it belongs to is completed.
+     */
+    public void putResultData(StatusCode resultSetOutcome, ResultDataDTO resultData) {
+        if (isCompleted(resultSetOutcome)) {
+            resultDataCache.put(new ResultDataKey(resultData.getResultSetId(), resultData.getFeatureId()), resultData);
+        }
+    }
+
+    /**
+     * Removes a ResultSet and all of its ResultData from the cache.
+     */
+    public void invalidate(long resultSetId) {
+        resultSetCache.invalidate(resultSetId);
+        resultDataCache.asMap().keySet().removeIf(key -> key.resultSetId() == resultSetId);
+    }
+
+    private static boolean isCompleted(StatusCode outcome) {
+        return outcome != null && outcome != StatusCode.SCHEDULED;
+    }
+
+}
@@ -32,12 +32,16 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
 import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetAlreadyCompletedException;
 import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetNotFoundException;
 import eu.openanalytics.phaedra.resultdataservice.model.ResultSet;
+import eu.openanalytics.phaedra.resultdataservice.repository.KeysetRows;
 import eu.openanalytics.phaedra.resultdataservice.repository.ResultSetRepository;
 
 
@@ -45,20 +49,24 @@ import eu.openanalytics.phaedra.resultdataservice.repository.ResultSetRepository
 public class ResultSetService {
 
     private final ResultSetRepository resultSetRepository;
-    private final KafkaProducerService kafkaProducerService;
+    private final EventOutboxService eventOutboxService;
+    private final ResultSetCache resultSetCache;
 
     private final Clock clock;
     private final ModelMapper modelMapper;
 
     private static final int DEFAULT_PAGE_SIZE = 20;
 
-    public ResultSetService(ResultSetRepository resultSetRepository, KafkaProducerService kafkaProducerService, Clock clock, ModelMapper modelMapper) {
+    public ResultSetService(ResultSetRepository resultSetRepository, EventOutboxService eventOutboxService, ResultSetCache resultSetCache,
+                            Clock clock, ModelMapper modelMapper) {
         this.resultSetRepository = resultSetRepository;
-        this.kafkaProducerService = kafkaProducerService;
+        this.eventOutboxService = eventOutboxService;
+        this.resultSetCache = resultSetCache;
         this.clock = clock;
         this.modelMapper = modelMapper;
     }
 
+    @Transactional(rollbackFor = Exception.class)
     public ResultSetDTO create(ResultSetDTO resultSetDTO) {
         var resultSet = modelMapper.map(resultSetDTO)
             .executionStartTimeStamp(LocalDateTime.now(clock))
@@ -66,10 +74,11 @@ public class ResultSetService {
             .build();
 
         resultSetDTO = save(resultSet);
-        kafkaProducerService.sendResultSetUpdated(resultSetDTO);
+        eventOutboxService.resultSetUpdated(resultSetDTO);
         return resultSetDTO;
     }
 
+    @Transactional(rollbackFor = Exception.class)
     public ResultSetDTO updateOutcome(ResultSetDTO resultSetDTO) throws ResultSetAlreadyCompletedException, ResultSetNotFoundException {
         Optional<ResultSet> existingResultSet = resultSetRepository.findById(resultSetDTO.getId());
         if (existingResultSet.isEmpty()) {
@@ -84,24 +93,42 @@ public class ResultSetService {
             .build();
 
         resultSetDTO = save(resultSet);
-        kafkaProducerService.sendResultSetUpdated(resultSetDTO);
+        eventOutboxService.resultSetUpdated(resultSetDTO);
+        // only once committed: a rolled back completion must not reject the ResultData that is still added
+        var completedResultSet = resultSetDTO;
+        afterCommit(() -> resultSetCache.putResultSet(completedResultSet));
         return resultSetDTO;
     }
 
+    /**
+     * Deletes a ResultSet. The other instances of the service evict it from their cache when they receive the
+     * {@link EventOutboxService#resultSetDeleted} event.
+     */
+    @Transactional(rollbackFor = Exception.class)
     public void delete(Long id) throws ResultSetNotFoundException {
         Optional<ResultSet> existingResultSet = resultSetRepository.findById(id);
         if (existingResultSet.isEmpty()) {
             throw new ResultSetNotFoundException(id);
         }
         resultSetRepository.deleteById(id);
+        eventOutboxService.resultSetDeleted(modelMapper.map(existingResultSet.get()).build());
+        // once committed, so that a concurrent read cannot cache it again
+        afterCommit(() -> resultSetCache.invalidate(id));
     }
 
     public ResultSetDTO getResultSetById(Long id) throws ResultSetNotFoundException {
+        var cachedResultSet = resultSetCache.getResultSet(id);
+        if (cachedResultSet != null) {
+            return cachedResultSet;
+        }
+
         Optional<ResultSet> existingResultSet = resultSetRepository.findById(id);
         if (existingResultSet.isEmpty()) {
             throw new ResultSetNotFoundException(id);
         }
-        return modelMapper.map(existingResultSet.get()).build();
+        var resultSetDTO = modelMapper.map(existingResultSet.get()).build();
+        resultSetCache.putResultSet(resultSetDTO);
+        return resultSetDTO;
     }
 
 
@@ -122,28 +149,42 @@ public class ResultSetService {
         return resultSets.stream().map(it -> modelMapper.map(it).build()).toList();
     }
 
-    public ResultSetDTO getLatestResultSetByPlateId(Long plateId, Optional<Long> measId) throws ResultSetNotFoundException {
-        List<ResultSet> resultSets;
-        if (measId.isEmpty()) {
-            resultSets = resultSetRepository.findLatestByPlateId(plateId);
-        } else {
-            resultSets = resultSetRepository.findLatestByPlateIdAndMeasId(plateId, measId.get());
+    /**
+     * Gets all ResultSets of the given plates, using a single query.
+     */
+    public List<ResultSetDTO> getResultSetsByPlateIds(List<Long> plateIds) {
+        if (plateIds.isEmpty()) {
+            return List.of();
         }
+        return resultSetRepository.findAllByPlateIdIn(plateIds).stream().map(it -> modelMapper.map(it).build()).toList();
+    }
+
+    public ResultSetDTO getLatestResultSetByPlateId(Long plateId, Optional<Long> measId) throws ResultSetNotFoundException {
+        List<ResultSet> resultSets = resultSetRepository.findLatest(plateId, measId.orElse(null), null, 1);
         return CollectionUtils.isNotEmpty(resultSets) ? modelMapper.map(resultSets.get(0)).build() : null;
     }
 
     public List<ResultSetDTO> getLatestResultSetsByPlateId(Long plateId, Optional<Long> measId, Optional<Long> protocolId) throws ResultSetNotFoundException {
-        List<ResultSet> resultSets;
-        if (measId.isPresent() && protocolId.isEmpty())
-            resultSets = resultSetRepository.findLatestByPlateIdAndMeasId(plateId, measId.get());
-        else if (protocolId.isPresent() && measId.isEmpty())
-            resultSets = resultSetRepository.findLatestByPlateIdAndProtocolId(plateId, protocolId.get());
-        else if (protocolId.isPresent() && measId.isPresent())
-            resultSets = resultSetRepository.findLatestByPlateIdAndProtocolIdAndMeasId(plateId, protocolId.get(), measId.get());
-        else
-            resultSets = resultSetRepository.findLatestByPlateId(plateId);
+        List<ResultSet> resultSets = resultSetRepository.findLatest(plateId, measId.orElse(null), protocolId.orElse(null), 1);
+        return resultSets.stream().map(it -> modelMapper.map(it).build()).toList();
+    }
 
-         return resultSets.stream().map(it -> modelMapper.map(it).build()).toList();
+    /**
+     * Gets the latest ResultSet of each of the given plates, optionally restricted to a single measurement and/or
+     * protocol. Plates without a (matching) ResultSet are omitted.
+     */
+    public List<ResultSetDTO> getLatestResultSetPerPlate(List<Long> plateIds, Optional<Long> measId, Optional<Long> protocolId) {
+        List<ResultSet> resultSets = resultSetRepository.findLatestPerPlate(plateIds, measId.orElse(null), protocolId.orElse(null));
+        return resultSets.stream().map(it -> modelMapper.map(it).build()).toList();
+    }
+
+    /**
+     * Gets the latest ResultSet of every (protocol, measurement) combination of each of the given plates, optionally
+     * restricted to a single measurement and/or protocol, using a single query.
+     */
+    public List<ResultSetDTO> getLatestResultSetsPerProtocolAndMeas(List<Long> plateIds, Optional<Long> measId, Optional<Long> protocolId) {
+        List<ResultSet> resultSets = resultSetRepository.findLatestPerPlateProtocolAndMeas(plateIds, measId.orElse(null), protocolId.orElse(null));
+        return resultSets.stream().map(it -> modelMapper.map(it).build()).toList();
     }
 
     public Page<ResultSetDTO> getPagedResultSets(Long plateId, StatusCode outcome, int pageNumber, Optional<Integer> pageSize) {
@@ -162,7 +203,18 @@ public class ResultSetService {
         return res.map((r) -> (modelMapper.map(r).build()));
     }
 
+    /**
+     * Keyset variant of {@link #getPagedResultSets}: returns the ResultSets with an id larger than {@code after}.
+     */
+    public KeysetRows<ResultSetDTO> getResultSetsAfter(StatusCode outcome, Long after, Optional<Integer> limit, boolean count) {
+        return resultSetRepository.findAfter(outcome, after, limit.orElse(DEFAULT_PAGE_SIZE), count)
+            .map(r -> modelMapper.map(r).build());
+    }
+
     public boolean exists(long resultSetId) {
+        if (resultSetCache.getResultSet(resultSetId) != null) {
+            return true;
+        }
         return resultSetRepository.existsById(resultSetId);
     }
 
@@ -175,32 +227,26 @@ public class ResultSetService {
     }
 
     public List<ResultSetDTO> getTopNResultsSets(Integer n, Optional<Long> plateId, Optional<Long> measId, Optional<Long> protocolId) {
-        List<ResultSet> result;
-
-        // All 3 present
-        if (plateId.isPresent() && measId.isPresent() && protocolId.isPresent())
-            result = resultSetRepository.findLatestByPlateIdAndProtocolIdAndMeasId(plateId.get(), protocolId.get(), measId.get());
-        // Only plateId present
-        else if (plateId.isPresent() && measId.isEmpty() && protocolId.isEmpty())
-            result = resultSetRepository.findLatestByPlateId(plateId.get());
-        // Only measId present
-        else if (plateId.isEmpty() && measId.isPresent() && protocolId.isEmpty())
-            result = resultSetRepository.findLatestByMeasId(measId.get());
-        // Only protocolId present
-        else if (plateId.isEmpty() && measId.isEmpty() && protocolId.isPresent())
-            result = resultSetRepository.findLatestByProtocolId(protocolId.get());
-        // Only PlateId and MeasId present
-        else if (plateId.isPresent() && measId.isPresent() && protocolId.isEmpty())
-            result = resultSetRepository.findLatestByPlateIdAndMeasId(plateId.get(), measId.get());
-        // Only PlateId and ProtocolId present
-        else if (plateId.isPresent() && measId.isEmpty() && protocolId.isPresent())
-            result = resultSetRepository.findLatestByPlateIdAndProtocolId(plateId.get(), protocolId.get());
-        // Only MeasId and ProtocolId present
-        else if (plateId.isEmpty() && measId.isPresent() && protocolId.isPresent())
-            result = resultSetRepository.findLatestByMeasIdAndProtocolId(measId.get(), protocolId.get());
-        else
-            result = resultSetRepository.findNMostRecentResultSets(n);
-
+        // When filtering, only the latest matching ResultSet is returned
+        boolean filtered = plateId.isPresent() || measId.isPresent() || protocolId.isPresent();
+        List<ResultSet> result = resultSetRepository.findLatest(plateId.orElse(null), measId.orElse(null), protocolId.orElse(null), filtered ? 1 : n);
         return result.stream().map(rs -> modelMapper.map(rs).build()).toList();
     }
+
+    /**
+     * Runs the action once the current transaction committed, or immediately when there is no transaction.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
 }
@@ -0,0 +1,103 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import eu.openanalytics.phaedra.resultdataservice.dto.PageDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.support.AbstractIntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Walks the keyset pagination (?after=&limit=) of the ResultSet and ResultFeatureStat endpoints, as the HTTP client
+ * does.
+ */
+public class KeysetPaginationIntegrationTest extends AbstractIntegrationTest {
+
+    @Test
+    public void resultSetsArePagedByNextAfter() throws Exception {
+        var ids = new ArrayList<Long>();
+        for (long plateId = 1; plateId <= 5; plateId++) {
+            ids.add(createResultSet(1L, plateId, 3L));
+        }
+
+        var first = performRequest(get("/resultsets?limit=2&count=true"), HttpStatus.OK, new TypeReference<PageDTO<ResultSetDTO>>() {});
+        Assertions.assertEquals(ids.subList(0, 2), first.getData().stream().map(ResultSetDTO::getId).toList());
+        Assertions.assertEquals(ids.get(1), first.getStatus().getNextAfter());
+        Assertions.assertTrue(first.getStatus().isFirst());
+        Assertions.assertFalse(first.getStatus().isLast());
+        Assertions.assertEquals(5, first.getStatus().getTotalElements());
+        Assertions.assertEquals(3, first.getStatus().getTotalPages());
+
+        var walked = new ArrayList<>(first.getData().stream().map(ResultSetDTO::getId).toList());
+        var after = first.getStatus().getNextAfter();
+        while (after != null) {
+            var page = performRequest(get("/resultsets?limit=2&after=" + after), HttpStatus.OK, new TypeReference<PageDTO<ResultSetDTO>>() {});
+            Assertions.assertFalse(page.getStatus().isFirst());
+            Assertions.assertEquals(-1, page.getStatus().getTotalElements());
+            page.getData().forEach(rs -> walked.add(rs.getId()));
+            after = page.getStatus().getNextAfter();
+        }
+        Assertions.assertEquals(ids, walked);
+
+        var scheduled = performRequest(get("/resultsets?limit=10&outcome=SCHEDULED"), HttpStatus.OK, new TypeReference<PageDTO<ResultSetDTO>>() {});
+        Assertions.assertEquals(ids, scheduled.getData().stream().map(ResultSetDTO::getId).toList());
+        Assertions.assertTrue(scheduled.getStatus().isLast());
+        Assertions.assertNull(scheduled.getStatus().getNextAfter());
+    }
+
+    @Test
+    public void resultFeatureStatsArePagedByNextAfter() throws Exception {
+        var resultSetId = createResultSet(1L, 1L, 3L);
+        var otherResultSetId = createResultSet(1L, 2L, 3L);
+        var stats = createResultFeatureStats(resultSetId, 10L, 11L, 12L, 13L, 14L);
+        createResultFeatureStats(otherResultSetId, 10L, 11L);
+
+        var walked = new ArrayList<Long>();
+        Long after = null;
+        do {
+            var url = "/resultsets/" + resultSetId + "/resultfeaturestats?limit=2" + (after == null ? "" : "&after=" + after);
+            var page = performRequest(get(url), HttpStatus.OK, new TypeReference<PageDTO<ResultFeatureStatDTO>>() {});
+            Assertions.assertTrue(page.getData().size() <= 2);
+            page.getData().forEach(stat -> walked.add(stat.getId()));
+            after = page.getStatus().getNextAfter();
+        } while (after != null);
+        Assertions.assertEquals(stats, walked);
+
+        var filtered = performRequest(get("/resultsets/" + resultSetId + "/resultfeaturestats?limit=10&featureId=12"), HttpStatus.OK,
+            new TypeReference<PageDTO<ResultFeatureStatDTO>>() {});
+        Assertions.assertEquals(List.of(12L), filtered.getData().stream().map(ResultFeatureStatDTO::getFeatureId).toList());
+    }
+
+    @Test
+    public void resultFeatureStatsOfUnknownResultSetAreNotFound() throws Exception {
+        performRequest(get("/resultsets/42/resultfeaturestats?limit=2"), HttpStatus.NOT_FOUND);
+    }
+
+}
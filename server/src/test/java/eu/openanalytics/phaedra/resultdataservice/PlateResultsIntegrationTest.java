@@ -0,0 +1,160 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import eu.openanalytics.phaedra.resultdataservice.dto.FeatureMatrixQueryDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.LatestResultSetsQueryDTO;
+import eu.openanalytics.phaedra.resultdataservice.service.FeatureMatrixExportService;
+import eu.openanalytics.phaedra.resultdataservice.support.AbstractIntegrationTest;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+public class PlateResultsIntegrationTest extends AbstractIntegrationTest {
+
+    @Test
+    public void streamedPlateResultsMatchInMemoryPlateResults() throws Exception {
+        // protocol 1 has two measurements with data, protocol 2 has no data at all
+        var withData = createResultSet(1L, 2L, 3L);
+        var otherMeas = createResultSet(1L, 2L, 4L);
+        createResultSet(2L, 2L, 3L);
+        createResultSet(1L, 5L, 3L); // other plate
+
+        createResultData(withData, 10L);
+        createResultData(withData, 11L);
+        createResultData(otherMeas, 10L);
+        createResultFeatureStats(withData, 10L);
+
+        var inMemory = performRequest(get("/plate-results/2"), HttpStatus.CREATED);
+        var streamed = performStreamingRequest(get("/plate-results/2/stream"));
+        Assertions.assertEquals(inMemory, streamed);
+        Assertions.assertTrue(streamed.contains("\"2\":{\"measurements\":{}}"), streamed);
+    }
+
+    @Test
+    public void latestPlateResultsContainTheLatestResultSetOfEveryProtocolAndMeasurementPerPlate() throws Exception {
+        var older = createResultSet(1L, 2L, 3L);
+        var latest = createResultSet(1L, 2L, 3L);
+        var otherMeas = createResultSet(1L, 2L, 4L);
+        var otherPlate = createResultSet(1L, 5L, 3L);
+        createResultData(older, 10L);
+        createResultData(latest, 10L);
+        createResultData(otherMeas, 11L);
+        createResultData(otherPlate, 10L);
+
+        // plate 6 has no ResultSet
+        var query = LatestResultSetsQueryDTO.builder().plateIds(List.of(2L, 5L, 6L)).build();
+        var plateResults = om.readTree(performRequest(post("/plate-results/latest", query), HttpStatus.OK));
+
+        Assertions.assertEquals(List.of("2", "5"), fieldNames(plateResults));
+        var measurements = plateResults.at("/2/protocols/1/measurements");
+        Assertions.assertEquals(List.of("3", "4"), fieldNames(measurements));
+        Assertions.assertEquals(1, measurements.get("3").size());
+        Assertions.assertEquals(latest, measurements.at("/3/0/resultData/0/resultSetId").asLong());
+        Assertions.assertEquals(otherMeas, measurements.at("/4/0/resultData/0/resultSetId").asLong());
+        Assertions.assertEquals(otherPlate, plateResults.at("/5/protocols/1/measurements/3/0/resultData/0/resultSetId").asLong());
+    }
+
+    @Test
+    public void featureMatrixContainsOneBatchPerLatestResultSet() throws Exception {
+        var older = createResultSet(1L, 2L, 3L);
+        var latest = createResultSet(1L, 2L, 4L);
+        var otherPlate = createResultSet(1L, 5L, 3L);
+        createResultData(older, 10L, new float[]{9.0F, 9.0F, 9.0F});
+        createResultData(latest, 10L, new float[]{1.0F, Float.NaN, 3.0F});
+        createResultData(latest, 11L, new float[]{4.0F, 5.0F, 6.0F});
+        createResultData(otherPlate, 10L, new float[]{7.0F, 8.0F});
+
+        // plate 6 has no ResultSet, feature 12 has no ResultData
+        var query = FeatureMatrixQueryDTO.builder().plateIds(List.of(2L, 5L, 6L)).featureIds(List.of(11L, 10L, 12L)).build();
+        MvcResult started = mockMvc.perform(post("/plate-results/matrix", query)).andReturn();
+        var response = mockMvc.perform(asyncDispatch(started)).andReturn().getResponse();
+        Assertions.assertEquals(HttpStatus.OK.value(), response.getStatus());
+        Assertions.assertEquals(FeatureMatrixExportService.ARROW_STREAM_MEDIA_TYPE, response.getContentType());
+
+        try (var allocator = new RootAllocator();
+             var reader = new ArrowStreamReader(new ByteArrayInputStream(response.getContentAsByteArray()), allocator)) {
+            var root = reader.getVectorSchemaRoot();
+            Assertions.assertEquals(List.of("plateId", "resultSetId", "wellNr", "11", "10", "12"),
+                root.getSchema().getFields().stream().map(Field::getName).toList());
+
+            Assertions.assertTrue(reader.loadNextBatch());
+            Assertions.assertEquals(3, root.getRowCount());
+            Assertions.assertEquals(2L, ((BigIntVector) root.getVector("plateId")).get(0));
+            Assertions.assertEquals(latest, ((BigIntVector) root.getVector("resultSetId")).get(0));
+            Assertions.assertEquals(List.of(1, 2, 3), ints((IntVector) root.getVector("wellNr")));
+            Assertions.assertEquals(Arrays.asList(4.0F, 5.0F, 6.0F), floats((Float4Vector) root.getVector("11")));
+            Assertions.assertEquals(Arrays.asList(1.0F, Float.NaN, 3.0F), floats((Float4Vector) root.getVector("10")));
+            Assertions.assertEquals(Arrays.asList(null, null, null), floats((Float4Vector) root.getVector("12")));
+
+            Assertions.assertTrue(reader.loadNextBatch());
+            Assertions.assertEquals(2, root.getRowCount());
+            Assertions.assertEquals(5L, ((BigIntVector) root.getVector("plateId")).get(0));
+            Assertions.assertEquals(otherPlate, ((BigIntVector) root.getVector("resultSetId")).get(1));
+            Assertions.assertEquals(Arrays.asList(null, null), floats((Float4Vector) root.getVector("11")));
+            Assertions.assertEquals(Arrays.asList(7.0F, 8.0F), floats((Float4Vector) root.getVector("10")));
+
+            Assertions.assertFalse(reader.loadNextBatch());
+        }
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        var names = new ArrayList<String>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    private static List<Integer> ints(IntVector vector) {
+        return IntStream.range(0, vector.getValueCount()).mapToObj(vector::getObject).toList();
+    }
+
+    private static List<Float> floats(Float4Vector vector) {
+        return IntStream.range(0, vector.getValueCount()).mapToObj(vector::getObject).toList();
+    }
+
+    /**
+     * Performs a request that returns a StreamingResponseBody, and returns the response normalized in the same way
+     * as {@link #performRequest(RequestBuilder, HttpStatus)}.
+     */
+    private String performStreamingRequest(RequestBuilder requestBuilder) throws Exception {
+        MvcResult started = mockMvc.perform(requestBuilder).andReturn();
+        return performRequest(asyncDispatch(started), HttpStatus.OK);
+    }
+
+}
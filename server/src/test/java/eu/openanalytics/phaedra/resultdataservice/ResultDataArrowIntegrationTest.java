@@ -0,0 +1,110 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice;
+
+import eu.openanalytics.phaedra.resultdataservice.service.FeatureMatrixExportService;
+import eu.openanalytics.phaedra.resultdataservice.support.AbstractIntegrationTest;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.complex.FixedSizeListVector;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+public class ResultDataArrowIntegrationTest extends AbstractIntegrationTest {
+
+    @Test
+    public void resultDataIsExportedWithPaddedFixedSizeLists() throws Exception {
+        var resultSet = createResultSet(1L, 2L, 3L);
+        createResultData(resultSet, 10L, new float[]{1.0F, 2.0F, 3.0F});
+        createResultData(resultSet, 11L, new float[]{4.0F, Float.NaN});
+        createResultData(createResultSet(1L, 2L, 3L), 10L, new float[]{5.0F, 6.0F, 7.0F, 8.0F}); // other ResultSet
+
+        var content = performArrowRequest(get("/resultsets/" + resultSet + "/resultdata/arrow"));
+
+        try (var allocator = new RootAllocator();
+             var reader = new ArrowStreamReader(new ByteArrayInputStream(content), allocator)) {
+            var root = reader.getVectorSchemaRoot();
+            Assertions.assertEquals(List.of("id", "resultSetId", "featureId", "statusCode", "valueCount", "values"),
+                root.getSchema().getFields().stream().map(Field::getName).toList());
+            // the list size is the largest number of values of the exported ResultSet
+            Assertions.assertEquals(3, ((ArrowType.FixedSizeList) root.getSchema().findField("values").getType()).getListSize());
+
+            Assertions.assertTrue(reader.loadNextBatch());
+            Assertions.assertEquals(2, root.getRowCount());
+            var resultSetIds = (BigIntVector) root.getVector("resultSetId");
+            var featureIds = (BigIntVector) root.getVector("featureId");
+            var statusCodes = (VarCharVector) root.getVector("statusCode");
+            var valueCounts = (IntVector) root.getVector("valueCount");
+            var values = (FixedSizeListVector) root.getVector("values");
+
+            Assertions.assertEquals(resultSet, resultSetIds.get(0));
+            Assertions.assertEquals(10L, featureIds.get(0));
+            Assertions.assertEquals("SUCCESS", statusCodes.getObject(0).toString());
+            Assertions.assertEquals(3, valueCounts.get(0));
+            Assertions.assertEquals(Arrays.asList(1.0F, 2.0F, 3.0F), values.getObject(0));
+
+            Assertions.assertEquals(resultSet, resultSetIds.get(1));
+            Assertions.assertEquals(11L, featureIds.get(1));
+            Assertions.assertEquals(2, valueCounts.get(1));
+            Assertions.assertEquals(Arrays.asList(4.0F, Float.NaN, null), values.getObject(1));
+
+            Assertions.assertFalse(reader.loadNextBatch());
+        }
+    }
+
+    @Test
+    public void resultSetWithoutResultDataGivesAnEmptyStream() throws Exception {
+        var content = performArrowRequest(get("/resultsets/" + createResultSet(1L, 2L, 3L) + "/resultdata/arrow"));
+
+        try (var allocator = new RootAllocator();
+             var reader = new ArrowStreamReader(new ByteArrayInputStream(content), allocator)) {
+            Assertions.assertEquals(0, ((ArrowType.FixedSizeList) reader.getVectorSchemaRoot().getSchema().findField("values").getType()).getListSize());
+            Assertions.assertFalse(reader.loadNextBatch());
+        }
+    }
+
+    /**
+     * Performs a request that returns an Arrow stream, and returns the content of the response.
+     */
+    private byte[] performArrowRequest(RequestBuilder requestBuilder) throws Exception {
+        MvcResult started = mockMvc.perform(requestBuilder).andReturn();
+        var response = mockMvc.perform(asyncDispatch(started)).andReturn().getResponse();
+        Assertions.assertEquals(HttpStatus.OK.value(), response.getStatus());
+        Assertions.assertEquals(FeatureMatrixExportService.ARROW_STREAM_MEDIA_TYPE, response.getContentType());
+        return response.getContentAsByteArray();
+    }
+
+}
@@ -33,6 +33,7 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -316,6 +317,46 @@ public class ResultDataIntegrationTest extends AbstractIntegrationTest {
         Assertions.assertEquals("{\"error\":\"ResultSet with id 60 not found!\",\"status\":\"error\"}", res10);
     }
 
+    @Test
+    public void batchCreateTest() throws Exception {
+        // 1. create simple ResultSet
+        var input1 = ResultSetDTO.builder()
+            .protocolId(1L)
+            .plateId(2L)
+            .measId(3L)
+            .build();
+
+        performRequest(post("/resultsets", input1), HttpStatus.CREATED, ResultSetDTO.class);
+
+        // 2. create three ResultData in one request
+        var input2 = List.of(42L, 43L, 44L).stream().map(featureId -> ResultDataDTO.builder()
+            .exitCode(0)
+            .statusCode(StatusCode.SUCCESS)
+            .statusMessage("Ok")
+            .featureId(featureId)
+            .values(new float[]{1.0F, 2.0F, 3.0F, 5.0F, 8.0F})
+            .build()).toList();
+
+        var res2 = performRequest(post("/resultsets/1/resultdata/batch", input2), HttpStatus.CREATED, ResultDataDTO[].class);
+        Assertions.assertEquals(3, res2.length);
+        for (int i = 0; i < res2.length; i++) {
+            Assertions.assertEquals(i + 1, res2[i].getId());
+            Assertions.assertEquals(1, res2[i].getResultSetId());
+            Assertions.assertEquals(42L + i, res2[i].getFeatureId());
+            Assertions.assertEquals(LocalDateTime.parse("2042-12-31T23:59:59"), res2[i].getCreatedTimestamp());
+            Assertions.assertArrayEquals(new float[]{1.0F, 2.0F, 3.0F, 5.0F, 8.0F}, res2[i].getValues());
+        }
+
+        // 3. get one of the created ResultData
+        var res3 = performRequest(get("/resultsets/1/resultdata/3"), HttpStatus.OK, ResultDataDTO.class);
+        Assertions.assertEquals(44L, res3.getFeatureId());
+
+        // 4. one invalid object fails the whole request
+        var input4 = List.of(input2.get(0), ResultDataDTO.builder().featureId(45L).build());
+        var res4 = performRequest(post("/resultsets/1/resultdata/batch", input4), HttpStatus.BAD_REQUEST);
+        Assertions.assertTrue(res4.contains("Validation error"));
+    }
+
     @Test
     public void testGetResultDataNotExisting() throws Exception {
         // 1. query using paginated endpoint of non existing ResultSet
@@ -344,6 +385,85 @@ public class ResultDataIntegrationTest extends AbstractIntegrationTest {
         Assertions.assertEquals("{\"error\":\"ResultData with id 4 not found!\",\"status\":\"error\"}", res5);
     }
 
+    @Test
+    public void readsUseASingleQuery() throws Exception {
+        // 1. create ResultSet with one ResultData
+        var input1 = ResultSetDTO.builder()
+            .protocolId(1L)
+            .plateId(2L)
+            .measId(3L)
+            .build();
+        performRequest(post("/resultsets", input1), HttpStatus.CREATED, ResultSetDTO.class);
+
+        var input2 = ResultDataDTO.builder()
+            .exitCode(0)
+            .statusCode(StatusCode.SUCCESS)
+            .statusMessage("Ok")
+            .featureId(42L)
+            .values(new float[]{1.0F, 2.0F, 3.0F, 5.0F, 8.0F})
+            .build();
+        performRequest(post("/resultsets/1/resultdata", input2), HttpStatus.CREATED, ResultDataDTO.class);
+
+        // 2. existing ResultSet and ResultData
+        var res1 = performRequest(get("/resultsets/1/resultdata"), HttpStatus.OK, 1);
+        Assertions.assertTrue(res1.contains("\"totalElements\":1"));
+        performRequest(get("/resultsets/1/resultdata?featureId=42"), HttpStatus.OK, 1);
+        performRequest(get("/resultsets/1/resultdata/1"), HttpStatus.OK, 1);
+
+        // 3. existing ResultSet without matching ResultData
+        var res2 = performRequest(get("/resultsets/1/resultdata?featureId=43"), HttpStatus.OK, 1);
+        Assertions.assertTrue(res2.contains("\"totalElements\":0"));
+        performRequest(get("/resultsets/1/resultdata/2"), HttpStatus.NOT_FOUND, 1);
+
+        // 4. non-existing ResultSet
+        var res3 = performRequest(get("/resultsets/2/resultdata"), HttpStatus.NOT_FOUND, 1);
+        Assertions.assertEquals("{\"error\":\"ResultSet with id 2 not found!\",\"status\":\"error\"}", res3);
+        performRequest(get("/resultsets/2/resultdata/1"), HttpStatus.NOT_FOUND, 1);
+
+        // 5. a page past the last row needs a separate count
+        var res4 = performRequest(get("/resultsets/1/resultdata?page=5"), HttpStatus.OK, 2);
+        Assertions.assertTrue(res4.contains("\"totalElements\":1"));
+    }
+
+    @Test
+    public void keysetPagination() throws Exception {
+        // 1. create ResultSet with three ResultData
+        var input1 = ResultSetDTO.builder()
+            .protocolId(1L)
+            .plateId(2L)
+            .measId(3L)
+            .build();
+        performRequest(post("/resultsets", input1), HttpStatus.CREATED, ResultSetDTO.class);
+
+        for (long featureId = 42; featureId < 45; featureId++) {
+            var input2 = ResultDataDTO.builder()
+                .exitCode(0)
+                .statusCode(StatusCode.SUCCESS)
+                .statusMessage("Ok")
+                .featureId(featureId)
+                .values(new float[]{1.0F, 2.0F, 3.0F})
+                .build();
+            performRequest(post("/resultsets/1/resultdata", input2), HttpStatus.CREATED, ResultDataDTO.class);
+        }
+
+        // 2. first page, without count
+        var res1 = performRequest(get("/resultsets/1/resultdata?limit=2"), HttpStatus.OK, 1);
+        Assertions.assertTrue(res1.contains("\"totalElements\":-1"));
+        Assertions.assertTrue(res1.contains("\"first\":true"));
+        Assertions.assertTrue(res1.contains("\"last\":false"));
+        Assertions.assertTrue(res1.contains("\"nextAfter\":2"));
+
+        // 3. last page, with count
+        var res2 = performRequest(get("/resultsets/1/resultdata?limit=2&after=2&count=true"), HttpStatus.OK, 2);
+        Assertions.assertTrue(res2.contains("\"totalElements\":3"));
+        Assertions.assertTrue(res2.contains("\"featureId\":44"));
+        Assertions.assertTrue(res2.contains("\"last\":true"));
+        Assertions.assertTrue(res2.contains("\"nextAfter\":null"));
+
+        // 4. non-existing ResultSet
+        performRequest(get("/resultsets/2/resultdata?limit=2"), HttpStatus.NOT_FOUND, 1);
+    }
+
     @Test
     public void testDeleteDataSetNotFound() throws Exception {
         // 1. delete DataSet of non-existing ResultSet
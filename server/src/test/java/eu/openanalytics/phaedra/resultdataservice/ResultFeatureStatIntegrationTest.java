@@ -100,6 +100,39 @@ public class ResultFeatureStatIntegrationTest extends AbstractIntegrationTest {
         Assertions.assertEquals("{\"error\":\"ResultFeatureStat with id 1 not found!\",\"status\":\"error\"}", res5);
     }
 
+    @Test
+    public void readsUseASingleQuery() throws Exception {
+        // 1. create ResultSet with one ResultFeatureStat
+        var input1 = ResultSetDTO.builder()
+            .protocolId(1L)
+            .plateId(2L)
+            .measId(3L)
+            .build();
+        performRequest(post("/resultsets", input1), HttpStatus.CREATED, ResultSetDTO.class);
+
+        var input2 = ResultFeatureStatDTO.builder()
+            .exitCode(0)
+            .statusCode(StatusCode.SUCCESS)
+            .statusMessage("Ok")
+            .featureId(42L)
+            .featureStatId(45L)
+            .statisticName("count")
+            .value(42f)
+            .build();
+        performRequest(post("/resultsets/1/resultfeaturestats", List.of(input2)), HttpStatus.CREATED, ResultFeatureStatDTO[].class);
+
+        // 2. existing ResultSet
+        var res1 = performRequest(get("/resultsets/1/resultfeaturestats"), HttpStatus.OK, 1);
+        Assertions.assertTrue(res1.contains("\"totalElements\":1"));
+        performRequest(get("/resultsets/1/resultfeaturestats/1"), HttpStatus.OK, 1);
+        performRequest(get("/resultsets/1/resultfeaturestats/2"), HttpStatus.NOT_FOUND, 1);
+
+        // 3. non-existing ResultSet
+        var res2 = performRequest(get("/resultsets/2/resultfeaturestats"), HttpStatus.NOT_FOUND, 1);
+        Assertions.assertEquals("{\"error\":\"ResultSet with id 2 not found!\",\"status\":\"error\"}", res2);
+        performRequest(get("/resultsets/2/resultfeaturestats/1"), HttpStatus.NOT_FOUND, 1);
+    }
+
 
     @Test
     public void addDataToCompletedSet() throws Exception {
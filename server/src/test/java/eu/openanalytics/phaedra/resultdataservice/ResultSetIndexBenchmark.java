@@ -0,0 +1,151 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice;
+
+import eu.openanalytics.phaedra.resultdataservice.support.AbstractIntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the query plans and latencies of the repository lookups with and without the indexes of
+ * db.changelog-4.0, on a database seeded with a million ResultSets.
+ * <p>
+ * Run with {@code mvn test -Dtest=ResultSetIndexBenchmark -Dphaedra2.benchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "phaedra2.benchmark", matches = "true")
+public class ResultSetIndexBenchmark extends AbstractIntegrationTest {
+
+    private static final int RESULT_SET_COUNT = 1_000_000;
+    private static final int FEATURES_PER_RESULT_SET = 4;
+    private static final int ITERATIONS = 50;
+
+    private static final List<String> INDEXES = List.of(
+        "ix_result_set_plate_id_id",
+        "ix_result_set_plate_id_meas_id_id",
+        "ix_result_set_plate_id_protocol_id_meas_id_id",
+        "ix_result_set_meas_id_id",
+        "ix_result_set_protocol_id_id",
+        "ix_result_set_outcome_id",
+        "ix_result_set_execution_start_time_stamp",
+        "ix_result_data_result_set_id_feature_id",
+        "ix_result_feature_stat_result_set_id_feature_id"
+    );
+
+    // Same shapes as the queries of ResultSetRepository and ResultDataRepository
+    private static final Map<String, String> QUERIES = new LinkedHashMap<>();
+
+    static {
+        QUERIES.put("findAllByPlateId", "SELECT * FROM result_set WHERE plate_id = 4242 ORDER BY execution_end_time_stamp DESC");
+        QUERIES.put("findByPlateIdAndMeasId", "SELECT * FROM result_set WHERE plate_id = 4242 AND meas_id = 4242 ORDER BY execution_end_time_stamp DESC");
+        QUERIES.put("findLatestByPlateId", "SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM result_set WHERE plate_id = 4242)");
+        QUERIES.put("findLatestByMeasId", "SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM result_set WHERE meas_id = 4242)");
+        QUERIES.put("findLatestByProtocolId", "SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM result_set WHERE protocol_id = 42)");
+        QUERIES.put("findLatestByPlateIdAndMeasId", "SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM result_set WHERE plate_id = 4242 and meas_id = 4242)");
+        QUERIES.put("findLatestByPlateIdAndProtocolIdAndMeasId", "SELECT * FROM result_set WHERE id in (SELECT MAX(id) FROM result_set WHERE plate_id = 4242 and protocol_id = 42 and meas_id = 4242)");
+        QUERIES.put("findLatest (plate, meas)", "SELECT * FROM result_set WHERE plate_id = 4242 AND meas_id = 4242 ORDER BY id DESC LIMIT 1");
+        QUERIES.put("findLatestPerPlate", "SELECT DISTINCT ON (plate_id) * FROM result_set WHERE plate_id IN (4242, 4243, 4244) ORDER BY plate_id, id DESC");
+        QUERIES.put("findLatestPerPlateProtocolAndMeas", "SELECT DISTINCT ON (plate_id, protocol_id, meas_id) * FROM result_set WHERE plate_id IN (4242, 4243, 4244) ORDER BY plate_id, protocol_id, meas_id, id DESC");
+        QUERIES.put("findNMostRecentResultSets", "SELECT * FROM result_set ORDER BY execution_start_time_stamp DESC LIMIT 20");
+        QUERIES.put("findAllByOutcome", "SELECT * FROM result_set WHERE outcome = 'SCHEDULED' ORDER BY id LIMIT 20");
+        QUERIES.put("findByResultSetIdAndFeatureId", "SELECT * FROM result_data WHERE result_set_id = 424242 AND feature_id = 3");
+        QUERIES.put("findAllByResultSetId (data)", "SELECT * FROM result_data WHERE result_set_id = 424242");
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Test
+    public void compareWithAndWithoutIndexes() {
+        var jdbcTemplate = new JdbcTemplate(dataSource);
+        seed(jdbcTemplate);
+
+        var indexed = measure(jdbcTemplate, "with indexes");
+
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        var unindexed = transactionTemplate.execute(status -> {
+            INDEXES.forEach(index -> jdbcTemplate.execute("DROP INDEX " + index));
+            var res = measure(jdbcTemplate, "without indexes");
+            // keep the indexes for the other tests
+            status.setRollbackOnly();
+            return res;
+        });
+
+        logger.info(String.format("%-45s %15s %15s", "query", "without (ms)", "with (ms)"));
+        QUERIES.keySet().forEach(name -> logger.info(String.format("%-45s %15.3f %15.3f", name, unindexed.get(name).medianMillis, indexed.get(name).medianMillis)));
+
+        indexed.forEach((name, measurement) ->
+            Assertions.assertFalse(measurement.plan.contains("Seq Scan"), String.format("Query %s does not use an index:%n%s", name, measurement.plan)));
+    }
+
+    private void seed(JdbcTemplate jdbcTemplate) {
+        logger.info(String.format("Seeding %d result sets", RESULT_SET_COUNT));
+        // 100k plates, each measured twice, analysed with one of 100 protocols
+        jdbcTemplate.update("INSERT INTO result_set (protocol_id, plate_id, meas_id, execution_start_time_stamp, execution_end_time_stamp, outcome) " +
+            "SELECT i % 100, i % 100000, i % 200000, now() - i * interval '1 second', now() - i * interval '1 second' + interval '1 minute', " +
+            "(CASE WHEN i % 1000 = 0 THEN 'SCHEDULED' ELSE 'SUCCESS' END)::status_code " +
+            "FROM generate_series(1, ?) AS i", RESULT_SET_COUNT);
+        jdbcTemplate.update("INSERT INTO result_data (result_set_id, feature_id, \"values\", status_code, status_message, exit_code, created_timestamp) " +
+            "SELECT rs.id, f, ARRAY[random(), random(), random()]::float4[], 'SUCCESS'::status_code, 'Ok', 0, now() " +
+            "FROM result_set rs, generate_series(1, ?) AS f", FEATURES_PER_RESULT_SET);
+        jdbcTemplate.execute("ANALYZE result_set");
+        jdbcTemplate.execute("ANALYZE result_data");
+    }
+
+    private Map<String, Measurement> measure(JdbcTemplate jdbcTemplate, String label) {
+        var res = new LinkedHashMap<String, Measurement>();
+        QUERIES.forEach((name, sql) -> {
+            var plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN (ANALYZE, BUFFERS) " + sql, String.class));
+            logger.info(String.format("Plan of %s %s:%n%s", name, label, plan));
+
+            var durations = new long[ITERATIONS];
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                jdbcTemplate.queryForList(sql);
+                durations[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(durations);
+            res.put(name, new Measurement(plan, durations[ITERATIONS / 2] / 1_000_000.0));
+        });
+        return res;
+    }
+
+    private record Measurement(String plan, double medianMillis) {
+    }
+
+}
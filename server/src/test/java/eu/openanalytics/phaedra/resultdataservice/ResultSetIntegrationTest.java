@@ -21,6 +21,7 @@
 package eu.openanalytics.phaedra.resultdataservice;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import eu.openanalytics.phaedra.resultdataservice.dto.LatestResultSetsQueryDTO;
 import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
 import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
 import eu.openanalytics.phaedra.resultdataservice.support.AbstractIntegrationTest;
@@ -319,4 +320,35 @@ public class ResultSetIntegrationTest extends AbstractIntegrationTest {
         Assertions.assertNull(data.get(0).get("executionEndTimeStamp"));
     }
 
+    @Test
+    public void getLatestResultSetsByPlateIds() throws Exception {
+        // 1. create two ResultSets for plate 2, one for plate 3 and one for plate 4
+        for (var plateId : List.of(2L, 2L, 3L, 4L)) {
+            var input = ResultSetDTO.builder()
+                .protocolId(1L)
+                .plateId(plateId)
+                .measId(plateId == 4L ? 5L : 3L)
+                .build();
+            performRequest(post("/resultsets", input), HttpStatus.CREATED, ResultSetDTO.class);
+        }
+
+        // 2. query latest ResultSet of plates 2, 3 and 5
+        var query = LatestResultSetsQueryDTO.builder().plateIds(List.of(2L, 3L, 5L)).build();
+        var res1 = performRequest(post("/resultsets/latest/batch", query), HttpStatus.OK, ResultSetDTO[].class);
+        Assertions.assertEquals(2, res1.length);
+        Assertions.assertEquals(2L, res1[0].getId());
+        Assertions.assertEquals(2L, res1[0].getPlateId());
+        Assertions.assertEquals(3L, res1[1].getId());
+        Assertions.assertEquals(3L, res1[1].getPlateId());
+
+        // 3. filter on measurement
+        var query2 = LatestResultSetsQueryDTO.builder().plateIds(List.of(2L, 4L)).measId(5L).build();
+        var res2 = performRequest(post("/resultsets/latest/batch", query2), HttpStatus.OK, ResultSetDTO[].class);
+        Assertions.assertEquals(1, res2.length);
+        Assertions.assertEquals(4L, res2[0].getId());
+
+        // 4. plateIds are mandatory
+        performRequest(post("/resultsets/latest/batch", LatestResultSetsQueryDTO.builder().build()), HttpStatus.BAD_REQUEST);
+    }
+
 }
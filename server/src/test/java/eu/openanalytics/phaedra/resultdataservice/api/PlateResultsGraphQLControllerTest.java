@@ -0,0 +1,171 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.api;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.graphql.execution.DefaultBatchLoaderRegistry;
+
+import eu.openanalytics.phaedra.plateservice.client.PlateServiceClient;
+import eu.openanalytics.phaedra.plateservice.dto.PlateDTO;
+import eu.openanalytics.phaedra.plateservice.dto.WellDTO;
+import eu.openanalytics.phaedra.protocolservice.dto.ProtocolDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.model.FeatureColumn;
+import eu.openanalytics.phaedra.resultdataservice.model.ProtocolData;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import eu.openanalytics.phaedra.resultdataservice.service.ReferenceDataCache;
+import eu.openanalytics.phaedra.resultdataservice.service.RemoteLookupExecutor;
+import eu.openanalytics.phaedra.resultdataservice.service.ResultDataService;
+import eu.openanalytics.phaedra.resultdataservice.service.ResultSetService;
+import graphql.GraphQLContext;
+
+public class PlateResultsGraphQLControllerTest {
+
+    private final ResultSetService resultSetService = mock(ResultSetService.class);
+    private final ResultDataService resultDataService = mock(ResultDataService.class);
+    private final PlateServiceClient plateServiceClient = mock(PlateServiceClient.class);
+    private final RemoteLookupExecutor remoteLookupExecutor = mock(RemoteLookupExecutor.class);
+    private final ReferenceDataCache referenceDataCache = mock(ReferenceDataCache.class);
+
+    private PlateResultsGraphQLController controller;
+    private DataLoader<Long, ProtocolData> protocolLoader;
+
+    @BeforeEach
+    public void initEach() {
+        var batchLoaderRegistry = new DefaultBatchLoaderRegistry();
+        controller = new PlateResultsGraphQLController(resultSetService, resultDataService, plateServiceClient, remoteLookupExecutor, referenceDataCache, batchLoaderRegistry);
+
+        var dataLoaderRegistry = DataLoaderRegistry.newRegistry().build();
+        batchLoaderRegistry.registerDataLoaders(dataLoaderRegistry, GraphQLContext.newContext().build());
+        protocolLoader = dataLoaderRegistry.getDataLoader(ProtocolData.class.getName());
+
+        when(referenceDataCache.getProtocol(anyLong())).thenAnswer(invocation -> {
+            long protocolId = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(ProtocolDTO.builder().id(protocolId).name("Protocol " + protocolId).features(List.of()).build());
+        });
+    }
+
+    @Test
+    public void protocolsOfAllPlatesAreLoadedInOneBatch() throws Exception {
+        when(plateServiceClient.getPlatesByExperiment(1L)).thenReturn(List.of(plate(10L), plate(11L), plate(12L)));
+        when(resultSetService.getResultSetsByPlateIds(List.of(10L, 11L, 12L))).thenReturn(List.of(resultSet(10L, 2L), resultSet(11L, 1L), resultSet(12L, 2L)));
+
+        var protocols = controller.protocolsByExperimentId(1L, protocolLoader);
+        protocolLoader.dispatch();
+
+        Assertions.assertEquals(List.of(2L, 1L), protocols.join().stream().map(ProtocolData::protocolId).toList());
+        verify(resultSetService, times(1)).getResultSetsByPlateIds(anyList());
+        verify(referenceDataCache, times(1)).getProtocol(1L);
+        verify(referenceDataCache, times(1)).getProtocol(2L);
+        verifyNoMoreInteractions(referenceDataCache);
+    }
+
+    @Test
+    public void protocolsAreSharedBetweenFieldsOfOneRequest() throws Exception {
+        when(resultSetService.getResultSetsByPlateId(eq(10L), any())).thenReturn(List.of(resultSet(10L, 1L), resultSet(10L, 2L)));
+        when(resultSetService.getResultSetsByPlateId(eq(11L), any())).thenReturn(List.of(resultSet(11L, 2L)));
+
+        var protocols10 = controller.protocolsByPlateId(10L, protocolLoader);
+        var protocols11 = controller.protocolsByPlateId(11L, protocolLoader);
+        protocolLoader.dispatch();
+
+        Assertions.assertEquals(2, protocols10.join().size());
+        Assertions.assertEquals(1, protocols11.join().size());
+        verify(referenceDataCache, times(1)).getProtocol(1L);
+        verify(referenceDataCache, times(1)).getProtocol(2L);
+        verifyNoMoreInteractions(referenceDataCache);
+    }
+
+    @Test
+    public void plateWithoutResultSetGivesEmptyResultWithoutRemoteLookups() throws Exception {
+        when(resultSetService.getLatestResultSetByPlateId(eq(10L), any())).thenReturn(null);
+
+        Assertions.assertNull(controller.latestPlateResultByPlateId(10L, protocolLoader).join());
+        Assertions.assertEquals(List.of(), controller.featureValuesByPlateIdAndFeatureId(10L, 42L).join());
+        Assertions.assertNull(controller.featureColumnsByPlateId(10L, List.of(42L)).join());
+
+        verifyNoInteractions(plateServiceClient, remoteLookupExecutor, referenceDataCache, resultDataService);
+    }
+
+    @Test
+    public void featureColumnsFollowTheWellLayoutAndTheRequestedFeatureOrder() throws Exception {
+        when(resultSetService.getLatestResultSetByPlateId(eq(10L), any())).thenReturn(resultSet(10L, 1L).withId(5L));
+        when(resultDataService.getResultDataByResultSetIdAndFeatureIds(5L, List.of(3L, 1L, 2L, 3L))).thenReturn(List.of(
+            ResultData.builder().resultSetId(5L).featureId(1L).values(new float[]{1.0F, 1.5F}).build(),
+            ResultData.builder().resultSetId(5L).featureId(3L).values(new float[]{3.0F, 3.5F}).build()));
+        when(referenceDataCache.getWells(10L)).thenReturn(CompletableFuture.completedFuture(List.of(
+            WellDTO.builder().id(100L).wellType("SAMPLE").row(1).column(1).build(),
+            WellDTO.builder().id(101L).wellType("LC").row(1).column(2).build())));
+
+        var columns = controller.featureColumnsByPlateId(10L, List.of(3L, 1L, 2L, 3L)).join();
+
+        Assertions.assertEquals(10L, columns.plateId());
+        Assertions.assertArrayEquals(new long[]{100L, 101L}, columns.wellIds());
+        Assertions.assertArrayEquals(new String[]{"SAMPLE", "LC"}, columns.wellTypes());
+        Assertions.assertArrayEquals(new int[]{1, 1}, columns.rows());
+        Assertions.assertArrayEquals(new int[]{1, 2}, columns.columns());
+        // requested order, without duplicates and without feature 2, which has no ResultData
+        Assertions.assertEquals(List.of(3L, 1L), columns.features().stream().map(FeatureColumn::featureId).toList());
+        Assertions.assertEquals(5L, columns.features().get(0).resultSetId());
+        Assertions.assertArrayEquals(new float[]{3.0F, 3.5F}, columns.features().get(0).values());
+        Assertions.assertArrayEquals(new float[]{1.0F, 1.5F}, columns.features().get(1).values());
+    }
+
+    @Test
+    public void featureColumnsWithoutResultDataOnlyContainTheWellLayout() throws Exception {
+        when(resultSetService.getLatestResultSetByPlateId(eq(10L), any())).thenReturn(resultSet(10L, 1L).withId(5L));
+        when(resultDataService.getResultDataByResultSetIdAndFeatureIds(5L, List.of(2L))).thenReturn(List.of());
+        when(referenceDataCache.getWells(10L)).thenReturn(CompletableFuture.completedFuture(List.of(
+            WellDTO.builder().id(100L).wellType("SAMPLE").row(1).column(1).build())));
+
+        var columns = controller.featureColumnsByPlateId(10L, List.of(2L)).join();
+
+        Assertions.assertArrayEquals(new long[]{100L}, columns.wellIds());
+        Assertions.assertEquals(List.of(), columns.features());
+    }
+
+    private static PlateDTO plate(long plateId) {
+        return PlateDTO.builder().id(plateId).build();
+    }
+
+    private static ResultSetDTO resultSet(long plateId, long protocolId) {
+        return ResultSetDTO.builder().plateId(plateId).protocolId(protocolId).measId(1L).build();
+    }
+
+}
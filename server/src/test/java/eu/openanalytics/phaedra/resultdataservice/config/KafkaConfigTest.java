@@ -0,0 +1,53 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.config;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class KafkaConfigTest {
+
+    @Test
+    public void eventTypeIsReadFromTheHeader() {
+        var rec = new ConsumerRecord<String, Object>(KafkaConfig.TOPIC_RESULTDATA, 0, 0L, "10", null);
+        rec.headers().add(KafkaConfig.HEADER_EVENT_TYPE, KafkaConfig.EVENT_RESULT_DATA_BATCH_UPDATED.getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(KafkaConfig.EVENT_RESULT_DATA_BATCH_UPDATED, KafkaConfig.eventType(rec));
+    }
+
+    @Test
+    public void eventTypeFallsBackToTheKeyForOlderProducers() {
+        var rec = new ConsumerRecord<String, Object>(KafkaConfig.TOPIC_RESULTDATA, 0, 0L, KafkaConfig.EVENT_SAVE_RESULT_DATA, null);
+
+        Assertions.assertEquals(KafkaConfig.EVENT_SAVE_RESULT_DATA, KafkaConfig.eventType(rec));
+    }
+
+    @Test
+    public void eventTypeIsNullWithoutHeaderAndKey() {
+        var rec = new ConsumerRecord<String, Object>(KafkaConfig.TOPIC_RESULTDATA, 0, 0L, null, null);
+
+        Assertions.assertNull(KafkaConfig.eventType(rec));
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.config;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataBatchDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatBatchDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+
+public class ResultEventSerializerTest {
+
+    private static final String CBOR_TOPIC = "cbor-topic";
+    private static final String JSON_TOPIC = "json-topic";
+
+    private final ObjectMapper cborObjectMapper = Jackson2ObjectMapperBuilder.cbor().build();
+
+    private final ResultEventSerializer serializer = new ResultEventSerializer(
+        new ResultEventFormat(new MockEnvironment().withProperty("phaedra2.result-data-service.kafka.format." + CBOR_TOPIC, ResultEventFormat.CBOR)),
+        cborObjectMapper, new JsonSerializer<>());
+
+    private final ResultEventDeserializer deserializer = new ResultEventDeserializer(cborObjectMapper, jsonDeserializer());
+
+    private static List<Object> payloads() {
+        var resultData = ResultDataDTO.builder().id(1L).resultSetId(10L).featureId(100L).values(new float[]{1.5F, Float.NaN, -2.0F})
+            .statusCode(StatusCode.SUCCESS).statusMessage("Ok").exitCode(0).createdTimestamp(LocalDateTime.of(2023, 5, 1, 12, 30)).build();
+        var featureStat = ResultFeatureStatDTO.builder().id(2L).resultSetId(10L).featureId(100L).featureStatId(1000L).value(0.5F)
+            .statisticName("mean").welltype("SAMPLE").statusCode(StatusCode.SUCCESS).statusMessage("Ok").exitCode(0).build();
+        return List.of(
+            ResultSetDTO.builder().id(10L).protocolId(1L).plateId(2L).measId(3L).outcome(StatusCode.SUCCESS)
+                .executionStartTimeStamp(LocalDateTime.of(2023, 5, 1, 12, 0)).build(),
+            resultData,
+            featureStat,
+            new ResultDataBatchDTO(10L, List.of(resultData, resultData.withId(3L))),
+            new ResultFeatureStatBatchDTO(10L, List.of(featureStat, featureStat.withId(4L))));
+    }
+
+    @Test
+    public void payloadsRoundTripAsCbor() {
+        for (var payload : payloads()) {
+            var headers = new RecordHeaders();
+            var bytes = serializer.serialize(CBOR_TOPIC, headers, payload);
+
+            Assertions.assertTrue(ResultEventFormat.isCbor(headers));
+            Assertions.assertEquals(payload.getClass().getSimpleName(), header(headers, ResultEventFormat.HEADER_PAYLOAD_TYPE));
+            Assertions.assertEquals(String.valueOf(ResultEventFormat.SCHEMA_VERSION), header(headers, ResultEventFormat.HEADER_SCHEMA_VERSION));
+            Assertions.assertEquals(payload, deserializer.deserialize(CBOR_TOPIC, headers, bytes));
+        }
+    }
+
+    @Test
+    public void payloadsWithoutContentTypeAreReadAsJson() {
+        for (var payload : payloads()) {
+            var headers = new RecordHeaders();
+            var bytes = serializer.serialize(JSON_TOPIC, headers, payload);
+
+            Assertions.assertNull(headers.lastHeader(ResultEventFormat.HEADER_CONTENT_TYPE));
+            Assertions.assertEquals(payload, deserializer.deserialize(JSON_TOPIC, headers, bytes));
+        }
+    }
+
+    @Test
+    public void otherPayloadsAreWrittenAsJsonOnCborTopics() {
+        var headers = new RecordHeaders();
+        var bytes = serializer.serialize(CBOR_TOPIC, headers, Map.of("plateId", 1));
+
+        Assertions.assertFalse(ResultEventFormat.isCbor(headers));
+        Assertions.assertEquals("{\"plateId\":1}", new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void newerSchemaVersionsAreRejected() {
+        var headers = new RecordHeaders();
+        var bytes = serializer.serialize(CBOR_TOPIC, headers, ResultSetDTO.builder().id(10L).build());
+        headers.remove(ResultEventFormat.HEADER_SCHEMA_VERSION);
+        headers.add(ResultEventFormat.HEADER_SCHEMA_VERSION, String.valueOf(ResultEventFormat.SCHEMA_VERSION + 1).getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertThrows(SerializationException.class, () -> deserializer.deserialize(CBOR_TOPIC, headers, bytes));
+    }
+
+    @Test
+    public void unknownPayloadTypesAreReadAsTree() {
+        var headers = new RecordHeaders();
+        var bytes = serializer.serialize(CBOR_TOPIC, headers, ResultSetDTO.builder().id(10L).build());
+        headers.remove(ResultEventFormat.HEADER_PAYLOAD_TYPE);
+        headers.add(ResultEventFormat.HEADER_PAYLOAD_TYPE, "NewerDTO".getBytes(StandardCharsets.UTF_8));
+
+        var tree = (JsonNode) deserializer.deserialize(CBOR_TOPIC, headers, bytes);
+        Assertions.assertEquals(10L, tree.get("id").asLong());
+    }
+
+    private static String header(RecordHeaders headers, String name) {
+        return ResultEventFormat.getHeader(headers, name).orElse(null);
+    }
+
+    private static JsonDeserializer<Object> jsonDeserializer() {
+        var jsonDeserializer = new JsonDeserializer<>();
+        jsonDeserializer.addTrustedPackages("eu.openanalytics.phaedra.resultdataservice.dto");
+        return jsonDeserializer;
+    }
+
+}
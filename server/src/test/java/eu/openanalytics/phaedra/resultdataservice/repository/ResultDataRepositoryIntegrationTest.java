@@ -0,0 +1,93 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultSet;
+import eu.openanalytics.phaedra.resultdataservice.service.JdbcBatchResultDataWriter;
+import eu.openanalytics.phaedra.resultdataservice.support.AbstractIntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+public class ResultDataRepositoryIntegrationTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ResultSetRepository resultSetRepository;
+
+    @Autowired
+    private ResultDataRepository resultDataRepository;
+
+    @Test
+    public void findAllByResultSetIdAndFeatureIdInOnlyReturnsTheRequestedFeaturesOfTheResultSet() {
+        var resultSet = saveResultSet();
+        var otherResultSet = saveResultSet();
+        new JdbcBatchResultDataWriter(dataSource).write(List.of(
+            resultData(resultSet.getId(), 1L, 1.0F),
+            resultData(resultSet.getId(), 2L, 2.0F),
+            resultData(resultSet.getId(), 3L, 3.0F),
+            resultData(otherResultSet.getId(), 1L, 10.0F),
+            resultData(otherResultSet.getId(), 4L, 40.0F)));
+
+        // feature 4 has no ResultData in this ResultSet
+        var found = resultDataRepository.findAllByResultSetIdAndFeatureIdIn(resultSet.getId(), List.of(3L, 1L, 4L)).stream()
+            .sorted(Comparator.comparing(ResultData::getFeatureId))
+            .toList();
+
+        Assertions.assertEquals(List.of(1L, 3L), found.stream().map(ResultData::getFeatureId).toList());
+        Assertions.assertTrue(found.stream().allMatch(rd -> rd.getResultSetId().equals(resultSet.getId())));
+        Assertions.assertArrayEquals(new float[]{1.0F, 1.0F}, found.get(0).getValues());
+        Assertions.assertArrayEquals(new float[]{3.0F, 3.0F}, found.get(1).getValues());
+
+        Assertions.assertEquals(List.of(), resultDataRepository.findAllByResultSetIdAndFeatureIdIn(resultSet.getId(), List.of(4L)));
+    }
+
+    private ResultSet saveResultSet() {
+        return resultSetRepository.save(ResultSet.builder()
+            .plateId(100L)
+            .protocolId(10L)
+            .measId(1000L)
+            .outcome(StatusCode.SCHEDULED)
+            .build());
+    }
+
+    private static ResultData resultData(long resultSetId, long featureId, float value) {
+        return ResultData.builder()
+            .resultSetId(resultSetId)
+            .featureId(featureId)
+            .values(new float[]{value, value})
+            .statusCode(StatusCode.SUCCESS)
+            .statusMessage("Ok")
+            .exitCode(0)
+            .createdTimestamp(LocalDateTime.of(2042, 12, 31, 23, 59, 59))
+            .build();
+    }
+
+}
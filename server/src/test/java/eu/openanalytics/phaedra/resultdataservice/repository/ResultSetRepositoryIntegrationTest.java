@@ -0,0 +1,118 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.repository;
+
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultSet;
+import eu.openanalytics.phaedra.resultdataservice.support.AbstractIntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+public class ResultSetRepositoryIntegrationTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private ResultSetRepository resultSetRepository;
+
+    /**
+     * Regression test: the measId + protocolId lookup used to bind the plateId parameter to the meas_id column.
+     */
+    @Test
+    public void findLatestBindsEveryFilterToItsOwnColumn() {
+        var match = save(100L, 10L, 1000L);
+        save(100L, 11L, 1000L);
+        save(1000L, 10L, 100L); // plateId and measId swapped
+        var latestOfPlate = save(100L, 11L, 1001L);
+
+        Assertions.assertEquals(List.of(match.getId()), ids(resultSetRepository.findLatest(null, 1000L, 10L, 1)));
+        Assertions.assertEquals(List.of(match.getId()), ids(resultSetRepository.findLatest(100L, 1000L, 10L, 1)));
+        Assertions.assertEquals(List.of(latestOfPlate.getId()), ids(resultSetRepository.findLatest(100L, null, null, 1)));
+        Assertions.assertEquals(List.of(), ids(resultSetRepository.findLatest(null, 100L, 11L, 1)));
+        Assertions.assertEquals(List.of(latestOfPlate.getId(), 3L, 2L), ids(resultSetRepository.findLatest(null, null, null, 3)));
+    }
+
+    @Test
+    public void findLatestPerPlateProtocolAndMeasReturnsTheLatestOfEveryCombination() {
+        save(100L, 10L, 1000L);
+        var plate100Protocol10 = save(100L, 10L, 1000L);
+        var plate100Protocol11 = save(100L, 11L, 1000L);
+        save(100L, 10L, 1001L);
+        var plate100Meas1001 = save(100L, 10L, 1001L);
+        var plate101 = save(101L, 10L, 1000L);
+        save(102L, 10L, 1000L); // not requested
+
+        var latest = resultSetRepository.findLatestPerPlateProtocolAndMeas(List.of(100L, 101L, 103L), null, null);
+        Assertions.assertEquals(
+            List.of(plate100Protocol10.getId(), plate100Meas1001.getId(), plate100Protocol11.getId(), plate101.getId()),
+            ids(latest));
+
+        Assertions.assertEquals(List.of(plate100Protocol10.getId(), plate101.getId()),
+            ids(resultSetRepository.findLatestPerPlateProtocolAndMeas(List.of(100L, 101L), 1000L, 10L)));
+        Assertions.assertEquals(List.of(plate100Protocol11.getId()),
+            ids(resultSetRepository.findLatestPerPlateProtocolAndMeas(List.of(100L, 101L), null, 11L)));
+        Assertions.assertEquals(List.of(), ids(resultSetRepository.findLatestPerPlateProtocolAndMeas(List.of(), null, null)));
+    }
+
+    @Test
+    public void findAfterPagesByIdWithinTheOutcome() {
+        var scheduled1 = save(100L, 10L, 1000L);
+        save(100L, 10L, 1000L, StatusCode.SUCCESS);
+        var scheduled2 = save(101L, 10L, 1000L);
+        var scheduled3 = save(102L, 10L, 1000L);
+        var success2 = save(103L, 10L, 1000L, StatusCode.SUCCESS);
+
+        var first = resultSetRepository.findAfter(StatusCode.SCHEDULED, null, 2, true);
+        Assertions.assertEquals(List.of(scheduled1.getId(), scheduled2.getId()), ids(first.rows()));
+        Assertions.assertEquals(scheduled2.getId(), first.nextAfter());
+        Assertions.assertEquals(3L, first.totalCount());
+
+        var last = resultSetRepository.findAfter(StatusCode.SCHEDULED, first.nextAfter(), 2, false);
+        Assertions.assertEquals(List.of(scheduled3.getId()), ids(last.rows()));
+        Assertions.assertNull(last.nextAfter());
+        Assertions.assertNull(last.totalCount());
+
+        // a page that ends exactly at the last row has no next page
+        var all = resultSetRepository.findAfter(null, scheduled3.getId(), 1, true);
+        Assertions.assertEquals(List.of(success2.getId()), ids(all.rows()));
+        Assertions.assertNull(all.nextAfter());
+        Assertions.assertEquals(5L, all.totalCount());
+    }
+
+    private ResultSet save(long plateId, long protocolId, long measId) {
+        return save(plateId, protocolId, measId, StatusCode.SCHEDULED);
+    }
+
+    private ResultSet save(long plateId, long protocolId, long measId, StatusCode outcome) {
+        return resultSetRepository.save(ResultSet.builder()
+            .plateId(plateId)
+            .protocolId(protocolId)
+            .measId(measId)
+            .outcome(outcome)
+            .build());
+    }
+
+    private static List<Long> ids(List<ResultSet> resultSets) {
+        return resultSets.stream().map(ResultSet::getId).toList();
+    }
+
+}
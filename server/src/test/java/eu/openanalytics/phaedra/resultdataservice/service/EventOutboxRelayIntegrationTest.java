@@ -0,0 +1,240 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.support.AbstractIntegrationTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EventOutboxRelayIntegrationTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private NamedParameterJdbcOperations jdbcOperations;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Clock clock;
+
+    @Autowired
+    private EventOutboxService eventOutboxService;
+
+    private final KafkaProducerService kafkaProducerService = mock(KafkaProducerService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * The events that were sent, as "key:resultSetId".
+     */
+    private final List<String> sent = new ArrayList<>();
+
+    /**
+     * The resultSetIds of which the send fails, and the error it fails with.
+     */
+    private final Map<Long, RuntimeException> failures = new HashMap<>();
+
+    private EventOutboxRelay relay;
+
+    @BeforeEach
+    public void initRelay() {
+        when(kafkaProducerService.send(anyString(), any(), anyString(), any())).thenAnswer(invocation -> {
+            var key = invocation.<String>getArgument(1);
+            var resultSet = invocation.<ResultSetDTO>getArgument(3);
+            sent.add(key + ":" + resultSet.getId());
+            var error = failures.get(resultSet.getId());
+            return error == null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.<SendResult<String, Object>>failedFuture(error);
+        });
+        var environment = new MockEnvironment()
+            .withProperty("phaedra2.result-data-service.outbox.batch-size", "100")
+            .withProperty("phaedra2.result-data-service.outbox.max-attempts", "2");
+        relay = new EventOutboxRelay(jdbcOperations, transactionManager, kafkaProducerService, objectMapper, clock, meterRegistry, environment);
+    }
+
+    @Test
+    public void eventsArePublishedInOrderAndDeleted() {
+        append(10L, 1L);
+        append(20L, 2L);
+        append(10L, 3L);
+
+        relay.relay();
+
+        Assertions.assertEquals(List.of("10:1", "20:2", "10:3"), sent);
+        Assertions.assertEquals(0, countEvents());
+    }
+
+    @Test
+    public void aFailedEventHoldsBackTheLaterEventsOfItsResultSet() {
+        append(10L, 1L);
+        append(20L, 2L);
+        append(10L, 3L);
+        failures.put(1L, new org.apache.kafka.common.errors.TimeoutException("broker not available"));
+
+        relay.relay();
+
+        // 3 was published, but stays in the outbox to be published again after 1
+        Assertions.assertEquals(List.of("10:1", "20:2", "10:3"), sent);
+        Assertions.assertEquals(List.of(1L, 3L), remainingEvents());
+        // retriable errors do not count as an attempt
+        Assertions.assertEquals(0, attempts(1L));
+        Assertions.assertTrue(lastError(1L).contains("broker not available"));
+
+        failures.clear();
+        sent.clear();
+        relay.relay();
+
+        Assertions.assertEquals(List.of("10:1", "10:3"), sent);
+        Assertions.assertEquals(0, countEvents());
+    }
+
+    @Test
+    public void eventsThatKeepFailingAreParked() {
+        append(10L, 1L);
+        append(10L, 2L);
+        failures.put(1L, new RecordTooLargeException("too large"));
+
+        relay.relay();
+        Assertions.assertEquals(List.of(1L, 2L), remainingEvents());
+        Assertions.assertEquals(1, attempts(1L));
+        Assertions.assertFalse(isParked(1L));
+
+        relay.relay();
+        Assertions.assertEquals(2, attempts(1L));
+        Assertions.assertTrue(isParked(1L));
+        Assertions.assertEquals(1.0, meterRegistry.counter("phaedra2.outbox.parked", "event", KafkaConfig.EVENT_RESULT_SET_UPDATED).count());
+
+        // the parked event no longer holds back the later events of its ResultSet
+        sent.clear();
+        relay.relay();
+        Assertions.assertEquals(List.of("10:2"), sent);
+        Assertions.assertEquals(List.of(1L), remainingEvents());
+        Assertions.assertTrue(lastError(1L).contains("too large"));
+    }
+
+    @Test
+    public void eventsWithAnUnreadablePayloadAreParked() {
+        jdbcOperations.update("INSERT INTO event_outbox (topic, message_key, event, payload_type, payload, created_timestamp) " +
+            "VALUES ('resultdata', '10', 'resultSetUpdated', 'does.not.Exist', CAST('{}' AS jsonb), now())", Map.of());
+        append(10L, 2L);
+
+        relay.relay();
+
+        Assertions.assertEquals(List.of("10:2"), sent);
+        Assertions.assertEquals(1, countEvents());
+        Assertions.assertEquals(Set.of(true), Set.copyOf(jdbcOperations.queryForList(
+            "SELECT parked_timestamp IS NOT NULL FROM event_outbox", Map.of(), Boolean.class)));
+        Assertions.assertEquals(1.0, meterRegistry.counter("phaedra2.outbox.parked", "event", KafkaConfig.EVENT_RESULT_SET_UPDATED).count());
+    }
+
+    @Test
+    public void onlyOneInstanceRelaysAtATime() throws Exception {
+        append(10L, 1L);
+
+        // another instance holding the lock
+        try (Connection con = dataSource.getConnection()) {
+            try (var stmt = con.prepareStatement("SELECT pg_advisory_lock(?)")) {
+                stmt.setLong(1, EventOutboxRelay.RELAY_LOCK_ID);
+                stmt.execute();
+            }
+            relay.relay();
+            Assertions.assertEquals(List.of(), sent);
+            Assertions.assertEquals(1, countEvents());
+
+            try (var stmt = con.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                stmt.setLong(1, EventOutboxRelay.RELAY_LOCK_ID);
+                stmt.execute();
+            }
+        }
+
+        relay.relay();
+        Assertions.assertEquals(List.of("10:1"), sent);
+        Assertions.assertEquals(0, countEvents());
+    }
+
+    /**
+     * Records a resultSetUpdated event, of which the payload only contains the id of the ResultSet, to identify the
+     * event.
+     */
+    private void append(long key, long id) {
+        eventOutboxService.resultSetUpdated(ResultSetDTO.builder().id(id).build());
+        // the key is the resultSetId, use a separate one to be able to tell the events of a key apart
+        jdbcOperations.update("UPDATE event_outbox SET message_key = :key WHERE id = (SELECT max(id) FROM event_outbox)",
+            Map.of("key", Long.toString(key)));
+    }
+
+    private int countEvents() {
+        return jdbcOperations.queryForObject("SELECT count(*) FROM event_outbox", Map.of(), Integer.class);
+    }
+
+    private List<Long> remainingEvents() {
+        return jdbcOperations.queryForList("SELECT CAST(payload ->> 'id' AS bigint) FROM event_outbox ORDER BY id", Map.of(), Long.class);
+    }
+
+    private int attempts(long id) {
+        return jdbcOperations.queryForObject("SELECT attempts FROM event_outbox WHERE CAST(payload ->> 'id' AS bigint) = :id",
+            Map.of("id", id), Integer.class);
+    }
+
+    private String lastError(long id) {
+        return jdbcOperations.queryForObject("SELECT last_error FROM event_outbox WHERE CAST(payload ->> 'id' AS bigint) = :id",
+            Map.of("id", id), String.class);
+    }
+
+    private boolean isParked(long id) {
+        return jdbcOperations.queryForObject("SELECT parked_timestamp IS NOT NULL FROM event_outbox WHERE CAST(payload ->> 'id' AS bigint) = :id",
+            Map.of("id", id), Boolean.class);
+    }
+
+}
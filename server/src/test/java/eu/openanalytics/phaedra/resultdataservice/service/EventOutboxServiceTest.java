@@ -0,0 +1,121 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataBatchDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatBatchDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+
+public class EventOutboxServiceTest {
+
+    private final NamedParameterJdbcOperations jdbcOperations = mock(NamedParameterJdbcOperations.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private final EventOutboxService eventOutboxService = new EventOutboxService(jdbcOperations, objectMapper, Clock.systemDefaultZone(),
+        new MockEnvironment()
+            .withProperty("phaedra2.result-data-service.kafka.max-values-per-event", "5")
+            .withProperty("phaedra2.result-data-service.kafka.max-feature-stats-per-event", "2"));
+
+    @Test
+    public void resultDataIsSplitInEnvelopesOfAtMostMaxValuesPerEvent() throws Exception {
+        eventOutboxService.resultDataUpdated(1L, List.of(
+            resultData(10L, 2), resultData(11L, 2), resultData(12L, 2), resultData(13L, 6), resultData(14L, 1)));
+
+        var events = recordedEvents();
+        // a ResultData with more values than the maximum gets an envelope of its own
+        Assertions.assertEquals(List.of(List.of(10L, 11L), List.of(12L), List.of(13L), List.of(14L)), Arrays.stream(events)
+            .map(event -> readPayload(event, ResultDataBatchDTO.class).getResultData().stream().map(ResultDataDTO::getId).toList())
+            .toList());
+        for (var event : events) {
+            Assertions.assertEquals(KafkaConfig.TOPIC_RESULTDATA, event.getValue("topic"));
+            Assertions.assertEquals("1", event.getValue("messageKey"));
+            Assertions.assertEquals(KafkaConfig.EVENT_RESULT_DATA_BATCH_UPDATED, event.getValue("event"));
+            Assertions.assertEquals(ResultDataBatchDTO.class.getName(), event.getValue("payloadType"));
+            Assertions.assertEquals(1L, readPayload(event, ResultDataBatchDTO.class).getResultSetId());
+        }
+    }
+
+    @Test
+    public void resultFeatureStatsAreSplitInEnvelopesOfAtMostMaxFeatureStatsPerEvent() throws Exception {
+        eventOutboxService.resultFeatureStatsUpdated(1L, LongStream.range(10, 15)
+            .mapToObj(id -> ResultFeatureStatDTO.builder().id(id).resultSetId(1L).featureId(id).build())
+            .toList());
+
+        var events = recordedEvents();
+        Assertions.assertEquals(List.of(List.of(10L, 11L), List.of(12L, 13L), List.of(14L)), Arrays.stream(events)
+            .map(event -> readPayload(event, ResultFeatureStatBatchDTO.class).getResultFeatureStats().stream().map(ResultFeatureStatDTO::getId).toList())
+            .toList());
+        for (var event : events) {
+            Assertions.assertEquals("1", event.getValue("messageKey"));
+            Assertions.assertEquals(KafkaConfig.EVENT_RESULT_FEATURE_STAT_BATCH_UPDATED, event.getValue("event"));
+            Assertions.assertEquals(ResultFeatureStatBatchDTO.class.getName(), event.getValue("payloadType"));
+        }
+    }
+
+    @Test
+    public void nothingIsRecordedWithoutResultData() {
+        eventOutboxService.resultDataUpdated(1L, List.of());
+        eventOutboxService.resultFeatureStatsUpdated(1L, List.of());
+
+        verifyNoInteractions(jdbcOperations);
+    }
+
+    private SqlParameterSource[] recordedEvents() {
+        var captor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+        verify(jdbcOperations).batchUpdate(anyString(), captor.capture());
+        return captor.getValue();
+    }
+
+    private <T> T readPayload(SqlParameterSource event, Class<T> type) {
+        try {
+            return objectMapper.readValue((String) event.getValue("payload"), type);
+        } catch (Exception ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static ResultDataDTO resultData(long id, int valueCount) {
+        return ResultDataDTO.builder().id(id).resultSetId(1L).featureId(id).values(new float[valueCount]).build();
+    }
+
+}
@@ -0,0 +1,283 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig;
+import eu.openanalytics.phaedra.resultdataservice.config.ResultEventFormat;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.exception.ResultSetNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+public class KafkaConsumerServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final ResultDataService resultDataService = mock(ResultDataService.class);
+    private final ResultFeatureStatService resultFeatureStatService = mock(ResultFeatureStatService.class);
+    private final ReferenceDataCache referenceDataCache = mock(ReferenceDataCache.class);
+    private final ResultSetCache resultSetCache = mock(ResultSetCache.class);
+    private final DeadLetterPublishingRecoverer deadLetterPublishingRecoverer = mock(DeadLetterPublishingRecoverer.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final MappingJackson2CborHttpMessageConverter cborHttpMessageConverter = new MappingJackson2CborHttpMessageConverter();
+
+    private final KafkaConsumerService kafkaConsumerService = new KafkaConsumerService(resultDataService, resultFeatureStatService, referenceDataCache,
+        resultSetCache, deadLetterPublishingRecoverer, objectMapper, cborHttpMessageConverter, meterRegistry);
+
+    private long offset;
+
+    @Test
+    public void batchIsWrittenOncePerResultSet() throws Exception {
+        var records = List.of(
+            saveResultData(resultData(1L, 10L)),
+            saveResultData(resultData(2L, 10L)),
+            saveResultData(resultData(1L, 11L)));
+        var groups = new ArrayList<String>();
+        doAnswer(inv -> {
+            List<ResultDataDTO> items = inv.getArgument(1);
+            groups.add(inv.getArgument(0) + ":" + items.stream().map(ResultDataDTO::getFeatureId).toList());
+            return items;
+        }).when(resultDataService).create(anyLong(), anyList());
+
+        kafkaConsumerService.onResultDataTopicEvents(records);
+
+        Assertions.assertEquals(List.of("1:[10, 11]", "2:[10]"), groups);
+        verify(deadLetterPublishingRecoverer, never()).accept(any(), any());
+        Assertions.assertEquals(3.0, recordCount("saved"));
+        Assertions.assertEquals(0.0, recordCount("dead-letter"));
+    }
+
+    @Test
+    public void failedGroupIsRetriedOneByOneAndOnlyTheFailingRecordIsDeadLettered() throws Exception {
+        var good = saveResultData(resultData(1L, 10L));
+        var bad = saveResultData(resultData(1L, 11L));
+        var other = saveResultData(resultData(2L, 10L));
+        doAnswer(inv -> {
+            List<ResultDataDTO> items = inv.getArgument(1);
+            if (items.stream().anyMatch(rd -> rd.getFeatureId() == 11L)) {
+                throw new IllegalStateException("Cannot write feature 11");
+            }
+            return items;
+        }).when(resultDataService).create(anyLong(), anyList());
+
+        kafkaConsumerService.onResultDataTopicEvents(List.of(good, bad, other));
+
+        verify(resultDataService).create(eq(1L), eq(List.of(resultData(1L, 10L))));
+        verify(resultDataService).create(eq(2L), eq(List.of(resultData(2L, 10L))));
+        verify(deadLetterPublishingRecoverer).accept(eq(bad), any(IllegalStateException.class));
+        verify(deadLetterPublishingRecoverer, never()).accept(eq(good), any());
+        verify(deadLetterPublishingRecoverer, never()).accept(eq(other), any());
+        Assertions.assertEquals(2.0, recordCount("saved"));
+        Assertions.assertEquals(1.0, recordCount("dead-letter"));
+    }
+
+    @Test
+    public void failingDeadLetterTopicDoesNotFailTheBatch() throws Exception {
+        var good = saveResultData(resultData(1L, 10L));
+        var bad = saveResultData(resultData(null, 10L));
+        var otherBad = saveResultData(resultData(null, 11L));
+        when(resultDataService.create(anyLong(), anyList())).thenAnswer(inv -> inv.getArgument(1));
+        doThrow(new KafkaException("Dead-letter topic not available")).when(deadLetterPublishingRecoverer).accept(any(), any());
+
+        kafkaConsumerService.onResultDataTopicEvents(List.of(bad, good, otherBad));
+
+        // the saved group is not written again, the dead letters are published after it
+        var inOrder = inOrder(resultDataService, deadLetterPublishingRecoverer);
+        inOrder.verify(resultDataService).create(eq(1L), eq(List.of(resultData(1L, 10L))));
+        inOrder.verify(deadLetterPublishingRecoverer).accept(eq(bad), any());
+        inOrder.verify(deadLetterPublishingRecoverer).accept(eq(otherBad), any());
+        verifyNoMoreInteractions(resultDataService);
+        Assertions.assertEquals(2.0, meterRegistry.get("phaedra2.kafka.consume.dead-letter.failures")
+            .tag("event", KafkaConfig.EVENT_SAVE_RESULT_DATA).counter().count());
+    }
+
+    @Test
+    public void missingResultSetDeadLettersTheGroupWithoutRetrying() throws Exception {
+        var first = saveResultData(resultData(1L, 10L));
+        var second = saveResultData(resultData(1L, 11L));
+        when(resultDataService.create(eq(1L), anyList())).thenThrow(new ResultSetNotFoundException(1L));
+
+        kafkaConsumerService.onResultDataTopicEvents(List.of(first, second));
+
+        verify(resultDataService).create(eq(1L), anyList());
+        verify(deadLetterPublishingRecoverer).accept(eq(first), any(ResultSetNotFoundException.class));
+        verify(deadLetterPublishingRecoverer).accept(eq(second), any(ResultSetNotFoundException.class));
+    }
+
+    @Test
+    public void recordWithoutResultSetIdIsDeadLettered() throws Exception {
+        var invalid = saveResultData(resultData(null, 10L));
+        var valid = saveResultData(resultData(1L, 10L));
+        when(resultDataService.create(anyLong(), anyList())).thenAnswer(inv -> inv.getArgument(1));
+
+        kafkaConsumerService.onResultDataTopicEvents(List.of(invalid, valid));
+
+        verify(deadLetterPublishingRecoverer).accept(eq(invalid), any(IllegalArgumentException.class));
+        verify(resultDataService).create(eq(1L), eq(List.of(resultData(1L, 10L))));
+    }
+
+    @Test
+    public void unroutedEventsAreSkippedWithoutParsingThem() {
+        // not valid JSON, parsing it would send it to the dead-letter topic
+        var payload = "not parsed".getBytes(StandardCharsets.UTF_8);
+        var updated = new ConsumerRecord<>(KafkaConfig.TOPIC_RESULTDATA, 0, offset++, "10", payload);
+        updated.headers().add(KafkaConfig.HEADER_EVENT_TYPE, KafkaConfig.EVENT_RESULT_SET_UPDATED.getBytes(StandardCharsets.UTF_8));
+        // published by an older version, keyed by the event type
+        var olderUpdated = new ConsumerRecord<>(KafkaConfig.TOPIC_RESULTDATA, 0, offset++, KafkaConfig.EVENT_RESULT_DATA_UPDATED, payload);
+
+        kafkaConsumerService.onResultDataTopicEvents(List.of(updated, olderUpdated));
+
+        verifyNoInteractions(resultDataService, resultFeatureStatService, deadLetterPublishingRecoverer);
+        Assertions.assertEquals(2.0, meterRegistry.get("phaedra2.kafka.consume.skipped.records").counter().count());
+        Assertions.assertEquals(2.0 * payload.length, meterRegistry.get("phaedra2.kafka.consume.skipped.bytes").counter().count());
+    }
+
+    @Test
+    public void eventsAreRoutedByTheirEventTypeHeader() throws Exception {
+        var featureStat = ResultFeatureStatDTO.builder().resultSetId(1L).featureId(10L).featureStatId(100L).value(0.5F).build();
+        var rec = new ConsumerRecord<>(KafkaConfig.TOPIC_RESULTDATA, 0, offset++, "1", objectMapper.writeValueAsBytes(featureStat));
+        rec.headers().add(KafkaConfig.HEADER_EVENT_TYPE, KafkaConfig.EVENT_SAVE_RESULT_STATS.getBytes(StandardCharsets.UTF_8));
+
+        kafkaConsumerService.onResultDataTopicEvents(List.of(rec));
+
+        verify(resultFeatureStatService).create(eq(1L), eq(List.of(featureStat)));
+        verifyNoInteractions(resultDataService, deadLetterPublishingRecoverer);
+        Assertions.assertEquals(0.0, meterRegistry.get("phaedra2.kafka.consume.skipped.records").counter().count());
+    }
+
+    @Test
+    public void cborAndJsonEventsAreDecoded() throws Exception {
+        var cbor = new ConsumerRecord<>(KafkaConfig.TOPIC_RESULTDATA, 0, offset++, KafkaConfig.EVENT_SAVE_RESULT_DATA,
+            cborHttpMessageConverter.getObjectMapper().writeValueAsBytes(resultData(1L, 10L)));
+        cbor.headers().add(ResultEventFormat.HEADER_CONTENT_TYPE, ResultEventFormat.CBOR_CONTENT_TYPE.getBytes(StandardCharsets.UTF_8));
+        cbor.headers().add(ResultEventFormat.HEADER_PAYLOAD_TYPE, ResultDataDTO.class.getSimpleName().getBytes(StandardCharsets.UTF_8));
+        cbor.headers().add(ResultEventFormat.HEADER_SCHEMA_VERSION, String.valueOf(ResultEventFormat.SCHEMA_VERSION).getBytes(StandardCharsets.UTF_8));
+        var json = saveResultData(resultData(1L, 11L));
+
+        kafkaConsumerService.onResultDataTopicEvents(List.of(cbor, json));
+
+        verify(resultDataService).create(eq(1L), eq(List.of(resultData(1L, 10L), resultData(1L, 11L))));
+        verify(deadLetterPublishingRecoverer, never()).accept(any(), any());
+    }
+
+    @Test
+    public void deadLetterTopicGetsTheOriginalBytes() {
+        var payload = "{\"resultSetId\": ".getBytes(StandardCharsets.UTF_8);
+        var rec = new ConsumerRecord<>(KafkaConfig.TOPIC_RESULTDATA, 0, offset++, KafkaConfig.EVENT_SAVE_RESULT_DATA, payload);
+
+        kafkaConsumerService.onResultDataTopicEvents(List.of(rec));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<ConsumerRecord<?, ?>> captor = ArgumentCaptor.forClass(ConsumerRecord.class);
+        verify(deadLetterPublishingRecoverer).accept(captor.capture(), any());
+        Assertions.assertArrayEquals("{\"resultSetId\": ".getBytes(StandardCharsets.UTF_8), (byte[]) captor.getValue().value());
+        Assertions.assertEquals(KafkaConfig.EVENT_SAVE_RESULT_DATA, captor.getValue().key());
+        Assertions.assertEquals(1.0, recordCount("dead-letter"));
+    }
+
+    @Test
+    public void resultSetDeletedEventsInvalidateTheCachedResultSet() {
+        var deleted = new ConsumerRecord<String, Object>(KafkaConfig.TOPIC_RESULTDATA, 0, 0, "5", "{}".getBytes(StandardCharsets.UTF_8));
+        deleted.headers().add(KafkaConfig.HEADER_EVENT_TYPE, KafkaConfig.EVENT_RESULT_SET_DELETED.getBytes(StandardCharsets.UTF_8));
+        var updated = new ConsumerRecord<String, Object>(KafkaConfig.TOPIC_RESULTDATA, 0, 1, "6", "{}".getBytes(StandardCharsets.UTF_8));
+        updated.headers().add(KafkaConfig.HEADER_EVENT_TYPE, KafkaConfig.EVENT_RESULT_SET_UPDATED.getBytes(StandardCharsets.UTF_8));
+
+        kafkaConsumerService.onResultSetEvent(deleted);
+        kafkaConsumerService.onResultSetEvent(updated);
+
+        verify(resultSetCache).invalidate(5L);
+        verifyNoMoreInteractions(resultSetCache);
+    }
+
+    @Test
+    public void plateEventsInvalidateTheCachedWells() {
+        kafkaConsumerService.onPlateEvent(new ConsumerRecord<>(KafkaConfig.TOPIC_PLATES, 0, 0, "plateUpdated", Map.of("id", 5)));
+        kafkaConsumerService.onPlateEvent(new ConsumerRecord<>(KafkaConfig.TOPIC_PLATES, 0, 1, "wellUpdated", "{\"id\": 100, \"plateId\": \"6\"}"));
+        kafkaConsumerService.onPlateEvent(new ConsumerRecord<>(KafkaConfig.TOPIC_PLATES, 0, 2, "plateUpdated", null));
+
+        verify(referenceDataCache).invalidateWells(5L);
+        verify(referenceDataCache).invalidateWells(6L);
+        verifyNoMoreInteractions(referenceDataCache);
+    }
+
+    @Test
+    public void protocolEventsInvalidateTheCachedProtocol() {
+        kafkaConsumerService.onProtocolEvent(new ConsumerRecord<>(KafkaConfig.TOPIC_PROTOCOLS, 0, 0, "protocolUpdated", Map.of("id", 7)));
+        kafkaConsumerService.onProtocolEvent(new ConsumerRecord<>(KafkaConfig.TOPIC_PROTOCOLS, 0, 1, "featureUpdated",
+            "{\"id\": 300, \"protocolId\": 8}".getBytes(StandardCharsets.UTF_8)));
+
+        verify(referenceDataCache).invalidateProtocol(7L);
+        verify(referenceDataCache).invalidateProtocol(8L);
+        verifyNoMoreInteractions(referenceDataCache);
+    }
+
+    private ConsumerRecord<String, byte[]> saveResultData(ResultDataDTO resultData) throws Exception {
+        return new ConsumerRecord<>(KafkaConfig.TOPIC_RESULTDATA, 0, offset++, KafkaConfig.EVENT_SAVE_RESULT_DATA,
+            objectMapper.writeValueAsString(resultData).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ResultDataDTO resultData(Long resultSetId, long featureId) {
+        return ResultDataDTO.builder()
+            .resultSetId(resultSetId)
+            .featureId(featureId)
+            .values(new float[]{1.0F, 2.0F})
+            .statusCode(StatusCode.SUCCESS)
+            .statusMessage("Ok")
+            .exitCode(0)
+            .build();
+    }
+
+    private double recordCount(String outcome) {
+        return meterRegistry.get("phaedra2.kafka.consume.records")
+            .tag("event", KafkaConfig.EVENT_SAVE_RESULT_DATA)
+            .tag("outcome", outcome)
+            .counter().count();
+    }
+
+}
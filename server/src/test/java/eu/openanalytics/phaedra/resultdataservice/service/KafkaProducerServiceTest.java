@@ -0,0 +1,122 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class KafkaProducerServiceTest {
+
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, Object> kafkaTemplate = mock(KafkaTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final KafkaProducerService kafkaProducerService = new KafkaProducerService(kafkaTemplate, meterRegistry);
+
+    @Test
+    public void acknowledgedSendsAreTimed() {
+        var result = new SettableListenableFuture<SendResult<String, Object>>();
+        result.set(null);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(result);
+
+        kafkaProducerService.send(KafkaConfig.TOPIC_RESULTDATA, "1", KafkaConfig.EVENT_RESULT_SET_UPDATED, "payload").join();
+
+        Assertions.assertEquals(1, meterRegistry.get("phaedra2.kafka.produce").tag("outcome", "success").timer().count());
+        Assertions.assertNull(meterRegistry.find("phaedra2.kafka.produce.failures").counter());
+    }
+
+    @Test
+    public void sendsRejectedByTheBrokerAreCounted() {
+        var result = new SettableListenableFuture<SendResult<String, Object>>();
+        result.setException(new RecordTooLargeException("too large"));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(result);
+
+        var future = kafkaProducerService.send(KafkaConfig.TOPIC_RESULTDATA, "1", KafkaConfig.EVENT_RESULT_SET_UPDATED, "payload");
+
+        var ex = Assertions.assertThrows(CompletionException.class, future::join);
+        Assertions.assertInstanceOf(RecordTooLargeException.class, ex.getCause());
+        Assertions.assertEquals(1.0, meterRegistry.get("phaedra2.kafka.produce.failures").tag("event", KafkaConfig.EVENT_RESULT_SET_UPDATED).counter().count());
+        Assertions.assertEquals(1, meterRegistry.get("phaedra2.kafka.produce").tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    public void sendsThatCannotBeStartedAreCounted() {
+        // e.g. the producer buffer stayed full for max.block.ms
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenThrow(new IllegalStateException("buffer full"));
+
+        var future = kafkaProducerService.send(KafkaConfig.TOPIC_RESULTDATA, "1", KafkaConfig.EVENT_RESULT_DATA_BATCH_UPDATED, "payload");
+
+        Assertions.assertTrue(future.isCompletedExceptionally());
+        Assertions.assertEquals(1.0, meterRegistry.get("phaedra2.kafka.produce.failures").tag("event", KafkaConfig.EVENT_RESULT_DATA_BATCH_UPDATED).counter().count());
+    }
+
+    @Test
+    public void eventsAreKeyedByResultSetIdWithTheEventTypeAsHeader() {
+        var rec = send("10", KafkaConfig.EVENT_RESULT_DATA_BATCH_UPDATED);
+
+        Assertions.assertEquals(KafkaConfig.TOPIC_RESULTDATA, rec.topic());
+        Assertions.assertEquals("10", rec.key());
+        Assertions.assertEquals(KafkaConfig.EVENT_RESULT_DATA_BATCH_UPDATED, eventTypeHeader(rec));
+    }
+
+    @Test
+    public void eventsWithoutResultSetAreKeyedByEventType() {
+        var rec = send(null, KafkaConfig.EVENT_RESULT_SET_UPDATED);
+
+        Assertions.assertEquals(KafkaConfig.EVENT_RESULT_SET_UPDATED, rec.key());
+        Assertions.assertEquals(KafkaConfig.EVENT_RESULT_SET_UPDATED, eventTypeHeader(rec));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProducerRecord<String, Object> send(String key, String event) {
+        var result = new SettableListenableFuture<SendResult<String, Object>>();
+        result.set(null);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(result);
+
+        kafkaProducerService.send(KafkaConfig.TOPIC_RESULTDATA, key, event, "payload").join();
+
+        var captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(captor.capture());
+        return captor.getValue();
+    }
+
+    private static String eventTypeHeader(ProducerRecord<String, Object> rec) {
+        return new String(rec.headers().lastHeader(KafkaConfig.HEADER_EVENT_TYPE).value(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import eu.openanalytics.phaedra.plateservice.client.PlateServiceClient;
+import eu.openanalytics.phaedra.plateservice.dto.WellDTO;
+import eu.openanalytics.phaedra.protocolservice.client.ProtocolServiceClient;
+import eu.openanalytics.phaedra.protocolservice.dto.ProtocolDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ReferenceDataCacheTest {
+
+    private final PlateServiceClient plateServiceClient = mock(PlateServiceClient.class);
+    private final ProtocolServiceClient protocolServiceClient = mock(ProtocolServiceClient.class);
+    private final RemoteLookupExecutor remoteLookupExecutor = new RemoteLookupExecutor(new MockEnvironment());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ReferenceDataCache referenceDataCache = new ReferenceDataCache(plateServiceClient, protocolServiceClient,
+        remoteLookupExecutor, new MockEnvironment(), meterRegistry);
+
+    @AfterEach
+    public void destroy() {
+        SecurityContextHolder.clearContext();
+        remoteLookupExecutor.destroy();
+    }
+
+    @Test
+    public void wellsAreLoadedOncePerUser() throws Exception {
+        var wells = List.of(WellDTO.builder().id(100L).build());
+        when(plateServiceClient.getWells(1L)).thenReturn(wells);
+
+        loginAs("alice");
+        Assertions.assertEquals(wells, referenceDataCache.getWells(1L).join());
+        Assertions.assertEquals(wells, referenceDataCache.getWells(1L).join());
+        verify(plateServiceClient, times(1)).getWells(1L);
+
+        // an entry loaded with the token of one user is not served to another one
+        loginAs("bob");
+        Assertions.assertEquals(wells, referenceDataCache.getWells(1L).join());
+        verify(plateServiceClient, times(2)).getWells(1L);
+
+        Assertions.assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "wells").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    public void invalidateWellsAppliesToAllUsers() throws Exception {
+        when(plateServiceClient.getWells(1L)).thenReturn(List.of());
+        when(plateServiceClient.getWells(2L)).thenReturn(List.of());
+        loginAs("alice");
+        referenceDataCache.getWells(1L).join();
+        referenceDataCache.getWells(2L).join();
+        loginAs("bob");
+        referenceDataCache.getWells(1L).join();
+
+        referenceDataCache.invalidateWells(1L);
+
+        referenceDataCache.getWells(1L).join();
+        loginAs("alice");
+        referenceDataCache.getWells(1L).join();
+        referenceDataCache.getWells(2L).join();
+        verify(plateServiceClient, times(4)).getWells(1L);
+        verify(plateServiceClient, times(1)).getWells(2L);
+    }
+
+    @Test
+    public void invalidateProtocolAppliesToAllUsers() throws Exception {
+        var protocol = ProtocolDTO.builder().id(7L).name("Protocol").build();
+        when(protocolServiceClient.getProtocol(7L)).thenReturn(protocol);
+        loginAs("alice");
+        Assertions.assertEquals(protocol, referenceDataCache.getProtocol(7L).join());
+        Assertions.assertEquals(protocol, referenceDataCache.getProtocol(7L).join());
+        verify(protocolServiceClient, times(1)).getProtocol(7L);
+
+        referenceDataCache.invalidateProtocol(7L);
+
+        referenceDataCache.getProtocol(7L).join();
+        verify(protocolServiceClient, times(2)).getProtocol(7L);
+    }
+
+    private static void loginAs(String user) {
+        SecurityContextHolder.setContext(new SecurityContextImpl(new TestingAuthenticationToken(user, null)));
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class RemoteLookupExecutorTest {
+
+    private final RemoteLookupExecutor remoteLookupExecutor = new RemoteLookupExecutor(new MockEnvironment());
+
+    @AfterEach
+    public void destroy() {
+        remoteLookupExecutor.destroy();
+    }
+
+    @Test
+    public void callPastItsTimeoutIsReportedAsTimeoutAndInterrupted() throws Exception {
+        var interrupted = new CountDownLatch(1);
+        var lookup = remoteLookupExecutor.supplyAsync(() -> blockUntilInterrupted(interrupted), Duration.ofMillis(100));
+
+        var ex = Assertions.assertThrows(ExecutionException.class, () -> lookup.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(TimeoutException.class, ex.getCause());
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS), "The call was not interrupted");
+    }
+
+    @Test
+    public void callWithinItsTimeoutCompletes() throws Exception {
+        var lookup = remoteLookupExecutor.supplyAsync(() -> "plate", Duration.ofSeconds(5));
+        Assertions.assertEquals("plate", lookup.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void checkedExceptionsAreWrapped() {
+        var lookup = remoteLookupExecutor.supplyAsync(() -> {
+            throw new Exception("plate not found");
+        });
+
+        var ex = Assertions.assertThrows(ExecutionException.class, () -> lookup.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("plate not found", ex.getCause().getMessage());
+    }
+
+    @Test
+    public void remainingCallsAreCancelledWhenOneFails() throws Exception {
+        var interrupted = new CountDownLatch(1);
+        var slowLookup = remoteLookupExecutor.supplyAsync(() -> blockUntilInterrupted(interrupted));
+        var failingLookup = remoteLookupExecutor.<String>supplyAsync(() -> {
+            throw new IllegalStateException("plate service unavailable");
+        });
+        RemoteLookupExecutor.cancelOnFailure(List.of(slowLookup, failingLookup));
+
+        Assertions.assertThrows(CancellationException.class, () -> slowLookup.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS), "The call was not interrupted");
+    }
+
+    private static String blockUntilInterrupted(CountDownLatch interrupted) {
+        try {
+            Thread.sleep(Duration.ofMinutes(1).toMillis());
+            return "too late";
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.model.ResultData;
+import eu.openanalytics.phaedra.resultdataservice.repository.ResultDataRowMapper;
+import eu.openanalytics.phaedra.resultdataservice.support.AbstractIntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies that the binary COPY encoding of {@link CopyResultDataWriter} stores exactly the same rows as the
+ * {@link JdbcBatchResultDataWriter}.
+ */
+public class ResultDataWriterIntegrationTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private NamedParameterJdbcOperations jdbcOperations;
+
+    @Test
+    public void copyWriterStoresTheSameRowsAsBatchWriter() throws Exception {
+        var resultSet = performRequest(post("/resultsets", ResultSetDTO.builder().protocolId(1L).plateId(2L).measId(3L).build()),
+            HttpStatus.CREATED, ResultSetDTO.class);
+
+        var batchRows = new JdbcBatchResultDataWriter(dataSource).write(rows(resultSet.getId()));
+        var copyRows = new CopyResultDataWriter(dataSource).write(rows(resultSet.getId()));
+        Assertions.assertEquals(4, batchRows.size());
+        Assertions.assertEquals(4, copyRows.size());
+
+        var batchRead = read(batchRows);
+        var copyRead = read(copyRows);
+        for (int i = 0; i < batchRead.size(); i++) {
+            var expected = batchRead.get(i);
+            var actual = copyRead.get(i);
+            Assertions.assertEquals(copyRows.get(i).getId(), actual.getId());
+            Assertions.assertEquals(expected.getResultSetId(), actual.getResultSetId());
+            Assertions.assertEquals(expected.getFeatureId(), actual.getFeatureId());
+            Assertions.assertArrayEquals(expected.getValues(), actual.getValues());
+            Assertions.assertEquals(expected.getStatusCode(), actual.getStatusCode());
+            Assertions.assertEquals(expected.getStatusMessage(), actual.getStatusMessage());
+            Assertions.assertEquals(expected.getExitCode(), actual.getExitCode());
+            Assertions.assertEquals(expected.getCreatedTimestamp(), actual.getCreatedTimestamp());
+        }
+
+        // NaN is how a missing well value (a null array element) is represented in a float[]
+        Assertions.assertTrue(Float.isNaN(copyRead.get(1).getValues()[1]));
+        Assertions.assertNull(copyRead.get(2).getValues());
+        Assertions.assertNull(copyRead.get(2).getStatusMessage());
+        Assertions.assertEquals(0, copyRead.get(3).getValues().length);
+
+        // Both writers store NaN elements as NaN, not as NULL elements
+        var nullElements = jdbcOperations.queryForList("SELECT id FROM result_data WHERE array_position(\"values\", NULL) IS NOT NULL", Map.of(), Long.class);
+        Assertions.assertEquals(List.of(), nullElements);
+    }
+
+    private static List<ResultData> rows(long resultSetId) {
+        var timestamp = LocalDateTime.of(2042, 12, 31, 23, 59, 59, 123456000);
+        return List.of(
+            row(resultSetId, 1L, new float[]{1.0F, -2.5F, Float.MAX_VALUE, Float.MIN_VALUE}, StatusCode.SUCCESS, "Ok", 0, timestamp),
+            row(resultSetId, 2L, new float[]{1.0F, Float.NaN, 3.0F}, StatusCode.SUCCESS, "Ok", 0, timestamp),
+            row(resultSetId, 3L, null, StatusCode.FAILURE, null, 1, timestamp),
+            row(resultSetId, 4L, new float[0], StatusCode.SUCCESS, "", 0, timestamp.plusDays(1)));
+    }
+
+    private static ResultData row(long resultSetId, long featureId, float[] values, StatusCode statusCode, String statusMessage, int exitCode, LocalDateTime timestamp) {
+        return ResultData.builder()
+            .resultSetId(resultSetId)
+            .featureId(featureId)
+            .values(values)
+            .statusCode(statusCode)
+            .statusMessage(statusMessage)
+            .exitCode(exitCode)
+            .createdTimestamp(timestamp)
+            .build();
+    }
+
+    private List<ResultData> read(List<ResultData> written) {
+        var ids = written.stream().map(ResultData::getId).toList();
+        return jdbcOperations.query("SELECT * FROM result_data WHERE id IN (:ids) ORDER BY id", Map.of("ids", ids), new ResultDataRowMapper());
+    }
+
+}
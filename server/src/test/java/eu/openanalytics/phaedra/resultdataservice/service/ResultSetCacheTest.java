@@ -0,0 +1,95 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class ResultSetCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ResultSetCache resultSetCache = new ResultSetCache(new MockEnvironment(), meterRegistry);
+
+    @Test
+    public void onlyCompletedResultSetsAreCached() {
+        var scheduled = resultSet(1L, StatusCode.SCHEDULED);
+        resultSetCache.putResultSet(scheduled);
+        resultSetCache.putResultData(scheduled.getOutcome(), resultData(1L, 42L));
+        Assertions.assertNull(resultSetCache.getResultSet(1L));
+        Assertions.assertNull(resultSetCache.getResultData(1L, 42L));
+
+        var completed = resultSet(2L, StatusCode.SUCCESS);
+        var resultData = resultData(2L, 42L);
+        resultSetCache.putResultSet(completed);
+        resultSetCache.putResultData(completed.getOutcome(), resultData);
+        Assertions.assertSame(completed, resultSetCache.getResultSet(2L));
+        Assertions.assertSame(resultData, resultSetCache.getResultData(2L, 42L));
+        Assertions.assertNull(resultSetCache.getResultData(2L, 43L));
+    }
+
+    @Test
+    public void invalidateRemovesResultSetAndResultData() {
+        var completed1 = resultSet(1L, StatusCode.SUCCESS);
+        var completed2 = resultSet(2L, StatusCode.FAILURE);
+        resultSetCache.putResultSet(completed1);
+        resultSetCache.putResultSet(completed2);
+        resultSetCache.putResultData(completed1.getOutcome(), resultData(1L, 42L));
+        resultSetCache.putResultData(completed1.getOutcome(), resultData(1L, 43L));
+        resultSetCache.putResultData(completed2.getOutcome(), resultData(2L, 42L));
+
+        resultSetCache.invalidate(1L);
+
+        Assertions.assertNull(resultSetCache.getResultSet(1L));
+        Assertions.assertNull(resultSetCache.getResultData(1L, 42L));
+        Assertions.assertNull(resultSetCache.getResultData(1L, 43L));
+        Assertions.assertNotNull(resultSetCache.getResultSet(2L));
+        Assertions.assertNotNull(resultSetCache.getResultData(2L, 42L));
+    }
+
+    @Test
+    public void hitsAndMissesAreExposedAsMetrics() {
+        resultSetCache.putResultSet(resultSet(1L, StatusCode.SUCCESS));
+        resultSetCache.getResultSet(1L);
+        resultSetCache.getResultSet(2L);
+
+        Assertions.assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "resultSets").tag("result", "hit").functionCounter().count());
+        Assertions.assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "resultSets").tag("result", "miss").functionCounter().count());
+    }
+
+    private static ResultSetDTO resultSet(long id, StatusCode outcome) {
+        return ResultSetDTO.builder().id(id).protocolId(1L).plateId(2L).measId(3L).outcome(outcome).build();
+    }
+
+    private static ResultDataDTO resultData(long resultSetId, long featureId) {
+        return ResultDataDTO.builder()
+            .resultSetId(resultSetId)
+            .featureId(featureId)
+            .values(new float[]{1.0F, 2.0F, 3.0F})
+            .statusCode(StatusCode.SUCCESS)
+            .build();
+    }
+
+}
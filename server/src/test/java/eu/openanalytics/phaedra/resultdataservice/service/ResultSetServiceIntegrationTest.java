@@ -0,0 +1,86 @@
+/**
+ * Phaedra II
+ *
+ * Copyright (C) 2016-2023 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.phaedra.resultdataservice.service;
+
+import eu.openanalytics.phaedra.resultdataservice.config.KafkaConfig;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
+import eu.openanalytics.phaedra.resultdataservice.support.AbstractIntegrationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+public class ResultSetServiceIntegrationTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private ResultSetService resultSetService;
+
+    @Autowired
+    private ResultSetCache resultSetCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private NamedParameterJdbcOperations jdbcOperations;
+
+    @Test
+    public void completedResultSetIsOnlyCachedOnceCommitted() throws Exception {
+        var resultSet = resultSetService.create(ResultSetDTO.builder().protocolId(1L).plateId(2L).measId(3L).build());
+        var completion = ResultSetDTO.builder().id(resultSet.getId()).outcome(StatusCode.SUCCESS).build();
+
+        // e.g. the commit fails
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                resultSetService.updateOutcome(completion);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+            Assertions.assertNull(resultSetCache.getResultSet(resultSet.getId()));
+            status.setRollbackOnly();
+        });
+        Assertions.assertNull(resultSetCache.getResultSet(resultSet.getId()));
+        Assertions.assertEquals(StatusCode.SCHEDULED, resultSetService.getResultSetById(resultSet.getId()).getOutcome());
+
+        resultSetService.updateOutcome(completion);
+        Assertions.assertEquals(StatusCode.SUCCESS, resultSetCache.getResultSet(resultSet.getId()).getOutcome());
+    }
+
+    @Test
+    public void deleteEvictsTheResultSetAndRecordsAnEventForTheOtherInstances() throws Exception {
+        var resultSet = resultSetService.create(ResultSetDTO.builder().protocolId(1L).plateId(2L).measId(3L).build());
+        resultSetService.updateOutcome(ResultSetDTO.builder().id(resultSet.getId()).outcome(StatusCode.SUCCESS).build());
+        Assertions.assertNotNull(resultSetCache.getResultSet(resultSet.getId()));
+
+        resultSetService.delete(resultSet.getId());
+
+        Assertions.assertNull(resultSetCache.getResultSet(resultSet.getId()));
+        Assertions.assertEquals(List.of(resultSet.getId().toString()), jdbcOperations.queryForList(
+            "SELECT message_key FROM event_outbox WHERE event = :event", Map.of("event", KafkaConfig.EVENT_RESULT_SET_DELETED), String.class));
+    }
+
+}
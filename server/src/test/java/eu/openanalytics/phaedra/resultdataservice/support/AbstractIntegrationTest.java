@@ -28,6 +28,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import eu.openanalytics.phaedra.resultdataservice.ResultDataServiceApplication;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultDataDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultFeatureStatDTO;
+import eu.openanalytics.phaedra.resultdataservice.dto.ResultSetDTO;
+import eu.openanalytics.phaedra.resultdataservice.enumeration.StatusCode;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -51,6 +55,8 @@ import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
 
 
 @Testcontainers
@@ -86,6 +92,9 @@ abstract public class AbstractIntegrationTest {
     @Autowired
     private DataSource dataSource;
 
+    @Autowired
+    protected QueryCountingDataSource queryCountingDataSource;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     /**
@@ -100,6 +109,9 @@ abstract public class AbstractIntegrationTest {
             try (PreparedStatement stmt = con.prepareStatement("TRUNCATE result_set RESTART IDENTITY CASCADE;")) {
                 stmt.executeUpdate();
             }
+            try (PreparedStatement stmt = con.prepareStatement("TRUNCATE event_outbox RESTART IDENTITY;")) {
+                stmt.executeUpdate();
+            }
         }
     }
 
@@ -140,6 +152,16 @@ abstract public class AbstractIntegrationTest {
         return null;
     }
 
+    /**
+     * Performs the request and asserts the number of database queries that were executed to handle it.
+     */
+    protected String performRequest(RequestBuilder requestBuilder, HttpStatus responseStatusCode, int expectedQueryCount) throws Exception {
+        queryCountingDataSource.reset();
+        var res = performRequest(requestBuilder, responseStatusCode);
+        Assertions.assertEquals(expectedQueryCount, queryCountingDataSource.getQueryCount(), "Unexpected number of queries");
+        return res;
+    }
+
     protected RequestBuilder post(String url, Object input) throws JsonProcessingException {
         return MockMvcRequestBuilders.post(url)
             .contentType("application/json")
@@ -152,4 +174,44 @@ abstract public class AbstractIntegrationTest {
             .content(om.writeValueAsString(input));
     }
 
+    /**
+     * Creates a ResultSet using the API, and returns its id.
+     */
+    protected long createResultSet(long protocolId, long plateId, long measId) throws Exception {
+        var input = ResultSetDTO.builder().protocolId(protocolId).plateId(plateId).measId(measId).build();
+        return performRequest(post("/resultsets", input), HttpStatus.CREATED, ResultSetDTO.class).getId();
+    }
+
+    protected void createResultData(long resultSetId, long featureId) throws Exception {
+        createResultData(resultSetId, featureId, new float[]{1.0F, 2.0F, 3.0F});
+    }
+
+    protected void createResultData(long resultSetId, long featureId, float[] values) throws Exception {
+        var input = ResultDataDTO.builder()
+            .exitCode(0)
+            .statusCode(StatusCode.SUCCESS)
+            .statusMessage("Ok")
+            .featureId(featureId)
+            .values(values)
+            .build();
+        performRequest(post("/resultsets/" + resultSetId + "/resultdata", input), HttpStatus.CREATED, ResultDataDTO.class);
+    }
+
+    /**
+     * Creates a ResultFeatureStat for every feature using the API, and returns their ids in ascending order.
+     */
+    protected List<Long> createResultFeatureStats(long resultSetId, long... featureIds) throws Exception {
+        var input = Arrays.stream(featureIds).mapToObj(featureId -> ResultFeatureStatDTO.builder()
+            .exitCode(0)
+            .statusCode(StatusCode.SUCCESS)
+            .statusMessage("Ok")
+            .featureId(featureId)
+            .featureStatId(45L)
+            .statisticName("count")
+            .value(2f)
+            .build()).toList();
+        var created = performRequest(post("/resultsets/" + resultSetId + "/resultfeaturestats", input), HttpStatus.CREATED, ResultFeatureStatDTO[].class);
+        return Arrays.stream(created).map(ResultFeatureStatDTO::getId).sorted().toList();
+    }
+
 }